@@ -4,15 +4,18 @@ package com.kedzie.vbox.processor;
 import com.google.auto.service.AutoService;
 import com.kedzie.vbox.soap.Asyncronous;
 import com.kedzie.vbox.soap.KSOAP;
+import com.kedzie.vbox.soap.KSOAPCachePolicy;
 import com.kedzie.vbox.soap.KSOAPMethodStrategy;
 import com.kedzie.vbox.soap.KSoapObject;
 import com.squareup.javawriter.JavaWriter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +50,7 @@ import static com.kedzie.vbox.processor.Util.typeToString;
 import static com.squareup.javawriter.JavaWriter.stringLiteral;
 import static com.squareup.javawriter.JavaWriter.type;
 import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.PUBLIC;
 import static javax.lang.model.element.Modifier.STATIC;
 
@@ -60,7 +64,18 @@ import static javax.lang.model.element.Modifier.STATIC;
 @AutoService(Processor.class)
 @SupportedAnnotationTypes("com.kedzie.vbox.soap.KSOAP")
 public final class ProxyProcessor extends AbstractProcessor {
+    private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
+    private static final String VBOX_NAMESPACE = "http://www.virtualbox.org/";
+    private static final String REGISTRY_NAME = "com.kedzie.vbox.soap.ProxyRegistry";
+    private static final String EVENT_NAME = "com.kedzie.vbox.api.IEvent";
+    private static final String EVENT_TYPE_NAME = "com.kedzie.vbox.api.jaxb.VBoxEventType";
+
     private final Set<String> remainingTypeNames = new LinkedHashSet<String>();
+    /** Enums whose <code>$$Table</code> has been written */
+    private final Set<String> enumTables = new LinkedHashSet<String>();
+    /** Interfaces whose <code>$$Proxy</code> has been written, for the registry */
+    private final Set<TypeElement> proxies = new LinkedHashSet<TypeElement>();
+    private boolean registryWritten;
 
     @Override
     public SourceVersion getSupportedSourceVersion() {
@@ -84,12 +99,22 @@ public final class ProxyProcessor extends AbstractProcessor {
             if (!missingDependentClasses) {
                 try {
                     generateProxy(injectedClass.type, injectedClass.methods);
+                    generateAsync(injectedClass.type, injectedClass.methods);
+                    proxies.add(injectedClass.type);
                 } catch (Throwable e) {
                     error("Code gen failed: " + e, injectedClass.type);
                 }
                 i.remove();
             }
         }
+        if (remainingTypeNames.isEmpty() && !proxies.isEmpty() && !registryWritten) {
+            try {
+                generateRegistry();
+            } catch (Throwable e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Code gen failed: " + e);
+            }
+            registryWritten = true;
+        }
         if (roundEnv.processingOver() && !remainingTypeNames.isEmpty()) {
             processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
                     "Could not find injection type required by " + remainingTypeNames);
@@ -156,6 +181,129 @@ public final class ProxyProcessor extends AbstractProcessor {
     }
 
 
+    /**
+     * Write the {@link com.kedzie.vbox.soap.EnumTable} for an enum, unless already written
+     */
+    private void generateEnumTable(TypeElement type) throws IOException {
+        String tableName = adapterName(type, "$$Table");
+        if(!enumTables.add(tableName))
+            return;
+        String enumName = type.getQualifiedName().toString();
+        JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(tableName, type);
+        JavaWriter writer = new JavaWriter(sourceFile.openWriter());
+        writer.emitSingleLineComment("Code generated by ksoap-compiler.  Do not edit.");
+        writer.emitPackage(getPackage(type).getQualifiedName().toString());
+        writer.emitImports("com.kedzie.vbox.soap.EnumTable");
+        writer.emitEmptyLine();
+        writer.emitJavadoc("Looks up {@link %s} by value", enumName);
+        String simpleName = tableName.substring(tableName.lastIndexOf('.')+1);
+        writer.beginType(simpleName, "class", EnumSet.of(PUBLIC, FINAL), "EnumTable<" + enumName + ">");
+        writer.emitField(simpleName, "INSTANCE", EnumSet.of(PUBLIC, STATIC, FINAL), "new " + simpleName + "()");
+        writer.emitEmptyLine();
+        writer.beginConstructor(EnumSet.of(Modifier.PRIVATE));
+        writer.emitStatement("super(%s.values())", enumName);
+        writer.endConstructor();
+        writer.emitEmptyLine();
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod("String", "value", EnumSet.of(Modifier.PROTECTED), enumName, "constant");
+        writer.emitStatement("return constant.value()");
+        writer.endMethod();
+        writer.endType();
+        writer.close();
+    }
+
+    /**
+     * Write the registry of {@link com.kedzie.vbox.soap.ProxyFactory ProxyFactories}, which create each proxy with
+     * its constructor instead of reflection.  The map is filled once when the class is initialized and only read
+     * afterwards, so lookups need no lock.
+     * <p>Events are dispatched to their interface by type, i.e. <code>ON_MACHINE_STATE_CHANGED</code> to
+     * <code>IMachineStateChangedEvent</code>.</p>
+     */
+    private void generateRegistry() throws IOException {
+        JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(REGISTRY_NAME, proxies.toArray(new Element[proxies.size()]));
+        JavaWriter writer = new JavaWriter(sourceFile.openWriter());
+        writer.emitSingleLineComment("Code generated by ksoap-compiler.  Do not edit.");
+        writer.emitPackage(REGISTRY_NAME.substring(0, REGISTRY_NAME.lastIndexOf('.')));
+        writer.emitImports("com.kedzie.vbox.api.IManagedObjectRef",
+                "java.util.IdentityHashMap",
+                "java.util.Map");
+        writer.emitEmptyLine();
+        writer.emitJavadoc("Factories of the generated proxies, by interface");
+        writer.beginType(REGISTRY_NAME, "class", EnumSet.of(PUBLIC, FINAL));
+        writer.emitField("Map<Class<?>, ProxyFactory<?>>", "FACTORIES", EnumSet.of(Modifier.PRIVATE, STATIC, FINAL),
+                String.format("new IdentityHashMap<Class<?>, ProxyFactory<?>>(%d)", proxies.size()));
+        Map<String, String> events = getEventInterfaces();
+        writer.emitField(String.format("Map<%s, ProxyFactory<? extends %s>>", EVENT_TYPE_NAME, EVENT_NAME), "EVENTS",
+                EnumSet.of(Modifier.PRIVATE, STATIC, FINAL),
+                String.format("new java.util.EnumMap<%s, ProxyFactory<? extends %s>>(%s.class)", EVENT_TYPE_NAME, EVENT_NAME, EVENT_TYPE_NAME));
+        writer.emitEmptyLine();
+        writer.beginInitializer(true);
+        for(TypeElement type : proxies) {
+            String typeName = type.getQualifiedName().toString();
+            writer.beginControlFlow("FACTORIES.put(%s.class, new ProxyFactory<%s>()", typeName, typeName);
+            writer.emitAnnotation(Override.class);
+            writer.beginMethod(typeName, "create", EnumSet.of(PUBLIC), "VBoxSvc", "vmgr", "String", "id", type(Map.class, "String", "Object"), "cache");
+            writer.emitStatement("return new %s(vmgr, id, %s.class, cache)", adapterName(type, "$$Proxy"), typeName);
+            writer.endMethod();
+            writer.endControlFlow(")");
+        }
+        for(Map.Entry<String, String> event : events.entrySet())
+            writer.emitStatement("EVENTS.put(%s.%s, get(%s.class))", EVENT_TYPE_NAME, event.getKey(), event.getValue());
+        writer.endInitializer();
+        writer.emitEmptyLine();
+        writer.beginConstructor(EnumSet.of(Modifier.PRIVATE));
+        writer.endConstructor();
+        writer.emitEmptyLine();
+        writer.emitJavadoc("@return factory of the proxy for an interface, or <code>null</code> if none was generated");
+        writer.emitAnnotation(SuppressWarnings.class, stringLiteral("unchecked"));
+        writer.beginMethod("<T extends IManagedObjectRef> ProxyFactory<T>", "get", EnumSet.of(PUBLIC, STATIC), "Class<T>", "type");
+        writer.emitStatement("return (ProxyFactory<T>)FACTORIES.get(type)");
+        writer.endMethod();
+        writer.emitEmptyLine();
+        writer.emitJavadoc("@return factory of the proxy for the interface of an event type, or <code>null</code> if it has none");
+        writer.beginMethod(String.format("ProxyFactory<? extends %s>", EVENT_NAME), "getEvent", EnumSet.of(PUBLIC, STATIC), EVENT_TYPE_NAME, "type");
+        writer.emitStatement("return EVENTS.get(type)");
+        writer.endMethod();
+        writer.endType();
+        writer.close();
+    }
+
+    /**
+     * Match the proxied event interfaces with their event types by name, i.e. <code>IMachineStateChangedEvent</code>
+     * with <code>ON_MACHINE_STATE_CHANGED</code>.  Intermediate interfaces like <code>IMachineEvent</code> have no type.
+     * @return names of the interfaces by event type constant
+     */
+    private Map<String, String> getEventInterfaces() {
+        Map<String, String> events = new LinkedHashMap<String, String>();
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+        TypeElement event = elements.getTypeElement(EVENT_NAME);
+        TypeElement eventType = elements.getTypeElement(EVENT_TYPE_NAME);
+        if(event==null || eventType==null)
+            return events;
+        Set<String> constants = new LinkedHashSet<String>();
+        for(Element member : eventType.getEnclosedElements()) {
+            if(member.getKind()==ElementKind.ENUM_CONSTANT)
+                constants.add(member.getSimpleName().toString());
+        }
+        for(TypeElement type : proxies) {
+            String name = type.getSimpleName().toString();
+            if(type.equals(event) || !types.isAssignable(type.asType(), event.asType())
+                    || !name.startsWith("I") || !name.endsWith("Event"))
+                continue;
+            StringBuilder constant = new StringBuilder("ON");
+            for(int i=1; i<name.length()-"Event".length(); i++) {
+                char c = name.charAt(i);
+                if(Character.isUpperCase(c))
+                    constant.append('_');
+                constant.append(Character.toUpperCase(c));
+            }
+            if(constants.contains(constant.toString()))
+                events.put(constant.toString(), type.getQualifiedName().toString());
+        }
+        return events;
+    }
+
     /**
      * Write a proxy class for {@code type}
      */
@@ -170,13 +318,16 @@ public final class ProxyProcessor extends AbstractProcessor {
         writer.emitSingleLineComment("Code generated by ksoap-compiler.  Do not edit.");
         writer.emitPackage(packageName);
         writer.emitImports("com.kedzie.vbox.soap.VBoxSvc",
+                "com.kedzie.vbox.soap.PropertyCache",
+                "com.kedzie.vbox.soap.ResponseEnvelope",
+                "com.kedzie.vbox.soap.ResponseReader",
+                "com.kedzie.vbox.soap.DeferredProxies",
+                "com.kedzie.vbox.soap.SoapRequest",
                 "com.kedzie.vbox.app.Utils",
-                "org.ksoap2.serialization.SoapObject",
-                "org.ksoap2.serialization.SoapPrimitive",
                 "org.ksoap2.serialization.SoapSerializationEnvelope",
-                "org.ksoap2.serialization.KvmSerializable",
-                "org.ksoap2.serialization.PropertyInfo",
                 "org.ksoap2.SoapEnvelope",
+                "org.xmlpull.v1.XmlPullParser",
+                "org.xmlpull.v1.XmlPullParserException",
                 "android.os.Parcelable",
                 "android.os.Parcel",
                 "java.util.HashMap",
@@ -215,180 +366,88 @@ public final class ProxyProcessor extends AbstractProcessor {
 
         writer.emitField(creatorType, "CREATOR", EnumSet.of(PUBLIC, STATIC, FINAL), "new ProxyCreator()");
 
+        Map<String, Object> typeKSOAP = getAnnotation(KSOAP.class, type);
+        //request templates and response readers, shared with the asynchronous companion
+        for(ExecutableElement method : methods) {
+            Map<String, Object> ksoap = getMethodKSOAP(typeKSOAP, method);
+            if(ksoap!=null) {
+                emitRequestTemplate(writer, type, method, methods, ksoap);
+                emitResponseReader(writer, method, methods);
+            }
+        }
+
+        //cache slots of the getters without parameters, following those of the supertype
+        boolean root = type.getInterfaces().isEmpty();
+        List<String> parentSlots = root ? new ArrayList<String>() : getCacheSlots(getSuperInterface(type));
+        List<String> slots = getCacheSlots(type);
+        StringBuilder layout = new StringBuilder("new PropertyCache.Layout(").append(root ? "null" : baseClass + ".LAYOUT");
+        for(int i=parentSlots.size(); i<slots.size(); i++) {
+            writer.emitField("int", "SLOT_" + slots.get(i), EnumSet.of(PUBLIC, STATIC, FINAL), String.valueOf(i));
+            layout.append(", ").append(stringLiteral(slots.get(i)));
+        }
+        layout.append(")");
+        for(ExecutableElement method : methods) {
+            if(hasCacheSlot(typeKSOAP, method) && slots.indexOf(method.getSimpleName().toString())>=parentSlots.size())
+                layout.append(getCachePolicy(getMethodKSOAP(typeKSOAP, method), method));
+        }
+        writer.emitField("PropertyCache.Layout", "LAYOUT", EnumSet.of(PUBLIC, STATIC, FINAL), layout.toString());
+
         writer.emitEmptyLine();
 
-        //constructor
+        //constructors
         writer.beginConstructor(EnumSet.of(PUBLIC),
                 "VBoxSvc", "vmgr",
                 "String", "id",
                 type(Class.class, "?"), "type",
                 type(Map.class, "String", "Object"), "cache");
-        writer.emitStatement("super(vmgr, id, type, cache)");
+        writer.emitStatement("this(vmgr, id, type, cache, LAYOUT)");
+        writer.endConstructor();
+        writer.beginConstructor(EnumSet.of(Modifier.PROTECTED),
+                "VBoxSvc", "vmgr",
+                "String", "id",
+                type(Class.class, "?"), "type",
+                type(Map.class, "String", "Object"), "cache",
+                "PropertyCache.Layout", "layout");
+        writer.emitStatement("super(vmgr, id, type, cache, layout)");
         writer.endConstructor();
 
-        Map<String, Object> typeKSOAP = getAnnotation(KSOAP.class, type);
         KSOAPMethodStrategy methodIncludeStrategy = (KSOAPMethodStrategy)typeKSOAP.get("methodIncludeStrategy");
         processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Method include strategy: " + methodIncludeStrategy);
         //methods
         for(ExecutableElement method : methods) {
-            Map<String, Object> ksoap = getAnnotation(KSOAP.class, method);
-            //Skip excluded methods using method include strategy
-            if(ksoap==null && methodIncludeStrategy.equals(KSOAPMethodStrategy.INCLUDE_ANNOTATED))
-                continue;
-            //Inherit type annotation if method annotation is missing
+            Map<String, Object> ksoap = getMethodKSOAP(typeKSOAP, method);
             if(ksoap==null)
-                ksoap = typeKSOAP;
+                continue;
 
             String methodName = method.getSimpleName().toString();
             String returnType = typeToString(method.getReturnType());
 
             writer.emitAnnotation(Override.class);
-            List<String> args = new ArrayList<String>(method.getParameters()==null ? 0 : method.getParameters().size()*2);
-            for (VariableElement parameter : method.getParameters()) {
-                args.add(typeToString(parameter.asType()));
-                args.add(parameter.getSimpleName().toString());
-            }
             List<String> thrown = new ArrayList<String>(method.getThrownTypes().size());
             boolean throwsIOException = thrown.contains("java.io.IOException");
             for (TypeMirror ex : method.getThrownTypes()) {
                 thrown.add(typeToString(ex));
             }
             writer.beginMethod(method.getReturnType().getKind() == TypeKind.VOID ? "void" : returnType,
-                    methodName, EnumSet.of(PUBLIC), args, thrown);
-
-            final Boolean cacheable = (Boolean)ksoap.get("cacheable");
-
-            if(cacheable) {
-                StringBuffer cmd = new StringBuffer("String cacheKey = ").append(stringLiteral(methodName));
-                for (VariableElement parameter : method.getParameters()) {
-                    cmd.append(" + String.valueOf(").append(parameter.getSimpleName()).append(")");
-                }
-                writer.emitStatement(cmd.toString());
-
-                writer.emitStatement("if(_cache.containsKey(cacheKey)) return (%s)_cache.get(cacheKey)",
-                        method.getReturnType().getKind().isPrimitive() ?
-                                getTypeUtils().boxedClass(getTypeUtils().getPrimitiveType(method.getReturnType().getKind())) :
-                                returnType);
-            }
-            String prefix = (String)ksoap.get("prefix");
-            writer.emitStatement("SoapObject request = new SoapObject(%s, \"%s_%s\")",
-                    stringLiteral("http://www.virtualbox.org/"), prefix.equals("") ? type.getSimpleName().toString() : prefix, methodName);
+                    methodName, EnumSet.of(PUBLIC), getParameters(method), thrown);
 
-            if (!ksoap.get("thisReference").equals(""))
-                writer.emitStatement("request.addProperty(%s, _uiud)", stringLiteral((String) ksoap.get("thisReference")));
-
-            for (VariableElement parameter : method.getParameters()) {
-                final Map<String, Object> pksoap = getAnnotation(KSOAP.class, parameter);
-                if(pksoap==null) {
-                    error("KSOAP Cannot be null.  Type: " + strippedTypeName, parameter);
-                }
-                //marshall parameters
-                marshalParameter(writer, pksoap, parameter.asType(), parameter.getSimpleName().toString());
+            final String cacheKey = emitCacheKey(writer, typeKSOAP, method, "");
+            if(cacheKey!=null) {
+                //read once, an invalidation between a check and a read would return null
+                writer.emitStatement("Object cached = _cache.%s(%s)", cacheKey.equals("cacheKey") ? "find" : "get", cacheKey);
+                writer.emitStatement("if(cached!=PropertyCache.MISS) return (%s)cached", boxedTypeToString(method.getReturnType()));
             }
+            emitRequest(writer, getTemplateName(method, methods), getReaderName(method, methods), strippedTypeName, method, ksoap);
 
-            writer.emitStatement("SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11)");
-            writer.emitStatement("envelope.setAddAdornments(false)");
-            writer.emitStatement("envelope.setOutputSoapObject(request)");
-
-            //if asynchronous then launch thread
+            //if asynchronous then don't wait for the response
             if(getAnnotation(Asyncronous.class, method)!=null) {
-                writer.emitStatement("_vmgr.getExecutor().execute(new AsynchronousThread(VBoxSvc.NAMESPACE+request.getName(), envelope))");
+                writer.emitStatement("_vmgr.httpCallAsync(request.getSoapAction(), envelope%s).addCallback(new AsynchronousCallback(), _vmgr.getExecutor())", getCallOptions(ksoap));
             } else {
                 if (!throwsIOException) {
                     writer.beginControlFlow("try");
                 }
-                writer.emitStatement("_vmgr.httpCall(VBoxSvc.NAMESPACE+request.getName(), envelope)");
-
-                writer.beginControlFlow("if(envelope.bodyIn instanceof org.ksoap2.SoapFault)");
-                writer.emitStatement("throw (org.ksoap2.SoapFault) envelope.bodyIn");
-                writer.endControlFlow();
-
-                //unmarshall return value
-                if (method.getReturnType().getKind() != TypeKind.VOID) {
-                    TypeMirror ω = getTypeUtils().getWildcardType(null, null);
-                    TypeMirror listType = getTypeUtils().getDeclaredType(
-                            getElementUtils().getTypeElement("java.util.Collection"), ω);
-                    DeclaredType wildcardMap = getTypeUtils().getDeclaredType(
-                            getElementUtils().getTypeElement("java.util.Map"), ω, ω);
-                    boolean IS_COLLECTION = getTypeUtils().isAssignable(method.getReturnType(), listType);
-                    boolean IS_MAP = getTypeUtils().isAssignable(method.getReturnType(), wildcardMap);
-                    boolean IS_ARRAY = method.getReturnType().getKind().equals(TypeKind.ARRAY) && !((ArrayType) method.getReturnType()).getComponentType().getKind().equals(TypeKind.BYTE);
-
-                    writer.emitStatement("KvmSerializable ks = (KvmSerializable) envelope.bodyIn");
-                    if (!IS_MAP && !IS_COLLECTION && !method.getReturnType().getKind().isPrimitive()) {
-                        writer.beginControlFlow("if(ks.getPropertyCount()==0)");
-                        writer.emitStatement("return null");
-                        writer.endControlFlow();
-                    }
-
-                    //Map
-                    if (IS_MAP) {
-                        TypeMirror keyType = Util.getGenericTypeArgument(method.getReturnType(), 0);
-                        TypeMirror valueType = Util.getGenericTypeArgument(method.getReturnType(), 1);
-                        writer.emitStatement("PropertyInfo info = new PropertyInfo()");
-                        //Map<String, List<String>>
-                        if (getTypeUtils().isAssignable(valueType, listType)) {
-                            writer.emitStatement("Map<String, List<String>> map = new HashMap<String, List<String>>();");
-                            writer.beginControlFlow("for (int i = 0; i < ks.getPropertyCount(); i++)");
-                            writer.emitStatement("ks.getPropertyInfo(i, null, info);");
-                            writer.beginControlFlow("if (!map.containsKey(info.getName()))");
-                            writer.emitStatement("map.put(info.getName(), new ArrayList<String>())");
-                            writer.endControlFlow();
-                            writer.emitStatement("map.get(info.getName()).add(ks.getProperty(i).toString())");
-                            writer.endControlFlow();
-                        }
-                        //Map<String, String>
-                        else {
-                            writer.emitStatement("Map<String, String> map = new HashMap<String, String>();");
-                            writer.beginControlFlow("for (int i = 0; i < ks.getPropertyCount(); i++)");
-                            writer.emitStatement("ks.getPropertyInfo(i, null, info);");
-                            writer.emitStatement("map.put(info.getName(), ks.getProperty(i).toString())");
-                            writer.endControlFlow();
-                        }
-                        writer.emitStatement("%s ret = map", returnType);
-                    }
-                    //List
-                    else if (IS_COLLECTION) {
-                        TypeMirror componentType = Util.getGenericTypeArgument(method.getReturnType(), 0);
-                        writer.emitStatement("%s list = new ArrayList<%s>(ks.getPropertyCount())", returnType, typeToString(componentType));
-                        writer.beginControlFlow("for(int i=0; i<ks.getPropertyCount(); i++)");
-                        writer.beginControlFlow("if(ks.getProperty(i)!=null && !ks.getProperty(i).toString().equals(\"anyType{}\"))");
-                        writer.emitStatement("list.add(%s)", unmarshal(writer, ksoap, componentType, "ks.getProperty(i)"));
-                        writer.endControlFlow();
-                        writer.endControlFlow();
-                        writer.emitStatement("%s ret = list", returnType);
-                    } else if (IS_ARRAY) {
-                        TypeMirror componentType = ((ArrayType) method.getReturnType()).getComponentType();
-                        writer.emitStatement("%s array = new %s[ks.getPropertyCount()]", returnType, typeToString(componentType));
-                        writer.beginControlFlow("for(int i=0; i<ks.getPropertyCount(); i++)");
-                        writer.beginControlFlow("if(ks.getProperty(i)!=null && !ks.getProperty(i).toString().equals(\"anyType{}\"))");
-                        writer.emitStatement("array[i] = %s", unmarshal(writer, ksoap, componentType, "ks.getProperty(i)"));
-                        writer.endControlFlow();
-                        writer.endControlFlow();
-                        writer.emitStatement("%s ret = array", returnType);
-                    } else {
-                        String unmarshallStmt = unmarshal(writer, ksoap, method.getReturnType(), "ks.getProperty(0)");
-                        if(!method.getReturnType().getKind().isPrimitive()) {
-                            writer.emitStatement("%s ret = null", returnType);
-                            writer.beginControlFlow("if(ks.getProperty(0)!=null && !ks.getProperty(0).toString().equals(\"anyType{}\"))");
-                            writer.emitStatement("ret = %s", unmarshallStmt);
-                            writer.endControlFlow();
-                        } else {
-                            writer.emitStatement("%s ret = %s", returnType, unmarshallStmt);
-                        }
-                    }
-
-                    if (cacheable) {
-                        writer.emitStatement("_cache.put(cacheKey, ret)");
-                    }
-
-                    //update cache for simple property setters
-//                if(methodName.startsWith("set")) {
-//                    writer.emitStatement("_cache.put(\"get\"+name.substring(3), method.getParameters().get(0).getSimpleName().toString())");
-//                }
-
-                    writer.emitStatement("return ret");
-                }
+                writer.emitStatement("_vmgr.httpCall(request.getSoapAction(), envelope%s)", getCallOptions(ksoap));
+                emitResponse(writer, method, cacheKey);
 
                 if (!throwsIOException) {
                     writer.endControlFlow();
@@ -406,64 +465,704 @@ public final class ProxyProcessor extends AbstractProcessor {
     }
 
     /**
-     * Generate code to unmarshall an element of return type
-     * @param ksoap
-     * @param returnType    return type
-     * @param name      java code which has the actual value
-     * @return the string of generated code
-     * @throws IOException
+     * Write an asynchronous companion for {@code type}, whose methods return a {@link com.kedzie.vbox.soap.SoapFuture}
+     * instead of blocking.  The response is parsed on the network thread, the result is checked, cached and turned into
+     * proxies on the {@link com.kedzie.vbox.soap.VBoxSvc#getExecutor() executor}.
+     */
+    private void generateAsync(TypeElement type, List<ExecutableElement> methods) throws IOException {
+        String packageName = getPackage(type).getQualifiedName().toString();
+        String strippedTypeName =
+                strippedTypeName(type.getQualifiedName().toString(), packageName);
+        String asyncName = adapterName(type, "Async");
+        JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(asyncName, type);
+        JavaWriter writer = new JavaWriter(sourceFile.openWriter());
+
+        writer.emitSingleLineComment("Code generated by ksoap-compiler.  Do not edit.");
+        writer.emitPackage(packageName);
+        writer.emitImports("com.kedzie.vbox.soap.VBoxSvc",
+                "com.kedzie.vbox.soap.PropertyCache",
+                "com.kedzie.vbox.soap.ResponseEnvelope",
+                "com.kedzie.vbox.soap.ResponseReader",
+                "com.kedzie.vbox.soap.DeferredProxies",
+                "com.kedzie.vbox.soap.SoapFuture",
+                "com.kedzie.vbox.soap.SoapRequest",
+                "org.ksoap2.serialization.SoapSerializationEnvelope",
+                "org.ksoap2.SoapEnvelope",
+                "org.xmlpull.v1.XmlPullParser",
+                "org.xmlpull.v1.XmlPullParserException",
+                "java.util.HashMap",
+                "java.util.Map",
+                "java.util.List",
+                "java.util.ArrayList",
+                "java.util.concurrent.Executor",
+                "java.io.IOException");
+        writer.emitEmptyLine();
+        writer.emitJavadoc("Asynchronous companion of %s", strippedTypeName);
+
+        String baseClass = type.getInterfaces().isEmpty() ? "com.kedzie.vbox.api.BaseAsyncProxy" :
+                rawTypeToString(type.getInterfaces().get(0), '.')+"Async";
+        writer.beginType(asyncName, "class", EnumSet.of(PUBLIC), baseClass);
+
+        writer.emitEmptyLine();
+
+        //constructor
+        writer.beginConstructor(EnumSet.of(PUBLIC), strippedTypeName, "proxy");
+        writer.emitStatement("this(proxy, %s.LAYOUT)", adapterName(type, "$$Proxy"));
+        writer.endConstructor();
+        writer.beginConstructor(EnumSet.of(Modifier.PROTECTED), strippedTypeName, "proxy", "PropertyCache.Layout", "layout");
+        writer.emitStatement("super(proxy, layout)");
+        writer.endConstructor();
+
+        Map<String, Object> typeKSOAP = getAnnotation(KSOAP.class, type);
+        //methods
+        for(ExecutableElement method : methods) {
+            Map<String, Object> ksoap = getMethodKSOAP(typeKSOAP, method);
+            if(ksoap==null)
+                continue;
+
+            String methodName = method.getSimpleName().toString();
+            String resultType = method.getReturnType().getKind() == TypeKind.VOID ? "Void" : boxedTypeToString(method.getReturnType());
+            String futureType = String.format("SoapFuture<%s>", resultType);
+
+            writer.beginMethod(futureType, methodName, EnumSet.of(PUBLIC), getParameters(method), null);
+
+            final String cacheKey = emitCacheKey(writer, typeKSOAP, method, adapterName(type, "$$Proxy") + ".");
+            if(cacheKey!=null) {
+                writer.emitStatement("Object cached = _cache.%s(%s)", cacheKey.equals("cacheKey") ? "find" : "get", cacheKey);
+                writer.emitStatement("if(cached!=PropertyCache.MISS) return SoapFuture.immediate((%s)cached)", resultType);
+            }
+            emitRequest(writer, adapterName(type, "$$Proxy") + "." + getTemplateName(method, methods),
+                    adapterName(type, "$$Proxy") + "." + getReaderName(method, methods), strippedTypeName, method, ksoap);
+
+            //proxies are made on the executor, the network thread completing the call moves on to the next response
+            writer.beginControlFlow("return _vmgr.httpCallAsync(request.getSoapAction(), envelope%s).then(new SoapFuture.Function<SoapSerializationEnvelope, %s>()",
+                    getCallOptions(ksoap), resultType);
+            writer.emitAnnotation(Override.class);
+            writer.beginMethod(resultType, "apply", EnumSet.of(PUBLIC), Arrays.asList("SoapSerializationEnvelope", "envelope"), Arrays.asList("Exception"));
+            emitResponse(writer, method, cacheKey);
+            if(method.getReturnType().getKind() == TypeKind.VOID)
+                writer.emitStatement("return null");
+            writer.endMethod();
+            writer.endControlFlow(", _vmgr.getExecutor())");
+            writer.endMethod();
+
+            if(isCollection(method.getReturnType()))
+                emitStreamingMethod(writer, type, method, methods, strippedTypeName, ksoap);
+        }
+        writer.emitEmptyLine();
+
+        writer.endType();
+        writer.close();
+    }
+
+    /**
+     * Write the streaming variant of an asynchronous method returning a collection.  Instead of collecting the
+     * elements it hands each one to a consumer as soon as it is read, and its future holds their number.  The call
+     * is never pipelined, hedged or cached, so the consumer sees every element exactly once.
+     */
+    private void emitStreamingMethod(JavaWriter writer, TypeElement type, ExecutableElement method, List<ExecutableElement> methods,
+            String strippedTypeName, Map<String, Object> ksoap) throws IOException {
+        String elementType = boxedTypeToString(Util.getGenericTypeArgument(method.getReturnType(), 0));
+        List<String> parameters = getParameters(method);
+        parameters.addAll(Arrays.asList(String.format("SoapFuture.Consumer<? super %s>", elementType), "consumer", "Executor", "executor"));
+        writer.emitEmptyLine();
+        writer.beginMethod("SoapFuture<Integer>", method.getSimpleName().toString(), EnumSet.of(PUBLIC), parameters, null);
+        emitRequest(writer, adapterName(type, "$$Proxy") + "." + getTemplateName(method, methods), null, strippedTypeName, method, ksoap, true);
+        Integer timeout = (Integer)ksoap.get("timeout");
+        writer.beginControlFlow("return _vmgr.httpCallAsync(request.getSoapAction(), envelope%s).then(new SoapFuture.Function<SoapSerializationEnvelope, Integer>()",
+                timeout==0 ? "" : String.format(", %d, false", timeout));
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod("Integer", "apply", EnumSet.of(PUBLIC), Arrays.asList("SoapSerializationEnvelope", "envelope"), Arrays.asList("Exception"));
+        writer.beginControlFlow("if(envelope.bodyIn instanceof org.ksoap2.SoapFault)");
+        writer.emitStatement("throw (org.ksoap2.SoapFault) envelope.bodyIn");
+        writer.endControlFlow();
+        writer.emitStatement("return (Integer) envelope.bodyIn");
+        writer.endMethod();
+        writer.endControlFlow(", SoapFuture.DIRECT)");
+        writer.endMethod();
+    }
+
+    /**
+     * @return whether the type is a <code>Collection</code>
+     */
+    private boolean isCollection(TypeMirror type) {
+        TypeMirror ω = getTypeUtils().getWildcardType(null, null);
+        return getTypeUtils().isAssignable(type, getTypeUtils().getDeclaredType(getElementUtils().getTypeElement("java.util.Collection"), ω));
+    }
+
+    /**
+     * @return whether the type is a proxy of a managed object
+     */
+    private boolean isProxy(TypeMirror type) {
+        return getTypeUtils().isAssignable(type, getElementUtils().getTypeElement("com.kedzie.vbox.api.IManagedObjectRef").asType());
+    }
+
+    /**
+     * Proxies returned by a method are read as their managed object references, and made once the call completed.
+     * Making a proxy of an event gets its type from the server, which must not happen while the response is parsed.
+     * Structures holding proxies are read with their references, see {@link com.kedzie.vbox.soap.DeferredProxies}.
+     * @return type read from the response in place of the proxies returned by the method, or <code>null</code> if it doesn't return proxies
+     */
+    private String getReferenceType(TypeMirror returnType) {
+        if(isProxy(returnType))
+            return "String";
+        if(returnType.getKind().equals(TypeKind.ARRAY) && isProxy(((ArrayType)returnType).getComponentType()))
+            return "String[]";
+        if(isCollection(returnType) && isProxy(Util.getGenericTypeArgument(returnType, 0)))
+            return "List<String>";
+        if(hasProxyFields(returnType)
+                || (returnType.getKind().equals(TypeKind.ARRAY) && hasProxyFields(((ArrayType)returnType).getComponentType()))
+                || (isCollection(returnType) && hasProxyFields(Util.getGenericTypeArgument(returnType, 0))))
+            return String.format("DeferredProxies<%s>", boxedTypeToString(returnType));
+        return null;
+    }
+
+    /**
+     * @return whether the element is a field of a <code>@KSoapObject</code> read from the response
+     */
+    private boolean isStructField(Element field) {
+        return field.getKind().equals(ElementKind.FIELD) && !field.getModifiers().contains(Modifier.STATIC)
+                && getAnnotation(KSoapObject.class, field)==null;
+    }
+
+    /**
+     * @return whether the type is a <code>@KSoapObject</code> with fields holding proxies, directly or in a nested object
+     */
+    private boolean hasProxyFields(TypeMirror type) {
+        Element element = getTypeUtils().asElement(type);
+        if(element==null || getAnnotation(KSoapObject.class, element)==null)
+            return false;
+        for(Element field : element.getEnclosedElements()) {
+            if(isStructField(field) && (isProxy(field.asType()) || hasProxyFields(field.asType())))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the effective {@link KSOAP} annotation of a method
+     * @param typeKSOAP     annotation of the interface
+     * @param method        the method
+     * @return the annotation values, or <code>null</code> if the method is excluded by the method include strategy
+     */
+    private Map<String, Object> getMethodKSOAP(Map<String, Object> typeKSOAP, ExecutableElement method) {
+        Map<String, Object> ksoap = getAnnotation(KSOAP.class, method);
+        //Skip excluded methods using method include strategy
+        if(ksoap==null && typeKSOAP.get("methodIncludeStrategy").equals(KSOAPMethodStrategy.INCLUDE_ANNOTATED))
+            return null;
+        //Inherit type annotation if method annotation is missing
+        return ksoap!=null ? ksoap : typeKSOAP;
+    }
+
+    /**
+     * @return extra arguments of the <code>VBoxSvc</code> call for the deadline and hedging of a method, if they aren't the defaults
+     */
+    private String getCallOptions(Map<String, Object> ksoap) {
+        Integer timeout = (Integer)ksoap.get("timeout");
+        Boolean hedge = (Boolean)ksoap.get("hedge");
+        if(timeout==0 && !hedge)
+            return "";
+        return String.format(", %d, %b", timeout, hedge);
+    }
+
+    /**
+     * @return type name, with primitive types boxed
+     */
+    private String boxedTypeToString(TypeMirror type) {
+        if(type.getKind().isPrimitive())
+            return getTypeUtils().boxedClass(getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName().toString();
+        return typeToString(type);
+    }
+
+    /**
+     * @return alternating parameter types and names, for {@link JavaWriter#beginMethod}
+     */
+    private List<String> getParameters(ExecutableElement method) {
+        List<String> args = new ArrayList<String>(method.getParameters()==null ? 0 : method.getParameters().size()*2);
+        for (VariableElement parameter : method.getParameters()) {
+            args.add(typeToString(parameter.asType()));
+            args.add(parameter.getSimpleName().toString());
+        }
+        return args;
+    }
+
+    /**
+     * Generate the <code>cacheKey</code> of a method invocation with parameters.  Getters without parameters have a
+     * slot of their own, which needs no key.
+     * @param slotPrefix    qualifier of the <code>SLOT_</code> constants
+     * @return expression of the slot or key to cache the result with, or <code>null</code> if the method isn't cached
+     */
+    private String emitCacheKey(JavaWriter writer, Map<String, Object> typeKSOAP, ExecutableElement method, String slotPrefix) throws IOException {
+        Map<String, Object> ksoap = getMethodKSOAP(typeKSOAP, method);
+        if(!(Boolean)ksoap.get("cacheable"))
+            return null;
+        if(hasCacheSlot(typeKSOAP, method))
+            return slotPrefix + "SLOT_" + method.getSimpleName();
+        if(ksoap.get("cachePolicy")!=KSOAPCachePolicy.UNTIL_CLEARED)
+            error("cachePolicy is only supported by getters without parameters", method);
+        StringBuffer cmd = new StringBuffer("final String cacheKey = ").append(stringLiteral(method.getSimpleName().toString()));
+        for (VariableElement parameter : method.getParameters()) {
+            cmd.append(" + String.valueOf(").append(parameter.getSimpleName()).append(")");
+        }
+        writer.emitStatement(cmd.toString());
+        return "cacheKey";
+    }
+
+    /**
+     * @return whether the method is a cached getter without parameters, which has a slot in the {@link com.kedzie.vbox.soap.PropertyCache}
+     */
+    private boolean hasCacheSlot(Map<String, Object> typeKSOAP, ExecutableElement method) {
+        Map<String, Object> ksoap = getMethodKSOAP(typeKSOAP, method);
+        return ksoap!=null && (Boolean)ksoap.get("cacheable") && method.getParameters().isEmpty()
+                && method.getReturnType().getKind()!=TypeKind.VOID;
+    }
+
+    /**
+     * @return calls which set the cache policy of a getter on its {@link com.kedzie.vbox.soap.PropertyCache.Layout}
+     */
+    private String getCachePolicy(Map<String, Object> ksoap, ExecutableElement method) {
+        String name = stringLiteral(method.getSimpleName().toString());
+        KSOAPCachePolicy policy = (KSOAPCachePolicy)ksoap.get("cachePolicy");
+        Integer ttl = (Integer)ksoap.get("cacheTTL");
+        if(policy==KSOAPCachePolicy.TTL && ttl<=0)
+            error("cacheTTL is required by cache policy TTL", method);
+        StringBuilder calls = new StringBuilder();
+        if(policy==KSOAPCachePolicy.IMMUTABLE)
+            calls.append(".immutable(").append(name).append(")");
+        //event invalidation is done by CacheInvalidator, by name
+        if((policy==KSOAPCachePolicy.TTL || policy==KSOAPCachePolicy.EVENT) && ttl>0)
+            calls.append(".expire(").append(name).append(", ").append(ttl).append(")");
+        return calls.toString();
+    }
+
+    /**
+     * @return names of the cached getters without parameters of a type and its supertypes, in the order of their slots
+     */
+    private List<String> getCacheSlots(TypeElement type) {
+        List<String> slots = type.getInterfaces().isEmpty() ? new ArrayList<String>() : getCacheSlots(getSuperInterface(type));
+        Map<String, Object> typeKSOAP = getAnnotation(KSOAP.class, type);
+        if(typeKSOAP==null)
+            return slots;
+        for (Element member : type.getEnclosedElements()) {
+            String name = member.getSimpleName().toString();
+            if(member.getKind().equals(ElementKind.METHOD) && hasCacheSlot(typeKSOAP, (ExecutableElement)member) && !slots.contains(name))
+                slots.add(name);
+        }
+        return slots;
+    }
+
+    /**
+     * @return the interface whose proxy is the superclass of the proxy of {@code type}
+     */
+    private TypeElement getSuperInterface(TypeElement type) {
+        return (TypeElement)getTypeUtils().asElement(type.getInterfaces().get(0));
+    }
+
+    /**
+     * @return name of the field holding the {@link com.kedzie.vbox.soap.SoapRequest.Template} of a method, unique among overloads
+     */
+    private String getTemplateName(ExecutableElement method, List<ExecutableElement> methods) {
+        String name = method.getSimpleName().toString();
+        for(ExecutableElement other : methods) {
+            if(other!=method && other.getSimpleName().contentEquals(name))
+                return "REQUEST_" + name + "_" + methods.indexOf(method);
+        }
+        return "REQUEST_" + name;
+    }
+
+    /**
+     * @return name of the field holding the {@link com.kedzie.vbox.soap.ResponseReader} of a method, unique among overloads
+     */
+    private String getReaderName(ExecutableElement method, List<ExecutableElement> methods) {
+        return getTemplateName(method, methods).replaceFirst("^REQUEST_", "READER_");
+    }
+
+    /**
+     * Generate the field holding the {@link com.kedzie.vbox.soap.ResponseReader} of a method.  Readers keep no state,
+     * so every call shares the one of its method.
+     */
+    private void emitResponseReader(JavaWriter writer, ExecutableElement method, List<ExecutableElement> methods) throws IOException {
+        if(method.getReturnType().getKind() == TypeKind.VOID)
+            return;
+        String resultType = getReferenceType(method.getReturnType());
+        if(resultType==null)
+            resultType = boxedTypeToString(method.getReturnType());
+        String readerType = String.format("ResponseReader<%s>", resultType);
+        String suffix = getTemplateName(method, methods).substring("REQUEST_".length());
+        String className = suffix.substring(0, 1).toUpperCase() + suffix.substring(1).replace("_", "") + "Reader";
+        writer.beginType(className, "class", EnumSet.of(PRIVATE, STATIC, FINAL), readerType);
+        writer.emitAnnotation(Override.class);
+        writer.beginMethod(resultType, "read", EnumSet.of(PUBLIC), Arrays.asList("XmlPullParser", "parser"),
+                Arrays.asList("IOException", "XmlPullParserException"));
+        emitReader(writer, method);
+        writer.endMethod();
+        writer.endType();
+        writer.emitField(readerType, getReaderName(method, methods), EnumSet.of(STATIC, FINAL), String.format("new %s()", className));
+    }
+
+    /**
+     * Generate the field holding the pre-rendered {@link com.kedzie.vbox.soap.SoapRequest.Template} of a method
+     */
+    private void emitRequestTemplate(JavaWriter writer, TypeElement type, ExecutableElement method, List<ExecutableElement> methods, Map<String, Object> ksoap) throws IOException {
+        String prefix = (String)ksoap.get("prefix");
+        StringBuilder args = new StringBuilder(stringLiteral((prefix.equals("") ? type.getSimpleName().toString() : prefix) + "_" + method.getSimpleName()));
+        if (!ksoap.get("thisReference").equals(""))
+            args.append(", ").append(stringLiteral((String) ksoap.get("thisReference"))).append(", ").append(stringLiteral("d:string"));
+        for (VariableElement parameter : method.getParameters()) {
+            final Map<String, Object> pksoap = getAnnotation(KSOAP.class, parameter);
+            if(pksoap==null) {
+                error("KSOAP Cannot be null.  Type: " + type.getSimpleName(), parameter);
+                continue;
+            }
+            args.append(", ").append(stringLiteral((String)pksoap.get("value")))
+                    .append(", ").append(stringLiteral(getSchemaType(pksoap, parameter.asType(), parameter)));
+        }
+        writer.emitField("SoapRequest.Template", getTemplateName(method, methods), EnumSet.of(STATIC, FINAL),
+                String.format("new SoapRequest.Template(%s)", args));
+    }
+
+    /**
+     * @return <code>xsi:type</code> of a parameter, in the form taken by {@link com.kedzie.vbox.soap.SoapRequest.Template}
+     */
+    private String getSchemaType(Map<String, Object> ksoap, TypeMirror type, Element parameter) {
+        //elements of lists are written one by one
+        if(type.getKind().equals(TypeKind.ARRAY))
+            return getSchemaType(ksoap, ((ArrayType)type).getComponentType(), parameter);
+        if(getTypeUtils().isAssignable(type, getTypeUtils().getDeclaredType(
+                getElementUtils().getTypeElement("java.util.Collection"),
+                getTypeUtils().getWildcardType(null, null))))
+            return getSchemaType(ksoap, Util.getGenericTypeArgument(type, 0), parameter);
+        //Annotation-specified simple type
+        if(!ksoap.get("type").equals("")) {
+            String namespace = (String)ksoap.get("namespace");
+            if(namespace.equals(XSD_NAMESPACE))
+                return "d:" + ksoap.get("type");
+            if(namespace.equals(VBOX_NAMESPACE))
+                return "n0:" + ksoap.get("type");
+            return "{" + namespace + "}" + ksoap.get("type");
+        }
+        if(getTypeUtils().isAssignable(type, getElementUtils().getTypeElement("com.kedzie.vbox.api.IManagedObjectRef").asType()))
+            return "d:string";
+        if(Util.isEnum(type))
+            return "n0:" + getTypeUtils().asElement(type).getSimpleName();
+        String boxed = boxedTypeToString(type);
+        if(boxed.equals("java.lang.String"))
+            return "d:string";
+        if(boxed.equals("java.lang.Integer"))
+            return "d:int";
+        if(boxed.equals("java.lang.Long"))
+            return "d:long";
+        if(boxed.equals("java.lang.Boolean"))
+            return "d:boolean";
+        error("Cannot marshal " + type, parameter);
+        return "";
+    }
+
+    /**
+     * Generate code to build the <code>envelope</code> of a method invocation
+     * @param template  expression referring to the {@link com.kedzie.vbox.soap.SoapRequest.Template} of the method
+     * @param reader    expression referring to the {@link com.kedzie.vbox.soap.ResponseReader} of the method
+     */
+    private void emitRequest(JavaWriter writer, String template, String reader, String strippedTypeName, ExecutableElement method, Map<String, Object> ksoap) throws IOException {
+        emitRequest(writer, template, reader, strippedTypeName, method, ksoap, false);
+    }
+
+    /**
+     * Generate code to build the <code>envelope</code> of a method invocation
+     * @param template  expression referring to the {@link com.kedzie.vbox.soap.SoapRequest.Template} of the method
+     * @param reader    expression referring to the {@link com.kedzie.vbox.soap.ResponseReader} of the method, unless streaming
+     * @param streaming whether the elements of the returned collection are handed to <code>consumer</code> instead, see {@link #emitStreamingMethod}
+     */
+    private void emitRequest(JavaWriter writer, String template, String reader, String strippedTypeName, ExecutableElement method, Map<String, Object> ksoap, boolean streaming) throws IOException {
+        writer.emitStatement("SoapRequest request = %s.newRequest()", template);
+
+        int index = 0;
+        if (!ksoap.get("thisReference").equals(""))
+            writer.emitStatement("request.add(%d, _uiud)", index++);
+
+        for (VariableElement parameter : method.getParameters()) {
+            final Map<String, Object> pksoap = getAnnotation(KSOAP.class, parameter);
+            if(pksoap==null) {
+                error("KSOAP Cannot be null.  Type: " + strippedTypeName, parameter);
+            }
+            //marshall parameters
+            marshalParameter(writer, pksoap, parameter.asType(), parameter.getSimpleName().toString(), index++);
+        }
+
+        //the response is read straight into the return type, on the thread receiving it
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            writer.emitStatement("ResponseEnvelope<Void> envelope = new ResponseEnvelope<Void>(SoapEnvelope.VER11, ResponseReader.NONE)");
+        } else if (streaming) {
+            writer.beginControlFlow("ResponseEnvelope<Integer> envelope = new ResponseEnvelope<Integer>(SoapEnvelope.VER11, new ResponseReader<Integer>()");
+            writer.emitAnnotation(Override.class);
+            writer.beginMethod("Integer", "read", EnumSet.of(PUBLIC), Arrays.asList("XmlPullParser", "parser"),
+                    Arrays.asList("IOException", "XmlPullParserException"));
+            TypeMirror elementType = Util.getGenericTypeArgument(method.getReturnType(), 0);
+            String boxedElementType = boxedTypeToString(elementType);
+            writer.emitStatement("int count = 0");
+            writer.beginControlFlow("while(nextElement(parser))");
+            //proxies are made on the consumer's executor
+            if(hasProxyFields(elementType))
+                writer.emitStatement("DeferredProxies<%s> deferred = new DeferredProxies<%s>()", boxedElementType, boxedElementType);
+            else if(isProxy(elementType) && getTypeUtils().isAssignable(elementType, getElementUtils().getTypeElement("com.kedzie.vbox.api.IEvent").asType()))
+                error("Events can't be streamed, their type is fetched once the call completed", method);
+            emitReadElement(writer, elementType, "value");
+            writer.beginControlFlow("if(value!=null)");
+            if(hasProxyFields(elementType))
+                writer.emitStatement("deliver(consumer, deferred.set(value), _vmgr, executor)");
+            else if(isProxy(elementType))
+                writer.emitStatement("deliver(consumer, DeferredProxies.of(%s.class, value), _vmgr, executor)", boxedElementType);
+            else
+                writer.emitStatement("deliver(consumer, value, executor)");
+            writer.emitStatement("count++");
+            writer.endControlFlow();
+            writer.endControlFlow();
+            writer.emitStatement("return count");
+            writer.endMethod();
+            writer.emitEmptyLine();
+            writer.emitAnnotation(Override.class);
+            writer.beginMethod("boolean", "isStreaming", EnumSet.of(PUBLIC));
+            writer.emitStatement("return true");
+            writer.endMethod();
+            writer.endControlFlow(")");
+        } else {
+            String resultType = getReferenceType(method.getReturnType());
+            if(resultType==null)
+                resultType = boxedTypeToString(method.getReturnType());
+            writer.emitStatement("ResponseEnvelope<%s> envelope = new ResponseEnvelope<%s>(SoapEnvelope.VER11, %s)", resultType, resultType, reader);
+        }
+        writer.emitStatement("envelope.setAddAdornments(false)");
+        writer.emitStatement("envelope.setOutputSoapObject(request)");
+    }
+
+    /**
+     * Generate code to check the response <code>envelope</code> for a fault and return the value read by its {@link com.kedzie.vbox.soap.ResponseReader}
      */
-    private String unmarshal(JavaWriter writer, Map<String, Object> ksoap, TypeMirror returnType, String name) throws IOException {
+    private void emitResponse(JavaWriter writer, ExecutableElement method, String cacheKey) throws IOException {
+        writer.beginControlFlow("if(envelope.bodyIn instanceof org.ksoap2.SoapFault)");
+        writer.emitStatement("throw (org.ksoap2.SoapFault) envelope.bodyIn");
+        writer.endControlFlow();
+
+        if (method.getReturnType().getKind() == TypeKind.VOID)
+            return;
+        TypeMirror returnType = method.getReturnType();
+        String referenceType = getReferenceType(returnType);
+        if(referenceType==null) {
+            writer.emitStatement("%s ret = (%s) envelope.bodyIn", typeToString(returnType), boxedTypeToString(returnType));
+        } else if(referenceType.startsWith("DeferredProxies")) {
+            writer.emitStatement("%s ret = ((%s) envelope.bodyIn).resolve(_vmgr)", typeToString(returnType), referenceType);
+        } else if(referenceType.equals("String")) {
+            writer.emitStatement("String ref = (String) envelope.bodyIn");
+            writer.emitStatement("%s ret = ref==null ? null : _vmgr.getProxy(%s.class, ref)", typeToString(returnType), typeToString(returnType));
+        } else if(referenceType.equals("String[]")) {
+            String componentType = typeToString(((ArrayType)returnType).getComponentType());
+            writer.emitStatement("String[] refs = (String[]) envelope.bodyIn");
+            writer.emitStatement("%s ret = new %s[refs.length]", typeToString(returnType), componentType);
+            writer.beginControlFlow("for(int i=0; i<refs.length; i++)");
+            writer.beginControlFlow("if(refs[i]!=null)");
+            writer.emitStatement("ret[i] = _vmgr.getProxy(%s.class, refs[i])", componentType);
+            writer.endControlFlow();
+            writer.endControlFlow();
+        } else {
+            String componentType = typeToString(Util.getGenericTypeArgument(returnType, 0));
+            writer.emitStatement("List<String> refs = (List<String>) envelope.bodyIn");
+            writer.emitStatement("%s ret = new ArrayList<%s>(refs.size())", typeToString(returnType), componentType);
+            writer.beginControlFlow("for(String ref : refs)");
+            writer.emitStatement("ret.add(_vmgr.getProxy(%s.class, ref))", componentType);
+            writer.endControlFlow();
+        }
+
+        if (cacheKey!=null) {
+            writer.emitStatement("_cache.put(%s, ret)", cacheKey);
+        }
 
+        //update cache for simple property setters
+//                if(methodName.startsWith("set")) {
+//                    writer.emitStatement("_cache.put(\"get\"+name.substring(3), method.getParameters().get(0).getSimpleName().toString())");
+//                }
+
+        writer.emitStatement("return ret");
+    }
+
+    /**
+     * Generate the body of <code>ResponseReader.read</code>, which reads the response element into the return type
+     */
+    private void emitReader(JavaWriter writer, ExecutableElement method) throws IOException {
+        TypeMirror returnType = method.getReturnType();
+        TypeMirror ω = getTypeUtils().getWildcardType(null, null);
+        TypeMirror listType = getTypeUtils().getDeclaredType(
+                getElementUtils().getTypeElement("java.util.Collection"), ω);
+        DeclaredType wildcardMap = getTypeUtils().getDeclaredType(
+                getElementUtils().getTypeElement("java.util.Map"), ω, ω);
+        boolean IS_COLLECTION = isCollection(returnType);
+        boolean IS_MAP = getTypeUtils().isAssignable(returnType, wildcardMap);
+        boolean IS_ARRAY = returnType.getKind().equals(TypeKind.ARRAY) && !((ArrayType) returnType).getComponentType().getKind().equals(TypeKind.BYTE);
+        //structures holding proxies are returned with their references
+        String referenceType = getReferenceType(returnType);
+        String result = "%s";
+        if(referenceType!=null && referenceType.startsWith("DeferredProxies")) {
+            writer.emitStatement("%s deferred = new %s()", referenceType, referenceType);
+            result = "deferred.set(%s)";
+        }
+
+        //Map of output parameters
+        if (IS_MAP) {
+            TypeMirror valueType = Util.getGenericTypeArgument(returnType, 1);
+            //Map<String, List<String>>
+            if (getTypeUtils().isAssignable(valueType, listType)) {
+                writer.emitStatement("Map<String, List<String>> map = new HashMap<String, List<String>>()");
+                writer.beginControlFlow("while(nextElement(parser))");
+                writer.emitStatement("String name = parser.getName()");
+                writer.beginControlFlow("if (!map.containsKey(name))");
+                writer.emitStatement("map.put(name, new ArrayList<String>())");
+                writer.endControlFlow();
+                writer.emitStatement("map.get(name).add(readText(parser))");
+                writer.endControlFlow();
+            }
+            //Map<String, String>
+            else {
+                writer.emitStatement("Map<String, String> map = new HashMap<String, String>()");
+                writer.beginControlFlow("while(nextElement(parser))");
+                writer.emitStatement("String name = parser.getName()");
+                writer.emitStatement("map.put(name, readText(parser))");
+                writer.endControlFlow();
+            }
+            writer.emitStatement("return map");
+        }
+        //List
+        else if (IS_COLLECTION) {
+            TypeMirror componentType = Util.getGenericTypeArgument(returnType, 0);
+            if(isProxy(componentType))
+                writer.emitStatement("List<String> list = new ArrayList<String>()");
+            else
+                writer.emitStatement("%s list = new ArrayList<%s>()", typeToString(returnType), typeToString(componentType));
+            writer.beginControlFlow("while(nextElement(parser))");
+            emitReadElement(writer, componentType, "value");
+            writer.beginControlFlow("if(value!=null)");
+            writer.emitStatement("list.add(value)");
+            writer.endControlFlow();
+            writer.endControlFlow();
+            writer.emitStatement("return " + result, "list");
+        }
+        //Array, empty elements are left unset
+        else if (IS_ARRAY) {
+            TypeMirror componentType = ((ArrayType) returnType).getComponentType();
+            boolean references = isProxy(componentType);
+            String boxedComponentType = references ? "String" : boxedTypeToString(componentType);
+            writer.emitStatement("List<%s> list = new ArrayList<%s>()", boxedComponentType, boxedComponentType);
+            writer.beginControlFlow("while(nextElement(parser))");
+            emitReadElement(writer, componentType, "value");
+            writer.emitStatement("list.add(value)");
+            writer.endControlFlow();
+            writer.emitStatement("%s[] array = new %s[list.size()]", references ? "String" : typeToString(componentType),
+                    references ? "String" : typeToString(componentType));
+            writer.beginControlFlow("for(int i=0; i<array.length; i++)");
+            writer.beginControlFlow("if(list.get(i)!=null)");
+            writer.emitStatement("array[i] = list.get(i)");
+            writer.endControlFlow();
+            writer.endControlFlow();
+            writer.emitStatement("return " + result, "array");
+        }
+        //Single value
+        else {
+            writer.beginControlFlow("if(!nextElement(parser))");
+            writer.emitStatement("return null");
+            writer.endControlFlow();
+            emitReadElement(writer, returnType, "value");
+            writer.emitStatement("skipRemaining(parser)");
+            writer.emitStatement("return " + result, "value");
+        }
+    }
+
+    /**
+     * Generate code to read the element at the parser into a new variable, which is <code>null</code> for empty elements.
+     * Proxies are read as their managed object references, see {@link #getReferenceType}.  Recursive for
+     * <code>@KSoapObject</code> types, whose proxies are added to the <code>deferred</code> variable.
+     * @param type          type of the element
+     * @param var           name of the variable
+     */
+    private void emitReadElement(JavaWriter writer, TypeMirror type, String var) throws IOException {
+        String boxedType = boxedTypeToString(type);
         //Base64 array
-        if(returnType.getKind().equals(TypeKind.ARRAY) && ((ArrayType)returnType).getComponentType().getKind().equals(TypeKind.BYTE)) {
-            return String.format("android.util.Base64.decode(%s.toString().getBytes(), android.util.Base64.DEFAULT)", name);
+        if(type.getKind().equals(TypeKind.ARRAY) && ((ArrayType)type).getComponentType().getKind().equals(TypeKind.BYTE)) {
+            writer.emitStatement("byte[] %s = readBase64(parser)", var);
         }
         //Proxy
-        else if(getTypeUtils().isAssignable(returnType, getElementUtils().getTypeElement("com.kedzie.vbox.api.IManagedObjectRef").asType())) {
-            return String.format("_vmgr.getProxy(%s.class, %s.toString())", typeToString(returnType), name);
+        else if(isProxy(type)) {
+            writer.emitStatement("String %s = readText(parser)", var);
         }
         //Enum
-        else if(Util.isEnum(returnType)) {
-            return String.format("%s.fromValue(%s.toString())", typeToString(returnType), name);
+        else if(Util.isEnum(type)) {
+            TypeElement enumType = (TypeElement)getTypeUtils().asElement(type);
+            generateEnumTable(enumType);
+            writer.emitStatement("%s %s = readEnum(parser, %s.INSTANCE)", boxedType, var, adapterName(enumType, "$$Table"));
         }
-        else if(returnType.equals(getElementUtils().getTypeElement("java.lang.Integer").asType())
-                || returnType.getKind().equals(TypeKind.INT)) {
-            return String.format("%s instanceof Integer ? (Integer)%s : Integer.valueOf(%s.toString())", name, name, name);
+        else if(type.equals(getElementUtils().getTypeElement("java.lang.Integer").asType())
+                || type.getKind().equals(TypeKind.INT)) {
+            writer.emitStatement("Integer %s = readInteger(parser)", var);
         }
-        else if(returnType.equals(getElementUtils().getTypeElement("java.lang.Long").asType())
-                || returnType.getKind().equals(TypeKind.LONG)) {
-            return String.format("%s instanceof Long ? (Long)%s : Long.valueOf(%s.toString())", name, name, name);
+        else if(type.equals(getElementUtils().getTypeElement("java.lang.Long").asType())
+                || type.getKind().equals(TypeKind.LONG)) {
+            writer.emitStatement("Long %s = readLong(parser)", var);
         }
-        else if(returnType.equals(getElementUtils().getTypeElement("java.lang.Short").asType())
-                || returnType.getKind().equals(TypeKind.SHORT)) {
-            return String.format("%s instanceof Short ? (Short)%s : Short.valueOf(%s.toString())", name, name, name);
+        else if(type.equals(getElementUtils().getTypeElement("java.lang.Short").asType())
+                || type.getKind().equals(TypeKind.SHORT)) {
+            writer.emitStatement("Short %s = readShort(parser)", var);
         }
-        else if(returnType.equals(getElementUtils().getTypeElement("java.lang.Boolean").asType())
-                || returnType.getKind().equals(TypeKind.BOOLEAN)) {
-            return String.format("%s instanceof Boolean ? (Boolean)%s : Boolean.valueOf(%s.toString())", name, name, name);
+        else if(type.equals(getElementUtils().getTypeElement("java.lang.Boolean").asType())
+                || type.getKind().equals(TypeKind.BOOLEAN)) {
+            writer.emitStatement("Boolean %s = readBoolean(parser)", var);
         }
-        else if(returnType.equals(getElementUtils().getTypeElement("java.lang.String").asType())) {
-            return String.format("%s.toString()", name);
+        else if(type.equals(getElementUtils().getTypeElement("java.lang.String").asType())) {
+            writer.emitStatement("String %s = readText(parser)", var);
         }
         //Complex object
-        Element element = getTypeUtils().asElement(returnType);
-        if(element!=null && getAnnotation(KSoapObject.class, element) != null) {
-            writer.emitStatement("SoapObject soapObject = (SoapObject)%s", name);
-            writer.emitStatement("%s obj = new %s()", typeToString(returnType), typeToString(returnType));
-            for(Element e : element.getEnclosedElements()) {
-                if(e.getKind().equals(ElementKind.FIELD) && !e.getModifiers().contains(Modifier.STATIC) && getAnnotation(KSoapObject.class, e)==null) {
+        else if(getTypeUtils().asElement(type)!=null && getAnnotation(KSoapObject.class, getTypeUtils().asElement(type)) != null) {
+            writer.emitStatement("final %s %s = new %s()", boxedType, var, boxedType);
+            writer.beginControlFlow("while(nextElement(parser))");
+            writer.emitStatement("String %sElement = parser.getName()", var);
+            boolean first = true;
+            for(Element e : getTypeUtils().asElement(type).getEnclosedElements()) {
+                if(isStructField(e)) {
                     String field = e.getSimpleName().toString();
-                    TypeMirror fieldType = e.asType();
-                    String setter = new StringBuffer("set").append(field.substring(0,1).toUpperCase()).append(field.substring(1)).toString();
-                    writer.beginControlFlow("if(soapObject.getProperty("+stringLiteral(field)+")!=null && !soapObject.getProperty("+stringLiteral(field)+").toString().equals(\"anyType{}\"))");
-                    writer.emitStatement("obj.%s(%s)", setter, unmarshal(writer, ksoap, fieldType, "soapObject.getProperty("+stringLiteral(field)+")"));
+                    String capitalized = field.substring(0,1).toUpperCase() + field.substring(1);
+                    String condition = String.format("if(%s.equals(%sElement))", stringLiteral(field), var);
+                    if(first)
+                        writer.beginControlFlow(condition);
+                    else
+                        writer.nextControlFlow("else " + condition);
+                    first = false;
+                    emitReadElement(writer, e.asType(), var + capitalized);
+                    writer.beginControlFlow("if(%s%s!=null)", var, capitalized);
+                    if(isProxy(e.asType())) {
+                        //made once the call completed
+                        String proxyType = boxedTypeToString(e.asType());
+                        if(getTypeUtils().isAssignable(e.asType(), getElementUtils().getTypeElement("com.kedzie.vbox.api.IEvent").asType()))
+                            error("Events can only be returned by themselves or in an array or list, their type is fetched once the call completed", e);
+                        writer.beginControlFlow("deferred.add(new DeferredProxies.Reference<%s>(%s.class, %s%s)", proxyType, proxyType, var, capitalized);
+                        writer.emitAnnotation(Override.class);
+                        writer.beginMethod("void", "set", EnumSet.of(Modifier.PROTECTED), proxyType, "proxy");
+                        writer.emitStatement("%s.set%s(proxy)", var, capitalized);
+                        writer.endMethod();
+                        writer.endControlFlow(")");
+                    } else {
+                        writer.emitStatement("%s.set%s(%s%s)", var, capitalized, var, capitalized);
+                    }
                     writer.endControlFlow();
                 }
             }
-            return "obj";
+            if(first) {
+                writer.emitStatement("skip(parser)");
+            } else {
+                writer.nextControlFlow("else");
+                writer.emitStatement("skip(parser)");
+                writer.endControlFlow();
+            }
+            writer.endControlFlow();
+        } else {
+            writer.emitStatement("skip(parser)");
+            writer.emitStatement("%s %s = null", boxedType, var);
         }
-        return "null";
     }
 
     /**
@@ -471,8 +1170,9 @@ public final class ProxyProcessor extends AbstractProcessor {
      * @param ksoap
      * @param type
      * @param name
+     * @param index     index of the parameter in the request template
      */
-    private void marshalParameter(JavaWriter writer, Map<String, Object> ksoap, TypeMirror type, String name) throws IOException {
+    private void marshalParameter(JavaWriter writer, Map<String, Object> ksoap, TypeMirror type, String name, int index) throws IOException {
         if(!type.getKind().isPrimitive())
             writer.beginControlFlow(String.format("if (%s!=null)", name));
 
@@ -480,7 +1180,7 @@ public final class ProxyProcessor extends AbstractProcessor {
         if(type.getKind().equals(TypeKind.ARRAY)) {
             TypeMirror componentType = ((ArrayType)type).getComponentType();
             writer.beginControlFlow(String.format("for(%s element : %s)", typeToString(componentType), name));
-            marshalParameter(writer, ksoap, componentType, "element");
+            marshalParameter(writer, ksoap, componentType, "element", index);
             writer.endControlFlow();
         }
         //Collections
@@ -489,33 +1189,25 @@ public final class ProxyProcessor extends AbstractProcessor {
                 getTypeUtils().getWildcardType(null, null)))) {
             TypeMirror componentType = Util.getGenericTypeArgument(type, 0);
             writer.beginControlFlow(String.format("for(%s element : %s)", typeToString(componentType), name));
-            marshalParameter(writer, ksoap, componentType, "element");
+            marshalParameter(writer, ksoap, componentType, "element", index);
             writer.endControlFlow();
         }
         //Annotation-specified simple type
         else if(!ksoap.get("type").equals("")) {
-            writer.emitStatement("request.addProperty(%s, new SoapPrimitive(%s, %s, String.valueOf(%s)))",
-                    stringLiteral((String)ksoap.get("value")),
-                    stringLiteral((String)ksoap.get("namespace")),
-                    stringLiteral((String)ksoap.get("type")),
-                    name);
+            if(type.getKind().isPrimitive())
+                writer.emitStatement("request.add(%d, %s)", index, name);
+            else
+                writer.emitStatement("request.add(%d, String.valueOf(%s))", index, name);
         }
         //Proxy
         else if(getTypeUtils().isAssignable(type, getElementUtils().getTypeElement("com.kedzie.vbox.api.IManagedObjectRef").asType())) {
-            writer.emitStatement("request.addProperty(%s, %s.getIdRef())",
-                    stringLiteral((String)ksoap.get("value")),
-                    name);
+            writer.emitStatement("request.add(%d, %s.getIdRef())", index, name);
         }
         //Enum
         else if(Util.isEnum(type)) {
-            writer.emitStatement("request.addProperty(%s, new SoapPrimitive(NAMESPACE, %s.class.getSimpleName(), %s.value()))",
-                    stringLiteral((String)ksoap.get("value")),
-                    typeToString(type),
-                    name);
+            writer.emitStatement("request.add(%d, %s.value())", index, name);
         } else {
-            writer.emitStatement("request.addProperty(%s, %s)",
-                    stringLiteral((String)ksoap.get("value")),
-                    name);
+            writer.emitStatement("request.add(%d, %s)", index, name);
         }
         if(!type.getKind().isPrimitive())
             writer.endControlFlow();
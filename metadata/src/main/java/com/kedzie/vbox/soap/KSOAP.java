@@ -24,6 +24,9 @@ import java.lang.annotation.Target;
  * <ul>
  * <li>SOAP method prefix and name</li>
  * <li>Whether the return value is stored in the In-Memory Cache (<code>@KSOAP(cacheable=true)</code>)</li>
+ * <li>How long a cached value is kept (<code>@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.TTL, cacheTTL=2000)</code>)</li>
+ * <li>Deadline for the response in milliseconds, instead of the service default (<code>@KSOAP(timeout=5000)</code>)</li>
+ * <li>Whether a slow attribute getter is sent again on another connection, taking whichever response arrives first (<code>@KSOAP(hedge=true)</code>)</li>
  * </ul>
  * </dd>
  * @apiviz.landmark
@@ -37,5 +40,9 @@ public @interface KSOAP {
 	public String prefix() default "";
 	public String thisReference() default "_this";
 	public boolean cacheable() default false;
+	public KSOAPCachePolicy cachePolicy() default KSOAPCachePolicy.UNTIL_CLEARED;
+	public int cacheTTL() default 0;
+	public int timeout() default 0;
+	public boolean hedge() default false;
     public KSOAPMethodStrategy methodIncludeStrategy() default KSOAPMethodStrategy.INCLUDE_ALL;
 }
@@ -0,0 +1,15 @@
+package com.kedzie.vbox.soap;
+
+/**
+ * How long the value of a cacheable getter is kept
+ */
+public enum KSOAPCachePolicy {
+    /** Until the cache of the proxy is cleared */
+    UNTIL_CLEARED,
+    /** Never changes, kept even when the cache of the proxy is cleared */
+    IMMUTABLE,
+    /** For <code>cacheTTL</code> milliseconds */
+    TTL,
+    /** Until a VirtualBox event which changes it is received, or for <code>cacheTTL</code> milliseconds if that is set */
+    EVENT;
+}
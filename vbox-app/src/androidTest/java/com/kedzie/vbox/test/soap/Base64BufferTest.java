@@ -0,0 +1,109 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.soap.Base64Buffer;
+import com.kedzie.vbox.soap.ResponseEnvelope;
+import com.kedzie.vbox.soap.ResponseReader;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes Base64 results in chunks, straight from the parser
+ */
+public class Base64BufferTest extends TestCase {
+    /** reads the first element as Base64, like the reader generated for <code>byte[]</code> */
+    private static final ResponseReader<byte[]> BYTES = new ResponseReader<byte[]>() {
+        @Override
+        public byte[] read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            if(!nextElement(parser))
+                return null;
+            byte[] value = readBase64(parser);
+            skipRemaining(parser);
+            return value;
+        }
+    };
+
+    private static byte[] decode(String... chunks) {
+        Base64Buffer buffer = new Base64Buffer();
+        try {
+            for(String chunk : chunks)
+                buffer.decode(chunk.toCharArray(), 0, chunk.length());
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static byte[] parse(String body) throws Exception {
+        ResponseEnvelope<byte[]> envelope = new ResponseEnvelope<byte[]>(SoapEnvelope.VER11, BYTES);
+        return (byte[])SoapFixtures.parse(envelope, SoapFixtures.response("IDisplay_takeScreenShotToArray", body)).bodyIn;
+    }
+
+    /**
+     * @return <code>ABCD</code> repeated, which decodes to <code>{0x00, 0x10, 0x83}</code> repeated
+     */
+    private static String pattern(int groups, String separator) {
+        StringBuilder text = new StringBuilder();
+        for(int i=0; i<groups; i++)
+            text.append("ABCD").append(i%19==18 ? separator : "");
+        return text.toString();
+    }
+
+    private static void assertPattern(int groups, byte[] actual) {
+        assertEquals(groups*3, actual.length);
+        for(int i=0; i<actual.length; i+=3)
+            assertTrue(actual[i]==0x00 && actual[i+1]==0x10 && actual[i+2]==(byte)0x83);
+    }
+
+    @SmallTest
+    public void testDecode() throws Exception {
+        assertTrue(Arrays.equals("Man".getBytes(), decode("TWFu")));
+        assertTrue(Arrays.equals("Ma".getBytes(), decode("TW", "E=")));
+        assertTrue(Arrays.equals("Ma".getBytes(), decode("TWE")));
+        assertTrue(Arrays.equals("M".getBytes(), decode("T", "Q\n==")));
+        assertTrue(Arrays.equals("hello world".getBytes(), decode("aGVs bG8g\r\nd29y", "bGQ=")));
+        try {
+            decode("TW*u");
+            fail("Illegal character accepted");
+        } catch(IllegalArgumentException e) {
+        }
+        try {
+            decode("TWFuT");
+            fail("Truncated input accepted");
+        } catch(IllegalArgumentException e) {
+        }
+    }
+
+    @SmallTest
+    public void testParse() throws Exception {
+        int groups = 100000;
+        assertPattern(groups, parse("<returnval>" + pattern(groups, "\r\n") + "</returnval>"));
+        assertPattern(groups, parse("<returnval>" + pattern(groups, "&#13;&#10;") + "</returnval><other/>"));
+        assertPattern(4, parse("<returnval>ABCDABCD<![CDATA[ABCD]]>AB&#67;D</returnval>"));
+        assertNull(parse("<returnval/>"));
+        assertNull(parse("<returnval></returnval>"));
+        assertNull(parse("<returnval xsi:nil=\"true\"/>"));
+    }
+
+    @SmallTest
+    public void testMalformed() throws Exception {
+        try {
+            parse("<returnval>AB<x/>CD</returnval>");
+            fail("Element inside Base64 accepted");
+        } catch(XmlPullParserException e) {
+        }
+        try {
+            parse("<returnval>AB.D</returnval>");
+            fail("Malformed Base64 accepted");
+        } catch(XmlPullParserException e) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.api.IMachine;
+import com.kedzie.vbox.api.ISnapshot;
+import com.kedzie.vbox.api.jaxb.VBoxEventType;
+import com.kedzie.vbox.soap.CacheInvalidator;
+import com.kedzie.vbox.soap.ProxyRegistry;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Drops the cached properties changed by events from the caches of the affected proxies
+ */
+public class CacheInvalidatorTest extends TestCase {
+
+    private static IMachine machine(String id) {
+        Map<String, Object> cache = new HashMap<String, Object>();
+        cache.put("getId", "uuid-" + id);
+        cache.put("getName", id);
+        cache.put("getState", "Running");
+        cache.put("getCurrentSnapshot", null);
+        cache.put("getMediumAttachmentsOfController-IDE", "attachments");
+        return ProxyRegistry.get(IMachine.class).create(null, id, cache);
+    }
+
+    @SmallTest
+    public void testMachine() throws Exception {
+        IMachine machine = machine("machine1");
+        IMachine same = machine("machine1");
+        IMachine other = machine("machine2");
+
+        CacheInvalidator.onEvent(VBoxEventType.ON_MACHINE_STATE_CHANGED, "machine1");
+        assertFalse(machine.getCache().containsKey("getState"));
+        assertFalse(same.getCache().containsKey("getState"));
+        assertTrue(machine.getCache().containsKey("getName"));
+        assertTrue(other.getCache().containsKey("getState"));
+
+        //without a machine every one is invalidated
+        CacheInvalidator.onEvent(VBoxEventType.ON_STORAGE_DEVICE_CHANGED, null);
+        assertFalse(machine.getCache().containsKey("getMediumAttachmentsOfController-IDE"));
+        assertFalse(other.getCache().containsKey("getMediumAttachmentsOfController-IDE"));
+        assertTrue(other.getCache().containsKey("getState"));
+
+        CacheInvalidator.onEvent(VBoxEventType.ON_MACHINE_DATA_CHANGED, "machine2");
+        assertFalse(other.getCache().containsKey("getName"));
+        assertTrue(other.getCache().containsKey("getId"));
+        assertTrue(machine.getCache().containsKey("getName"));
+    }
+
+    @SmallTest
+    public void testSnapshot() throws Exception {
+        IMachine machine = machine("machine3");
+        Map<String, Object> cache = new HashMap<String, Object>();
+        cache.put("getName", "snapshot");
+        cache.put("getChildren", null);
+        ISnapshot snapshot = ProxyRegistry.get(ISnapshot.class).create(null, "snapshot", cache);
+
+        CacheInvalidator.onEvent(VBoxEventType.ON_SNAPSHOT_TAKEN, "machine3");
+        assertFalse(machine.getCache().containsKey("getCurrentSnapshot"));
+        assertTrue(machine.getCache().containsKey("getState"));
+        assertFalse(snapshot.getCache().containsKey("getChildren"));
+        assertTrue(snapshot.getCache().containsKey("getName"));
+
+        //not changed by any event
+        CacheInvalidator.onEvent(VBoxEventType.ON_GUEST_MOUSE, "machine3");
+        assertTrue(machine.getCache().containsKey("getName"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.CircuitBreaker;
+import com.kedzie.vbox.soap.CircuitBreaker.State;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.SoapFault;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Drives the {@link CircuitBreaker} state machine with call outcomes
+ */
+public class CircuitBreakerTest extends TestCase {
+
+    private CircuitBreaker breaker;
+    private final List<State> states = new ArrayList<State>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        breaker = new CircuitBreaker(new Server("", "127.0.0.1", false, 18083, "", ""));
+        breaker.addListener(new CircuitBreaker.Listener() {
+            @Override
+            public void onStateChanged(Server server, State state) {
+                states.add(state);
+            }
+        });
+    }
+
+    private void fail(int count) throws Exception {
+        for(int i=0; i<count; i++) {
+            breaker.onFailure(breaker.acquire(), new ConnectException("Connection refused"));
+        }
+    }
+
+    private void assertRejected() {
+        try {
+            breaker.acquire();
+            fail("Call permitted while " + breaker.getState());
+        } catch(CircuitBreaker.CircuitOpenException e) {
+        }
+    }
+
+    @SmallTest
+    public void testOpensOnFailureRate() throws Exception {
+        breaker.onSuccess(breaker.acquire());
+        fail(3);
+        assertEquals(State.CLOSED, breaker.getState());
+        fail(1);
+        assertEquals(State.OPEN, breaker.getState());
+        assertRejected();
+    }
+
+    @SmallTest
+    public void testFaultsDontCount() throws Exception {
+        for(int i=0; i<10; i++) {
+            breaker.onFailure(breaker.acquire(), new SoapFault(SoapEnvelope.VER11));
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @SmallTest
+    public void testProbe() throws Exception {
+        fail(5);
+        assertRejected();
+        Thread.sleep(2100);
+        CircuitBreaker.Permit probe = breaker.acquire();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        //only one probe at a time
+        assertRejected();
+        breaker.onFailure(probe, new SocketTimeoutException());
+        assertEquals(State.OPEN, breaker.getState());
+        //backoff doubled
+        Thread.sleep(2100);
+        assertRejected();
+        Thread.sleep(2000);
+        breaker.onSuccess(breaker.acquire());
+        assertEquals(State.CLOSED, breaker.getState());
+        breaker.acquire();
+        assertEquals(Arrays.asList(State.OPEN, State.HALF_OPEN, State.OPEN, State.HALF_OPEN, State.CLOSED), states);
+    }
+
+    @SmallTest
+    public void testOnlyProbeCounts() throws Exception {
+        //made before the breaker opened
+        CircuitBreaker.Permit late = breaker.acquire();
+        fail(5);
+        Thread.sleep(2100);
+        CircuitBreaker.Permit probe = breaker.acquire();
+        breaker.onSuccess(late);
+        breaker.onFailure(late, new ConnectException("Connection refused"));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(probe);
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+}
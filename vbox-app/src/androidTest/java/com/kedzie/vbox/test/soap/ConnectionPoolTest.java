@@ -0,0 +1,137 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.ConnectionPool;
+import com.kedzie.vbox.soap.HttpTransport;
+import com.kedzie.vbox.soap.KeepAliveConnection;
+import com.kedzie.vbox.soap.VBoxSvc;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Borrows and returns connections to a local server which holds them open and closes them on a request
+ */
+public class ConnectionPoolTest extends TestCase {
+    private static final int TIMEOUT = 5000;
+
+    private StubHttpServer server;
+    private Server vbox;
+    private ConnectionPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        //connections are held open, requests are never answered
+        server = new StubHttpServer(new StubHttpServer.Handler() {
+            @Override
+            public StubHttpServer.Response handle(StubHttpServer.Request request, int count) {
+                return null;
+            }
+        });
+        vbox = SoapFixtures.server(server);
+        pool = new ConnectionPool(vbox, 2, TIMEOUT);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.evictAll();
+        server.close();
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testReuse() throws Exception {
+        KeepAliveConnection first = pool.acquire();
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        pool.release(first);
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, server.awaitAccepted(1));
+        assertEquals(2, stats.borrows);
+        assertEquals(1, stats.reused);
+        assertEquals(1, stats.created);
+        assertEquals(1, stats.idle);
+        assertEquals(0, stats.leased);
+    }
+
+    @SmallTest
+    public void testWarmUp() throws Exception {
+        assertEquals(2, pool.warmUp(5));
+        assertEquals(0, pool.warmUp(2));
+        KeepAliveConnection first = pool.acquire();
+        KeepAliveConnection second = pool.acquire();
+        assertNotSame(first, second);
+        assertEquals(2, server.awaitAccepted(2));
+        assertEquals(2, pool.getStats().reused);
+        assertEquals(2, pool.getStats().peakLeased);
+        pool.release(first);
+        pool.release(second);
+    }
+
+    @SmallTest
+    public void testWarmedUpConnectionStale() throws Exception {
+        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        envelope.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IMachine_getName").addProperty("_this", "vm"));
+        HttpTransport transport = new HttpTransport(vbox, pool, TIMEOUT);
+        //the server closes connections without answering, as if it dropped them while idle
+        pool.warmUp(1);
+        try {
+            transport.call(VBoxSvc.NAMESPACE + "IMachine_getName", envelope);
+            fail("Request answered");
+        } catch(KeepAliveConnection.StaleConnectionException e) {
+        }
+        //a connection opened for the request failing is not retried
+        try {
+            transport.call(VBoxSvc.NAMESPACE + "IMachine_getName", envelope);
+            fail("Request answered");
+        } catch(KeepAliveConnection.StaleConnectionException e) {
+            fail("Fresh connection reported stale");
+        } catch(IOException e) {
+        }
+    }
+
+    @SmallTest
+    public void testWaitForRelease() throws Exception {
+        final KeepAliveConnection first = pool.acquire();
+        pool.acquire();
+        try {
+            pool.acquire(200);
+            fail("Acquired more than the maximum connections");
+        } catch(IOException e) {
+        }
+
+        final CountDownLatch waiting = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waiting.await();
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                pool.discard(first);
+            }
+        }.start();
+        waiting.countDown();
+        KeepAliveConnection third = pool.acquire();
+        assertNotSame(first, third);
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.waits);
+        assertEquals(3, stats.created);
+        assertEquals(1, stats.destroyed);
+        assertEquals(2, stats.open);
+        assertTrue("Waited " + stats.maxBorrowMillis + "ms", stats.maxBorrowMillis >= 100 && stats.maxBorrowMillis < TimeUnit.SECONDS.toMillis(2));
+    }
+}
@@ -0,0 +1,118 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.api.jaxb.MachineState;
+import com.kedzie.vbox.api.jaxb.MachineState$$Table;
+import com.kedzie.vbox.api.jaxb.VBoxEventType;
+import com.kedzie.vbox.api.jaxb.VBoxEventType$$Table;
+import com.kedzie.vbox.soap.EnumTable;
+import com.kedzie.vbox.soap.ResponseEnvelope;
+import com.kedzie.vbox.soap.ResponseReader;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * Reads enum and numeric values straight from the parser's characters
+ */
+public class EnumTableTest extends TestCase {
+    /** reads the first element as <code>MachineState</code>, like the reader generated for it */
+    private static final ResponseReader<MachineState> STATE = new ResponseReader<MachineState>() {
+        @Override
+        public MachineState read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            if(!nextElement(parser))
+                return null;
+            MachineState value = readEnum(parser, MachineState$$Table.INSTANCE);
+            skipRemaining(parser);
+            return value;
+        }
+    };
+
+    /** reads the first element as <code>Integer</code> */
+    private static final ResponseReader<Integer> INTEGER = new ResponseReader<Integer>() {
+        @Override
+        public Integer read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            if(!nextElement(parser))
+                return null;
+            Integer value = readInteger(parser);
+            skipRemaining(parser);
+            return value;
+        }
+    };
+
+    /** reads the first element as <code>Long</code> */
+    private static final ResponseReader<Long> LONG = new ResponseReader<Long>() {
+        @Override
+        public Long read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            if(!nextElement(parser))
+                return null;
+            Long value = readLong(parser);
+            skipRemaining(parser);
+            return value;
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static <T> T parse(ResponseReader<T> reader, String body) throws Exception {
+        ResponseEnvelope<T> envelope = new ResponseEnvelope<T>(SoapEnvelope.VER11, reader);
+        return (T)SoapFixtures.parse(envelope, SoapFixtures.response("IMachine_getState", body)).bodyIn;
+    }
+
+    private static <E extends Enum<E>> E get(EnumTable<E> table, String value) {
+        char[] text = ("[" + value + "]").toCharArray();
+        return table.get(text, 1, value.length());
+    }
+
+    @SmallTest
+    public void testGet() throws Exception {
+        for(MachineState state : MachineState.values())
+            assertSame(state, get(MachineState$$Table.INSTANCE, state.value()));
+        for(VBoxEventType type : VBoxEventType.values())
+            assertSame(type, get(VBoxEventType$$Table.INSTANCE, type.value()));
+        for(String value : new String[] { "", "running", "Runnin", "RunningX" }) {
+            try {
+                get(MachineState$$Table.INSTANCE, value);
+                fail("Unknown value accepted: " + value);
+            } catch(IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @SmallTest
+    public void testReadEnum() throws Exception {
+        assertSame(MachineState.RUNNING, parse(STATE, "<returnval>Running</returnval>"));
+        assertSame(MachineState.POWERED_OFF, parse(STATE, "<returnval>Powered&#79;ff</returnval>"));
+        assertNull(parse(STATE, "<returnval/>"));
+        assertNull(parse(STATE, "<returnval xsi:nil=\"true\">Running</returnval>"));
+    }
+
+    @SmallTest
+    public void testReadNumber() throws Exception {
+        assertEquals(Integer.valueOf(42), parse(INTEGER, "<returnval> 42\n</returnval>"));
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), parse(INTEGER, "<returnval>-2147483648</returnval>"));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), parse(INTEGER, "<returnval>+2147483647</returnval>"));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), parse(LONG, "<returnval>-9223372036854775808</returnval>"));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), parse(LONG, "<returnval>9223372036854775807</returnval>"));
+        assertNull(parse(INTEGER, "<returnval/>"));
+        for(String value : new String[] { "2147483648", "-2147483649", "-", "4x", "1 2" }) {
+            try {
+                parse(INTEGER, "<returnval>" + value + "</returnval>");
+                fail("Invalid number accepted: " + value);
+            } catch(XmlPullParserException e) {
+                assertTrue(e.getDetail() instanceof NumberFormatException);
+            }
+        }
+        try {
+            parse(LONG, "<returnval>9223372036854775808</returnval>");
+            fail("Overflow accepted");
+        } catch(XmlPullParserException e) {
+            assertTrue(e.getDetail() instanceof NumberFormatException);
+        }
+    }
+}
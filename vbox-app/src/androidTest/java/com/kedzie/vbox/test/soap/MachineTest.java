@@ -8,10 +8,12 @@ import android.util.Log;
 import com.kedzie.vbox.api.IConsole;
 import com.kedzie.vbox.api.IMachine;
 import com.kedzie.vbox.api.IMachine.LaunchMode;
+import com.kedzie.vbox.api.IMachineAsync;
 import com.kedzie.vbox.api.IPerformanceMetric;
 import com.kedzie.vbox.api.IProgress;
 import com.kedzie.vbox.api.ISession;
 import com.kedzie.vbox.api.jaxb.MachineState;
+import com.kedzie.vbox.soap.SoapFuture;
 import com.kedzie.vbox.test.VBoxTestCase;
 
 public class MachineTest extends VBoxTestCase {
@@ -41,6 +43,17 @@ public class MachineTest extends VBoxTestCase {
 		Log.d(TAG, "Metrics: " + metrics);
 	}
 	
+	@SmallTest
+	public void testAsync() throws Exception {
+		machine.clearCache();
+		IMachineAsync async = new IMachineAsync(machine);
+		SoapFuture<String> name = async.getName();
+		SoapFuture<MachineState> state = async.getState();
+		assertEquals("Machine name", "TEST", name.get());
+		assertEquals("Machine State", machine.getState(), state.get());
+		assertTrue("Cached value", async.getName().isDone());
+	}
+	
 	@SmallTest
 	public void testStart() throws Exception {
 		IProgress p = machine.launchVMProcess(session, LaunchMode.headless);
@@ -0,0 +1,192 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.ConnectionPool;
+import com.kedzie.vbox.soap.HttpTransport;
+import com.kedzie.vbox.soap.KeepAliveConnection;
+import com.kedzie.vbox.soap.PipelinedDispatcher;
+import com.kedzie.vbox.soap.ResponseEnvelope;
+import com.kedzie.vbox.soap.ResponseReader;
+import com.kedzie.vbox.soap.SoapFuture;
+import com.kedzie.vbox.soap.VBoxSvc;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link PipelinedDispatcher} against a local stub server which answers requests in order
+ */
+public class PipelinedDispatcherTest extends TestCase {
+    private static final int TIMEOUT = 5000;
+    /**
+     * Echoes the <code>_this</code> parameter and closes connections after a number of requests
+     */
+    private static class EchoHandler implements StubHttpServer.Handler {
+        final int closeAfter;
+        /** milliseconds to wait before answering */
+        volatile long delay;
+
+        EchoHandler(int closeAfter) {
+            this.closeAfter = closeAfter;
+        }
+
+        @Override
+        public StubHttpServer.Response handle(StubHttpServer.Request request, int count) throws InterruptedException {
+            Thread.sleep(delay);
+            String body = request.getText();
+            int start = body.indexOf('>', body.indexOf("<_this"))+1;
+            StubHttpServer.Response response = StubHttpServer.Response.ok(SoapFixtures.returnval("IMachine_getName", body.substring(start, body.indexOf('<', start))));
+            return count>=closeAfter ? response.close() : response;
+        }
+    }
+
+    private SoapFuture<SoapSerializationEnvelope> submit(PipelinedDispatcher dispatcher, String id) {
+        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        envelope.setAddAdornments(false);
+        envelope.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IMachine_getName").addProperty("_this", id));
+        assertTrue(PipelinedDispatcher.isPipelinable(envelope));
+        return dispatcher.submit(VBoxSvc.NAMESPACE + "IMachine_getName", envelope);
+    }
+
+    private List<SoapFuture<SoapSerializationEnvelope>> submit(PipelinedDispatcher dispatcher, int count) {
+        List<SoapFuture<SoapSerializationEnvelope>> futures = new ArrayList<SoapFuture<SoapSerializationEnvelope>>(count);
+        for(int i=0; i<count; i++)
+            futures.add(submit(dispatcher, "vm" + i));
+        return futures;
+    }
+
+    private void assertResponses(List<SoapFuture<SoapSerializationEnvelope>> futures) throws Exception {
+        for(int i=0; i<futures.size(); i++) {
+            SoapSerializationEnvelope envelope = futures.get(i).get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals("vm" + i, ((SoapObject)envelope.bodyIn).getProperty(0).toString());
+        }
+    }
+
+    private PipelinedDispatcher createDispatcher(StubHttpServer stub) {
+        Server server = SoapFixtures.server(stub);
+        ConnectionPool pool = new ConnectionPool(server, 4, TIMEOUT);
+        return new PipelinedDispatcher(new HttpTransport(server, pool, TIMEOUT), pool, 2, PipelinedDispatcher.DEFAULT_DEPTH);
+    }
+
+    @SmallTest
+    public void testResponsesMatchedInOrder() throws Exception {
+        StubHttpServer stub = new StubHttpServer(new EchoHandler(Integer.MAX_VALUE));
+        assertResponses(submit(createDispatcher(stub), 100));
+        assertTrue("Too many connections: " + stub.accepted, stub.accepted.get() <= 2);
+    }
+
+    @SmallTest
+    public void testRetryAfterServerClose() throws Exception {
+        StubHttpServer stub = new StubHttpServer(new EchoHandler(3));
+        assertResponses(submit(createDispatcher(stub), 50));
+    }
+
+    @SmallTest
+    public void testIdenticalCallsCoalesced() throws Exception {
+        EchoHandler echo = new EchoHandler(Integer.MAX_VALUE);
+        echo.delay = 200;
+        StubHttpServer stub = new StubHttpServer(echo);
+        PipelinedDispatcher dispatcher = createDispatcher(stub);
+        //fill both lanes, so the next calls are queued.  Their ids differ from the calls below, which could share
+        //the response of a busy call still queued.
+        List<SoapFuture<SoapSerializationEnvelope>> busy = submit(dispatcher, 2*PipelinedDispatcher.DEFAULT_DEPTH);
+        List<SoapFuture<SoapSerializationEnvelope>> futures = new ArrayList<SoapFuture<SoapSerializationEnvelope>>();
+        for(int i=0; i<10; i++)
+            futures.add(submit(dispatcher, "vm8"));
+        SoapFuture<SoapSerializationEnvelope> other = submit(dispatcher, "vm9");
+        assertResponses(busy);
+        for(SoapFuture<SoapSerializationEnvelope> future : futures) {
+            SoapSerializationEnvelope envelope = future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals("vm8", ((SoapObject)envelope.bodyIn).getProperty(0).toString());
+        }
+        assertEquals("vm9", ((SoapObject)other.get(TIMEOUT, TimeUnit.MILLISECONDS).bodyIn).getProperty(0).toString());
+        assertEquals(busy.size()+2, stub.requests.get());
+        //calls already sent are not shared, the state may have changed since
+        SoapFuture<SoapSerializationEnvelope> sent = submit(dispatcher, "vm8");
+        while(stub.requests.get() < busy.size()+3)
+            Thread.sleep(10);
+        submit(dispatcher, "vm8").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        sent.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(busy.size()+4, stub.requests.get());
+    }
+
+    @SmallTest
+    public void testSubmitDoesNotConnect() throws Exception {
+        StubHttpServer stub = new StubHttpServer(new EchoHandler(Integer.MAX_VALUE));
+        Server server = SoapFixtures.server(stub);
+        final Thread caller = Thread.currentThread();
+        final Thread []connecting = new Thread[1];
+        //a slow connection, like a TLS handshake over a mobile network
+        ConnectionPool pool = new ConnectionPool(server, 4, TIMEOUT) {
+            @Override
+            public KeepAliveConnection acquire() throws IOException {
+                connecting[0] = Thread.currentThread();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                }
+                return super.acquire();
+            }
+        };
+        PipelinedDispatcher dispatcher = new PipelinedDispatcher(new HttpTransport(server, pool, TIMEOUT), pool, 2, PipelinedDispatcher.DEFAULT_DEPTH);
+        long start = System.currentTimeMillis();
+        List<SoapFuture<SoapSerializationEnvelope>> futures = submit(dispatcher, 10);
+        assertTrue(System.currentTimeMillis()-start < 250);
+        assertResponses(futures);
+        assertNotNull(connecting[0]);
+        assertNotSame(caller, connecting[0]);
+    }
+
+    @SmallTest
+    public void testLatencyPercentile() throws Exception {
+        EchoHandler echo = new EchoHandler(Integer.MAX_VALUE);
+        PipelinedDispatcher dispatcher = createDispatcher(new StubHttpServer(echo));
+        assertResponses(submit(dispatcher, 10));
+        assertEquals("Too few samples", -1, dispatcher.getLatency(95));
+        echo.delay = 20;
+        assertResponses(submit(dispatcher, 20));
+        assertTrue(dispatcher.getLatency(95) >= 20);
+        assertTrue(dispatcher.getLatency(95) >= dispatcher.getLatency(50));
+    }
+
+    @SmallTest
+    public void testPipelinable() {
+        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        envelope.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IEventSource_getEvent")
+                .addProperty("_this", "source").addProperty("listener", "listener").addProperty("timeout", 1000));
+        assertFalse(PipelinedDispatcher.isPipelinable(envelope));
+        envelope.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IConsole_powerDown").addProperty("_this", "console"));
+        assertFalse(PipelinedDispatcher.isPipelinable(envelope));
+
+        //streamed responses must be read exactly once
+        ResponseEnvelope<Integer> streaming = new ResponseEnvelope<Integer>(SoapEnvelope.VER11, new ResponseReader<Integer>() {
+            @Override
+            public Integer read(XmlPullParser parser) throws IOException, XmlPullParserException {
+                skip(parser);
+                return 0;
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return true;
+            }
+        });
+        streaming.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IVirtualBox_getMachines").addProperty("_this", "vbox"));
+        assertFalse(PipelinedDispatcher.isPipelinable(streaming));
+        envelope.setOutputSoapObject(streaming.bodyOut);
+        assertTrue(PipelinedDispatcher.isPipelinable(envelope));
+    }
+}
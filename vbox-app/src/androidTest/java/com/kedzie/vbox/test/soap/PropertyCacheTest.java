@@ -0,0 +1,140 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.api.IMachine;
+import com.kedzie.vbox.api.IMachineAsync;
+import com.kedzie.vbox.soap.PropertyCache;
+import com.kedzie.vbox.soap.ProxyRegistry;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches properties in the slots of their getters, and by key for getters with parameters
+ */
+public class PropertyCacheTest extends TestCase {
+    private static final PropertyCache.Layout PARENT = new PropertyCache.Layout(null, "getId", "getName");
+    private static final PropertyCache.Layout LAYOUT = new PropertyCache.Layout(PARENT, "getState");
+
+    @SmallTest
+    public void testSlots() throws Exception {
+        assertEquals(3, LAYOUT.size());
+        assertEquals(1, LAYOUT.slot("getName"));
+        assertEquals(2, LAYOUT.slot("getState"));
+        assertEquals(-1, LAYOUT.slot("getCPUProperty"));
+
+        PropertyCache cache = new PropertyCache(LAYOUT);
+        assertFalse(cache.has(1));
+        assertSame(PropertyCache.MISS, cache.get(1));
+        cache.put(1, "vm");
+        assertTrue(cache.has(1));
+        assertEquals("vm", cache.get(1));
+        //null is cached too
+        cache.put(2, null);
+        assertTrue(cache.has(2));
+        assertNull(cache.get(2));
+        assertTrue(cache.containsKey("getState"));
+        assertFalse(cache.has(0));
+
+        cache.put("getCPUProperty1", null);
+        assertNull(cache.find("getCPUProperty1"));
+        assertSame(PropertyCache.MISS, cache.find("getCPUProperty2"));
+        assertSame(PropertyCache.MISS, cache.find("getId"));
+    }
+
+    @SmallTest
+    public void testMap() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getName", "vm");
+        values.put("getCPUProperty1", true);
+        PropertyCache cache = new PropertyCache(LAYOUT, values);
+        assertEquals("vm", cache.get(1));
+        assertEquals(true, cache.get("getCPUProperty1"));
+        assertEquals(2, cache.size());
+        assertEquals(values, new HashMap<String, Object>(cache));
+
+        cache.remove("getName");
+        assertFalse(cache.has(1));
+        assertNull(cache.put("getId", "id"));
+        assertEquals("id", cache.get(0));
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertFalse(cache.containsKey("getCPUProperty1"));
+    }
+
+    @SmallTest
+    public void testPolicies() throws Exception {
+        PropertyCache.Layout layout = new PropertyCache.Layout(PARENT, "getState")
+                .immutable("getId")
+                .expire("getState", 50);
+        PropertyCache cache = new PropertyCache(layout);
+        cache.put(0, "id");
+        cache.put(1, "vm");
+        cache.put(2, "Running");
+        assertTrue(cache.has(2));
+
+        Thread.sleep(100);
+        assertSame(PropertyCache.MISS, cache.get(2));
+        assertFalse(cache.has(2));
+        assertFalse(cache.containsKey("getState"));
+        assertTrue(cache.has(1));
+        assertEquals(2, cache.size());
+
+        cache.put("getCPUProperty1", true);
+        cache.invalidate();
+        assertEquals("id", cache.get("getId"));
+        assertFalse(cache.has(1));
+        assertFalse(cache.containsKey("getCPUProperty1"));
+    }
+
+    @SmallTest
+    public void testConcurrentInvalidation() throws Exception {
+        final PropertyCache cache = new PropertyCache(LAYOUT);
+        final Throwable []error = new Throwable[1];
+        Thread invalidator = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for(int i=0; i<20000; i++) {
+                        cache.invalidate("getCPUProperty");
+                        cache.invalidate();
+                    }
+                } catch(Throwable e) {
+                    error[0] = e;
+                }
+            }
+        };
+        invalidator.start();
+        for(int i=0; invalidator.isAlive(); i++) {
+            cache.put("getCPUProperty" + (i%16), i);
+            cache.get("getCPUProperty" + (i%16));
+            cache.entrySet();
+            //a slot is either a hit with its value or a miss, never a null in between
+            cache.put(1, "vm");
+            Object name = cache.get(1);
+            if(name!=PropertyCache.MISS)
+                assertEquals("vm", name);
+        }
+        invalidator.join();
+        assertNull(error[0]);
+    }
+
+    @SmallTest
+    public void testProxy() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("getName", "vm");
+        IMachine machine = ProxyRegistry.get(IMachine.class).create(null, "machine", values);
+        assertTrue(machine.getCache() instanceof PropertyCache);
+        assertEquals("vm", machine.getName());
+
+        //the asynchronous companion shares the cache of the proxy
+        machine.getCache().put("getDescription", "description");
+        IMachineAsync async = new IMachineAsync(machine);
+        assertEquals("description", async.getDescription().get());
+        machine.clearCacheNamed("getName");
+        assertFalse(machine.getCache().containsKey("getName"));
+    }
+}
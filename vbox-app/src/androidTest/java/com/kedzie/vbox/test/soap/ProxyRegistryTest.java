@@ -0,0 +1,150 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.api.IDisplay;
+import com.kedzie.vbox.api.IDisplayAsync;
+import com.kedzie.vbox.api.IEvent;
+import com.kedzie.vbox.api.IMachine;
+import com.kedzie.vbox.api.IMachineStateChangedEvent;
+import com.kedzie.vbox.api.IManagedObjectRef;
+import com.kedzie.vbox.api.IMedium;
+import com.kedzie.vbox.api.ISnapshotTakenEvent;
+import com.kedzie.vbox.api.jaxb.BitmapFormat;
+import com.kedzie.vbox.api.jaxb.IMediumAttachment;
+import com.kedzie.vbox.api.jaxb.VBoxEventType;
+import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.ProxyRegistry;
+import com.kedzie.vbox.soap.SoapFuture;
+import com.kedzie.vbox.soap.VBoxSvc;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates proxies with the generated factories
+ */
+public class ProxyRegistryTest extends TestCase {
+    private static final String TYPE_RESPONSE = SoapFixtures.returnval("IEvent_getType", "OnMachineStateChanged");
+    private static final String ATTACHMENTS_RESPONSE = SoapFixtures.response("IMachine_getMediumAttachments",
+            "<returnval><medium>medium-1</medium><controller>SATA</controller><port>1</port></returnval>" +
+            "<returnval><medium></medium><controller>IDE</controller></returnval>");
+    private static final String SCREENSHOT_RESPONSE = SoapFixtures.returnval("IDisplay_takeScreenShotToArray", "AQID");
+
+    /**
+     * Remembers the deadlines of the calls made by the proxies
+     */
+    private static class TimedVBoxSvc extends VBoxSvc {
+        final List<Integer> timeouts = new ArrayList<Integer>();
+
+        TimedVBoxSvc(Server server) {
+            super(server);
+        }
+
+        @Override
+        public void httpCall(String request, SoapSerializationEnvelope envelope, int timeout, boolean hedge) throws IOException {
+            timeouts.add(timeout);
+            super.httpCall(request, envelope, timeout, hedge);
+        }
+
+        @Override
+        public SoapFuture<SoapSerializationEnvelope> httpCallAsync(String request, SoapSerializationEnvelope envelope, int timeout, boolean hedge) {
+            timeouts.add(timeout);
+            return super.httpCallAsync(request, envelope, timeout, hedge);
+        }
+    }
+
+    /** Not a <code>@KSOAP</code> interface */
+    private interface IUnknown extends IManagedObjectRef {
+    }
+
+    @SmallTest
+    public void testCreate() throws Exception {
+        Map<String, Object> cache = new HashMap<String, Object>();
+        cache.put("getName", "vm");
+        IMachine machine = ProxyRegistry.get(IMachine.class).create(null, "machine", cache);
+        assertEquals("machine", machine.getIdRef());
+        assertEquals("vm", machine.getName());
+        assertEquals("com.kedzie.vbox.api.IMachine$$Proxy", machine.getClass().getName());
+
+        ISnapshotTakenEvent event = ProxyRegistry.get(ISnapshotTakenEvent.class).create(null, "event", null);
+        assertEquals("event", event.getIdRef());
+        assertNotNull(event.getCache());
+
+        assertNull(ProxyRegistry.get(IUnknown.class));
+    }
+
+    @SmallTest
+    public void testEventDispatch() throws Exception {
+        assertTrue(ProxyRegistry.getEvent(VBoxEventType.ON_MACHINE_STATE_CHANGED).create(null, "event", null) instanceof IMachineStateChangedEvent);
+        assertNull(ProxyRegistry.getEvent(VBoxEventType.ON_MACHINE_REGISTERED));
+    }
+
+    /**
+     * The type of an event is asked once, and kept by the proxy of its interface
+     */
+    @SmallTest
+    public void testEventType() throws Exception {
+        StubHttpServer server = SoapFixtures.answering("IEvent_getType", TYPE_RESPONSE);
+        try {
+            VBoxSvc vmgr = new VBoxSvc(SoapFixtures.server(server));
+            IEvent event = vmgr.getProxy(IEvent.class, "event");
+            assertTrue(event instanceof IMachineStateChangedEvent);
+            assertSame(VBoxEventType.ON_MACHINE_STATE_CHANGED, event.getType());
+            assertEquals(1, server.requests.get());
+
+            Map<String, Object> cache = new HashMap<String, Object>(event.getCache());
+            assertTrue(vmgr.getProxy(IEvent.class, "event", cache) instanceof IMachineStateChangedEvent);
+            assertEquals(1, server.requests.get());
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * The deadline of a method comes from its <code>@KSOAP(timeout)</code>, for both the proxy and its asynchronous companion
+     */
+    @SmallTest
+    public void testCallTimeout() throws Exception {
+        StubHttpServer server = SoapFixtures.answering("IDisplay_takeScreenShotToArray", SCREENSHOT_RESPONSE);
+        try {
+            TimedVBoxSvc vmgr = new TimedVBoxSvc(SoapFixtures.server(server));
+            IDisplay display = vmgr.getProxy(IDisplay.class, "display");
+            assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, display.takeScreenShotToArray(0, 640, 480, BitmapFormat.PNG)));
+            assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, new IDisplayAsync(display).takeScreenShotToArray(0, 640, 480, BitmapFormat.PNG).get()));
+            assertEquals(Arrays.asList(60000, 60000), vmgr.timeouts);
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Proxies held by structures are made once the call completed
+     */
+    @SmallTest
+    public void testStructProxies() throws Exception {
+        StubHttpServer server = SoapFixtures.answering("IMachine_getMediumAttachments", ATTACHMENTS_RESPONSE);
+        try {
+            VBoxSvc vmgr = new VBoxSvc(SoapFixtures.server(server));
+            List<IMediumAttachment> attachments = vmgr.getProxy(IMachine.class, "machine").getMediumAttachments();
+            assertEquals(2, attachments.size());
+            IMedium medium = attachments.get(0).getMedium();
+            assertNotNull(medium);
+            assertEquals("medium-1", medium.getIdRef());
+            assertEquals("SATA", attachments.get(0).getController());
+            assertEquals(1, attachments.get(0).getPort());
+            assertNull(attachments.get(1).getMedium());
+            assertEquals("IDE", attachments.get(1).getController());
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.ConnectionPool;
+import com.kedzie.vbox.soap.HttpTransport;
+import com.kedzie.vbox.soap.KeepAliveConnection.CompressionRejectedException;
+import com.kedzie.vbox.soap.VBoxSvc;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.SoapFault;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sends requests of different sizes to a local stub server which may or may not accept compressed requests
+ */
+public class RequestCompressionTest extends TestCase {
+    private static final int TIMEOUT = 5000;
+    private static final String FAULT = SoapFixtures.fault("SOAP-ENV:Client", "Syntax error");
+
+    /**
+     * Answers with the length of the <code>value</code> parameter.  Compressed requests are decompressed if
+     * <code>gzip</code> is set, otherwise answered with a bare HTTP error.
+     */
+    private static class CompressionHandler implements StubHttpServer.Handler {
+        final boolean gzip;
+        volatile int compressed;
+        /** answer every request with a SOAP fault */
+        volatile boolean fault;
+
+        CompressionHandler(boolean gzip) {
+            this.gzip = gzip;
+        }
+
+        @Override
+        public StubHttpServer.Response handle(StubHttpServer.Request request, int count) throws IOException {
+            String encoding = request.getHeader("Content-Encoding");
+            boolean encoded = encoding!=null && encoding.contains("gzip");
+            if(encoded)
+                compressed++;
+            if(fault)
+                return new StubHttpServer.Response(500, "text/xml", FAULT);
+            if(!encoded)
+                return StubHttpServer.Response.ok(SoapFixtures.returnval("IMachine_setExtraData", String.valueOf(valueLength(request.getText()))));
+            if(gzip)
+                return StubHttpServer.Response.ok(SoapFixtures.returnval("IMachine_setExtraData", String.valueOf(valueLength(decompress(request.body)))));
+            return new StubHttpServer.Response(400, "text/plain", "Bad Request");
+        }
+
+        private static String decompress(byte[] body) throws IOException {
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for(int n; (n = in.read(buf)) != -1; )
+                out.write(buf, 0, n);
+            return out.toString("UTF-8");
+        }
+
+        private static int valueLength(String body) {
+            int start = body.indexOf('>', body.indexOf("<value"))+1;
+            return body.indexOf('<', start) - start;
+        }
+    }
+
+    private CompressionHandler handler;
+    private StubHttpServer stub;
+    private HttpTransport transport;
+    private ConnectionPool pool;
+
+    private void start(boolean gzip) throws IOException {
+        handler = new CompressionHandler(gzip);
+        stub = new StubHttpServer(handler);
+        Server server = SoapFixtures.server(stub);
+        pool = new ConnectionPool(server, 2, TIMEOUT);
+        transport = new HttpTransport(server, pool, TIMEOUT);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.evictAll();
+        stub.close();
+        super.tearDown();
+    }
+
+    /**
+     * Set extra data with a value of the given length
+     * @return length of the value received by the server
+     */
+    private int call(int length) throws Exception {
+        StringBuilder value = new StringBuilder(length);
+        for(int i=0; i<length; i++)
+            value.append((char)('a' + i%7));
+        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        envelope.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IMachine_setExtraData")
+                .addProperty("_this", "machine").addProperty("key", "GUI/Data").addProperty("value", value.toString()));
+        transport.call(VBoxSvc.NAMESPACE + "IMachine_setExtraData", envelope);
+        return Integer.parseInt(((SoapObject)envelope.getResponse()).getProperty(0).toString());
+    }
+
+    @SmallTest
+    public void testCompressed() throws Exception {
+        start(true);
+        assertEquals(100, call(100));
+        assertEquals(0, handler.compressed);
+        //fits the request buffer
+        assertEquals(20000, call(20000));
+        //chunked
+        assertEquals(100000, call(100000));
+        assertEquals(2, handler.compressed);
+        assertEquals(1, stub.accepted.get());
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.compressed);
+        assertEquals(0, stats.compressionRejected);
+        assertTrue(stats.uncompressedBytes > 120000);
+        assertTrue(stats.toString(), stats.getCompressionRatio() < 0.1);
+    }
+
+    @SmallTest
+    public void testThreshold() throws Exception {
+        start(true);
+        pool.setCompressionThreshold(0);
+        assertEquals(100000, call(100000));
+        assertEquals(0, handler.compressed);
+        pool.setCompressionThreshold(50);
+        assertEquals(100, call(100));
+        assertEquals(1, handler.compressed);
+    }
+
+    @SmallTest
+    public void testRejected() throws Exception {
+        start(false);
+        try {
+            call(20000);
+            fail("Rejected request accepted");
+        } catch(CompressionRejectedException e) {
+        }
+        assertEquals(20000, call(20000));
+        assertEquals(100000, call(100000));
+        //the connection was kept
+        assertEquals(1, stub.accepted.get());
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.compressed);
+        assertEquals(1, stats.compressionRejected);
+    }
+
+    @SmallTest
+    public void testFaultNotRejected() throws Exception {
+        start(true);
+        //vboxwebsrv sends faults with HTTP 500, they reach the caller and the request isn't made again
+        handler.fault = true;
+        try {
+            call(20000);
+            fail("Fault not delivered");
+        } catch(SoapFault e) {
+            assertEquals("Syntax error", e.faultstring);
+        }
+        assertEquals(1, handler.compressed);
+        handler.fault = false;
+        assertEquals(20000, call(20000));
+        assertEquals(2, handler.compressed);
+        assertEquals(1, stub.accepted.get());
+        assertEquals(0, pool.getStats().compressionRejected);
+    }
+}
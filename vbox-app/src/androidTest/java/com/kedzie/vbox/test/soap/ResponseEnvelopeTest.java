@@ -0,0 +1,158 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.api.IVirtualBox;
+import com.kedzie.vbox.soap.ResponseEnvelope;
+import com.kedzie.vbox.soap.ResponseReader;
+import com.kedzie.vbox.soap.SoapFuture;
+import com.kedzie.vbox.soap.VBoxFault;
+import com.kedzie.vbox.soap.VBoxSvc;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.SoapFault;
+import org.ksoap2.serialization.SoapObject;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses canned responses with a {@link ResponseReader} like the ones generated for proxies
+ */
+public class ResponseEnvelopeTest extends TestCase {
+    /** reads <code>List&lt;Integer&gt;</code>, skipping empty elements */
+    private static final ResponseReader<List<Integer>> LIST = new ResponseReader<List<Integer>>() {
+        @Override
+        public List<Integer> read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            List<Integer> list = new ArrayList<Integer>();
+            while(nextElement(parser)) {
+                Integer value = readInteger(parser);
+                if(value!=null)
+                    list.add(value);
+            }
+            return list;
+        }
+    };
+
+    /** reads the first element as a <code>String</code> */
+    private static final ResponseReader<String> FIRST = new ResponseReader<String>() {
+        @Override
+        public String read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            if(!nextElement(parser))
+                return null;
+            String value = readText(parser);
+            skipRemaining(parser);
+            return value;
+        }
+    };
+
+    private <T> ResponseEnvelope<T> parse(ResponseReader<T> reader, String body) throws Exception {
+        return parse(new ResponseEnvelope<T>(SoapEnvelope.VER11, reader), body);
+    }
+
+    private <T> ResponseEnvelope<T> parse(ResponseEnvelope<T> envelope, String body) throws Exception {
+        return SoapFixtures.parse(envelope, SoapFixtures.envelope(body));
+    }
+
+    @SmallTest
+    public void testList() throws Exception {
+        ResponseEnvelope<List<Integer>> envelope = parse(LIST,
+                "<vbox:IHost_getProcessorCountResponse><returnval>1</returnval><returnval/><returnval xsi:nil=\"true\"/><returnval>3</returnval></vbox:IHost_getProcessorCountResponse>");
+        assertEquals(Arrays.asList(1, 3), envelope.bodyIn);
+    }
+
+    /**
+     * Elements handed to a consumer as they are read, like the reader generated for streaming variants
+     */
+    @SmallTest
+    public void testStreaming() throws Exception {
+        final List<Integer> consumed = new ArrayList<Integer>();
+        final SoapFuture.Consumer<Integer> consumer = new SoapFuture.Consumer<Integer>() {
+            @Override
+            public void accept(Integer element) {
+                consumed.add(element);
+            }
+        };
+        ResponseReader<Integer> reader = new ResponseReader<Integer>() {
+            @Override
+            public Integer read(XmlPullParser parser) throws IOException, XmlPullParserException {
+                int count = 0;
+                while(nextElement(parser)) {
+                    Integer value = readInteger(parser);
+                    if(value!=null) {
+                        deliver(consumer, value, SoapFuture.DIRECT);
+                        //each element is handed over before the next one is read
+                        assertEquals(++count, consumed.size());
+                    }
+                }
+                return count;
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return true;
+            }
+        };
+        ResponseEnvelope<Integer> envelope = parse(reader,
+                "<vbox:IHost_getProcessorCountResponse><returnval>1</returnval><returnval/><returnval>3</returnval></vbox:IHost_getProcessorCountResponse>");
+        assertEquals(2, envelope.bodyIn);
+        assertEquals(Arrays.asList(1, 3), consumed);
+        assertTrue(envelope.copyRequest().getReader().isStreaming());
+        assertFalse(LIST.isStreaming());
+    }
+
+    @SmallTest
+    public void testFirst() throws Exception {
+        assertEquals("a & b", parse(FIRST,
+                "<vbox:IMachine_getNameResponse><returnval>a &amp; b</returnval><other><nested>x</nested></other></vbox:IMachine_getNameResponse>").bodyIn);
+        assertNull(parse(FIRST, "<vbox:IMachine_getNameResponse/>").bodyIn);
+        assertNull(parse(ResponseReader.NONE, "<vbox:IMachine_setNameResponse><returnval>x</returnval></vbox:IMachine_setNameResponse>").bodyIn);
+    }
+
+    @SmallTest
+    public void testFault() throws Exception {
+        Object body = parse(FIRST, "<SOAP-ENV:Fault><faultcode>SOAP-ENV:Client</faultcode><faultstring>Invalid object</faultstring></SOAP-ENV:Fault>").bodyIn;
+        assertTrue(body instanceof SoapFault);
+        assertEquals("Invalid object", ((SoapFault)body).faultstring);
+    }
+
+    @SmallTest
+    public void testRuntimeFault() throws Exception {
+        ResponseEnvelope<String> envelope = new ResponseEnvelope<String>(SoapEnvelope.VER11, FIRST);
+        envelope.setOutputSoapObject(new SoapObject(VBoxSvc.NAMESPACE, "IMachine_lockMachine"));
+        parse(envelope, "<SOAP-ENV:Fault><faultcode>SOAP-ENV:Client</faultcode><faultstring>VirtualBox error: Machine is locked (0x80bb000c)</faultstring>" +
+                "<detail><vbox:RuntimeFault><resultCode>-2135228404</resultCode><returnval>errorinfo-1</returnval></vbox:RuntimeFault></detail></SOAP-ENV:Fault>");
+        VBoxFault fault = (VBoxFault)envelope.bodyIn;
+        assertEquals("IMachine_lockMachine", fault.getMethod());
+        assertEquals("IMachine", fault.getInterface());
+        assertEquals(IVirtualBox.VBOX_E_OBJECT_IN_USE, fault.getResultCode());
+        assertEquals("errorinfo-1", fault.getErrorInfo());
+        assertEquals("VirtualBox error: Machine is locked (0x80bb000c)", fault.getMessage());
+        assertNull(fault.detail);
+        assertTrue(fault.isTransient());
+        assertFalse(fault.isInvalidObject());
+
+        parse(envelope, "<SOAP-ENV:Fault><faultcode>SOAP-ENV:Client</faultcode><faultstring>Invalid managed object reference</faultstring>" +
+                "<detail><vbox:InvalidObjectFault><badObjectID>deadbeef-1</badObjectID></vbox:InvalidObjectFault></detail></SOAP-ENV:Fault>");
+        fault = (VBoxFault)envelope.bodyIn;
+        assertTrue(fault.isInvalidObject());
+        assertEquals("deadbeef-1", fault.getBadObject());
+        assertEquals(0, fault.getResultCode());
+        assertFalse(fault.isTransient());
+    }
+
+    @SmallTest
+    public void testMalformedValue() throws Exception {
+        try {
+            parse(LIST, "<vbox:IHost_getProcessorCountResponse><returnval>x</returnval></vbox:IHost_getProcessorCountResponse>");
+            fail("Malformed value accepted");
+        } catch(XmlPullParserException e) {
+        }
+    }
+}
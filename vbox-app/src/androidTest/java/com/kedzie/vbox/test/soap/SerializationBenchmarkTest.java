@@ -0,0 +1,104 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.SymbolTable;
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Measures how fast the serialization envelope parses responses into <code>SoapObject</code> trees and SOAP encoded arrays.
+ * Each response is parsed once with a new symbol table, which has to allocate every name again, and once with the
+ * table of the thread, which already holds them like on the threads reading responses.
+ */
+public class SerializationBenchmarkTest extends TestCase {
+    private static final String TAG = "SerializationBenchmark";
+    private static final int ELEMENTS = 100;
+    /** fields of an <code>IMediumAttachment</code>, repeated by every element */
+    private static final String[] PROPERTIES = { "medium", "controller", "port", "device", "type", "passthrough",
+            "temporaryEject", "isEjected", "nonRotational", "discard", "hotPluggable", "bandwidthGroup" };
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    private static String _structs;
+    private static String _array;
+
+    @Override
+    protected void setUp() throws Exception {
+        if(_structs!=null)
+            return;
+        StringBuilder structs = new StringBuilder();
+        StringBuilder array = new StringBuilder();
+        for(int i=0; i<ELEMENTS; i++) {
+            structs.append("<returnval kind=\"medium\">");
+            for(int j=0; j<PROPERTIES.length; j++)
+                structs.append('<').append(PROPERTIES[j]).append(">value ").append(i).append('.').append(j).append("</").append(PROPERTIES[j]).append('>');
+            structs.append("</returnval>");
+            array.append("<item xsi:type=\"xsd:int\">").append(i).append("</item>");
+        }
+        _structs = SoapFixtures.response("IMachine_getMediumAttachments", structs.toString());
+        _array = SoapFixtures.response("IHost_getProcessors", "<returnval xsi:type=\"SOAP-ENC:Array\" SOAP-ENC:arrayType=\"xsd:int[" + ELEMENTS + "]\">"
+                + array + "</returnval>");
+    }
+
+    private static Object parse(String response, SymbolTable symbols) throws Exception {
+        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        XmlPullParser parser = new KXmlParser(symbols==null ? new SymbolTable() : symbols);
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(response));
+        envelope.parse(parser);
+        return envelope.bodyIn;
+    }
+
+    /**
+     * @param symbols   table shared by the responses, or <code>null</code> for a new one each time
+     * @return responses parsed per second
+     */
+    private static double measure(String response, SymbolTable symbols) throws Exception {
+        for(int i=0; i<WARMUP; i++)
+            parse(response, symbols);
+        long start = System.nanoTime();
+        for(int i=0; i<ITERATIONS; i++)
+            parse(response, symbols);
+        return ITERATIONS * 1e9 / (System.nanoTime() - start);
+    }
+
+    /**
+     * Log the throughput without and with interned names
+     */
+    private static void compare(String name, String response) throws Exception {
+        double fresh = measure(response, null);
+        double interned = measure(response, SymbolTable.forThread());
+        Log.i(TAG, String.format("%s: %.0f responses/s with a new symbol table, %.0f/s interned (%+.1f%%)",
+                name, fresh, interned, (interned/fresh - 1) * 100));
+        assertTrue(fresh > 0 && interned > 0);
+    }
+
+    @LargeTest
+    public void testStructs() throws Exception {
+        SoapObject response = (SoapObject)parse(_structs, SymbolTable.forThread());
+        assertEquals(ELEMENTS, response.getPropertyCount());
+        SoapObject last = (SoapObject)response.getProperty(ELEMENTS-1);
+        assertEquals(PROPERTIES.length, last.getPropertyCount());
+        assertEquals("medium", last.getAttribute("kind"));
+        assertEquals("value " + (ELEMENTS-1) + "." + (PROPERTIES.length-1), last.getPropertyAsString("bandwidthGroup"));
+        compare("structs", _structs);
+    }
+
+    @LargeTest
+    public void testArray() throws Exception {
+        List<?> array = (List<?>)((SoapObject)parse(_array, SymbolTable.forThread())).getProperty(0);
+        assertEquals(ELEMENTS, array.size());
+        assertEquals(ELEMENTS-1, array.get(ELEMENTS-1));
+        compare("array", _array);
+    }
+}
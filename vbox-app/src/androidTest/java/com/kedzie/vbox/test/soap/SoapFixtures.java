@@ -0,0 +1,104 @@
+package com.kedzie.vbox.test.soap;
+
+import com.kedzie.vbox.server.Server;
+
+import org.ksoap2.SoapEnvelope;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Responses of <code>vboxwebsrv</code> and the local server, shared by the tests
+ */
+public final class SoapFixtures {
+    private static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:SOAP-ENC=\"http://schemas.xmlsoap.org/soap/encoding/\" " +
+            "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:vbox=\"http://www.virtualbox.org/\">" +
+            "<SOAP-ENV:Body>";
+    private static final String TAIL = "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+
+    private SoapFixtures() {
+    }
+
+    /**
+     * @param body  content of the SOAP body
+     * @return envelope declaring the namespaces used by the responses
+     */
+    public static String envelope(String body) {
+        return HEAD + body + TAIL;
+    }
+
+    /**
+     * @param method    method, like <code>IMachine_getName</code>
+     * @param content   content of the response element
+     * @return response envelope of the method
+     */
+    public static String response(String method, String content) {
+        return envelope("<vbox:" + method + "Response>" + content + "</vbox:" + method + "Response>");
+    }
+
+    /**
+     * @param method    method, like <code>IMachine_getName</code>
+     * @param value     text of the return value
+     * @return response envelope of the method with a single return value
+     */
+    public static String returnval(String method, String value) {
+        return response(method, "<returnval>" + value + "</returnval>");
+    }
+
+    /**
+     * @param code      fault code, like <code>SOAP-ENV:Client</code>
+     * @param message   fault string
+     * @return envelope of a SOAP fault
+     */
+    public static String fault(String code, String message) {
+        return envelope("<SOAP-ENV:Fault><faultcode>" + code + "</faultcode><faultstring>" + message + "</faultstring></SOAP-ENV:Fault>");
+    }
+
+    /**
+     * @param method    method, like <code>IMachine_getName</code>
+     * @param xml       response to every call of the method
+     * @return local server answering the method, which closes the connection on any other request
+     */
+    public static StubHttpServer answering(String method, final String xml) throws IOException {
+        final String element = method + ">";
+        return new StubHttpServer(new StubHttpServer.Handler() {
+            @Override
+            public StubHttpServer.Response handle(StubHttpServer.Request request, int count) {
+                return request.getText().contains(element) ? StubHttpServer.Response.ok(xml) : null;
+            }
+        });
+    }
+
+    /**
+     * @param stub  local server
+     * @return server entry to connect to it
+     */
+    public static Server server(StubHttpServer stub) {
+        return new Server("", "127.0.0.1", false, stub.getPort(), "", "");
+    }
+
+    /**
+     * Parse a response into an envelope, with a namespace aware parser like the transports
+     * @param envelope  the envelope
+     * @param xml       the response
+     * @return the envelope
+     */
+    public static <E extends SoapEnvelope> E parse(E envelope, String xml) throws Exception {
+        envelope.parse(parser(xml));
+        return envelope;
+    }
+
+    /**
+     * @param xml   the document
+     * @return namespace aware parser at the start of the document
+     */
+    public static XmlPullParser parser(String xml) throws Exception {
+        XmlPullParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(xml));
+        return parser;
+    }
+}
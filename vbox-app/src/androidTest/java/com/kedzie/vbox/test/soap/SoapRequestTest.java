@@ -0,0 +1,96 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kedzie.vbox.soap.SoapRequest;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapPrimitive;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.ksoap2.transport.HttpTransportSE;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compares requests rendered by {@link SoapRequest} templates with the serializer's output for the same <code>SoapObject</code>
+ */
+public class SoapRequestTest extends TestCase {
+    private static final String NAMESPACE = "http://www.virtualbox.org/";
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema";
+
+    private static final SoapRequest.Template SET_CPU_PROPERTY = new SoapRequest.Template("IMachine_setCPUProperty",
+            "_this", "d:string", "property", "n0:CPUPropertyType", "value", "d:boolean", "count", "d:unsignedInt", "groups", "d:string");
+
+    /**
+     * Exposes the serializer of the transport
+     */
+    private static class Serializer extends HttpTransportSE {
+        Serializer() {
+            super("http://localhost/");
+        }
+
+        String write(SoapObject request) throws Exception {
+            SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+            envelope.setAddAdornments(false);
+            envelope.setOutputSoapObject(request);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeRequestData(envelope, out);
+            return out.toString("UTF-8");
+        }
+    }
+
+    private static String write(SoapRequest request) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeTo(out);
+        out.write("\r\n".getBytes());
+        return out.toString("UTF-8");
+    }
+
+    @SmallTest
+    public void testSameAsSerializer() throws Exception {
+        SoapRequest request = SET_CPU_PROPERTY.newRequest()
+                .add(0, "a<b>&\"c'\t")
+                .add(1, "PAE")
+                .add(2, true)
+                .add(3, 4)
+                .add(4, "g1")
+                .add(4, "g2");
+        SoapObject expected = new SoapObject(NAMESPACE, "IMachine_setCPUProperty")
+                .addProperty("_this", "a<b>&\"c'\t")
+                .addProperty("property", new SoapPrimitive(NAMESPACE, "CPUPropertyType", "PAE"))
+                .addProperty("value", Boolean.TRUE)
+                .addProperty("count", new SoapPrimitive(XSD, "unsignedInt", "4"))
+                .addProperty("groups", "g1")
+                .addProperty("groups", "g2");
+        assertEquals(new Serializer().write(expected), write(request));
+        assertEquals(6, request.getPropertyCount());
+        assertEquals(NAMESPACE + "IMachine_setCPUProperty", request.getSoapAction());
+    }
+
+    @SmallTest
+    public void testNull() throws Exception {
+        SoapRequest request = new SoapRequest.Template("IWebsessionManager_logon", "username", "d:string").newRequest().add(0, null);
+        SoapObject expected = new SoapObject(NAMESPACE, "IWebsessionManager_logon").addProperty("username", null);
+        assertEquals(new Serializer().write(expected), write(request));
+    }
+
+    @SmallTest
+    public void testUTF8() throws Exception {
+        String value = "é€😀x";
+        SoapRequest request = new SoapRequest.Template("IMachine_setName", "name", "d:string").newRequest().add(0, value);
+        assertTrue(write(request).contains(">" + value + "</name>"));
+        assertEquals("<name i:type=\"d:string\">" + value + "</name>", request.getArguments());
+    }
+
+    @SmallTest
+    public void testGrowsBuffer() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for(int i=0; i<1000; i++)
+            value.append("&é");
+        SoapRequest request = new SoapRequest.Template("IMachine_setDescription", "description", "d:string").newRequest().add(0, value.toString());
+        assertEquals(value.toString().replace("&", "&amp;"), request.getArguments().replaceAll("</?description[^>]*>", ""));
+    }
+}
@@ -0,0 +1,235 @@
+package com.kedzie.vbox.test.soap;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local keep-alive HTTP server for tests.  Each connection is served by its own thread, which reads requests framed by
+ * <code>Content-Length</code> or chunked transfer-encoding and answers them in order with a {@link Handler}.
+ */
+public class StubHttpServer extends Thread {
+
+    /**
+     * Answers the requests of the server
+     */
+    public interface Handler {
+        /**
+         * @param request   the request
+         * @param count     number of the request on its connection, from 1
+         * @return the response, or <code>null</code> to close the connection without one
+         */
+        Response handle(Request request, int count) throws Exception;
+    }
+
+    /**
+     * Request read by the server
+     */
+    public static class Request {
+        public final String requestLine;
+        /** headers by lower case name */
+        public final Map<String, String> headers = new HashMap<String, String>();
+        public byte[] body;
+
+        Request(String requestLine) {
+            this.requestLine = requestLine;
+        }
+
+        /**
+         * @param name  header name
+         * @return the header, or <code>null</code>
+         */
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        /**
+         * @return the body as UTF-8 text
+         */
+        public String getText() {
+            try {
+                return new String(body, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Response to write
+     */
+    public static class Response {
+        final int code;
+        final String body;
+        final String contentType;
+        /** close the connection after the response */
+        boolean close;
+
+        public Response(int code, String contentType, String body) {
+            this.code = code;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * @param xml   SOAP envelope
+         * @return response with status 200
+         */
+        public static Response ok(String xml) {
+            return new Response(200, "text/xml", xml);
+        }
+
+        /**
+         * Close the connection after this response
+         */
+        public Response close() {
+            close = true;
+            return this;
+        }
+    }
+
+    public final AtomicInteger accepted = new AtomicInteger();
+    public final AtomicInteger requests = new AtomicInteger();
+    private final ServerSocket _socket;
+    private final Handler _handler;
+    private final List<Socket> _clients = new ArrayList<Socket>();
+
+    public StubHttpServer(Handler handler) throws IOException {
+        _handler = handler;
+        _socket = new ServerSocket(0);
+        setDaemon(true);
+        start();
+    }
+
+    public int getPort() {
+        return _socket.getLocalPort();
+    }
+
+    /**
+     * Wait for the server to accept connections the client already opened
+     * @param count     number of connections expected
+     * @return number of connections accepted, which is less than <code>count</code> if they didn't all arrive within a second
+     */
+    public int awaitAccepted(int count) throws InterruptedException {
+        for(long deadline = System.currentTimeMillis()+1000; accepted.get()<count && System.currentTimeMillis()<deadline; )
+            Thread.sleep(5);
+        return accepted.get();
+    }
+
+    /**
+     * Stop accepting connections and close the open ones
+     */
+    public void close() throws IOException {
+        _socket.close();
+        synchronized (_clients) {
+            for(Socket client : _clients)
+                client.close();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(true) {
+                final Socket client = _socket.accept();
+                accepted.incrementAndGet();
+                synchronized (_clients) {
+                    _clients.add(client);
+                }
+                Thread connection = new Thread() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                };
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } catch (IOException e) {
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            for(int count=1; ; count++) {
+                Request request = readRequest(in);
+                if(request==null)
+                    break;
+                requests.incrementAndGet();
+                Response response = _handler.handle(request, count);
+                if(response==null)
+                    break;
+                byte[] body = response.body.getBytes("UTF-8");
+                out.write(("HTTP/1.1 " + response.code + (response.code<400 ? " OK" : " Error") + "\r\n"
+                        + "Content-Type: " + response.contentType + "\r\n"
+                        + "Content-Length: " + body.length + "\r\n"
+                        + (response.close ? "Connection: close\r\n" : "") + "\r\n").getBytes("ISO-8859-1"));
+                out.write(body);
+                out.flush();
+                if(response.close)
+                    break;
+            }
+            client.close();
+        } catch (Exception e) {
+        }
+    }
+
+    private static Request readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if(requestLine==null)
+            return null;
+        Request request = new Request(requestLine);
+        for(String line = readLine(in); line!=null && line.length()>0; line = readLine(in)) {
+            int colon = line.indexOf(':');
+            if(colon>0)
+                request.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon+1).trim());
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String encoding = request.getHeader("Transfer-Encoding");
+        if(encoding==null || !encoding.toLowerCase().contains("chunked")) {
+            String length = request.getHeader("Content-Length");
+            readBody(in, body, length==null ? 0 : Integer.parseInt(length));
+        } else {
+            for(int size; (size = Integer.parseInt(readLine(in).trim(), 16)) > 0; readLine(in))
+                readBody(in, body, size);
+            //end of trailers
+            readLine(in);
+        }
+        request.body = body.toByteArray();
+        return request;
+    }
+
+    private static void readBody(InputStream in, ByteArrayOutputStream body, int length) throws IOException {
+        byte[] buf = new byte[length];
+        for(int read=0; read<length; ) {
+            int n = in.read(buf, read, length-read);
+            if(n==-1)
+                throw new IOException("Unexpected end of request");
+            read += n;
+        }
+        body.write(buf);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for(int c; (c = in.read())!='\n'; ) {
+            if(c==-1)
+                return line.length()==0 ? null : line.toString();
+            if(c!='\r')
+                line.append((char)c);
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.SymbolTable;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.StringReader;
+
+/**
+ * Checks the names returned by parsers sharing a {@link SymbolTable}
+ */
+public class SymbolTableTest extends TestCase {
+    private static final String RESPONSE = SoapFixtures.returnval("IMachine_getName", "vm");
+
+    /**
+     * Parse up to the <code>returnval</code> element
+     */
+    private static XmlPullParser parse(SymbolTable symbols) throws Exception {
+        XmlPullParser parser = new KXmlParser(symbols);
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(RESPONSE));
+        for(int i=0; i<4; i++)
+            parser.nextTag();
+        assertEquals("returnval", parser.getName());
+        return parser;
+    }
+
+    @SmallTest
+    public void testSharedAcrossParses() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        XmlPullParser first = parse(symbols);
+        XmlPullParser second = parse(symbols);
+        assertSame(first.getName(), second.getName());
+        assertSame(first.getNamespace(), second.getNamespace());
+        second.nextText();
+        assertEquals(XmlPullParser.END_TAG, second.nextTag());
+        assertEquals("IMachine_getNameResponse", second.getName());
+        assertEquals("vbox", second.getPrefix());
+        assertEquals("http://www.virtualbox.org/", second.getNamespace());
+        assertSame(SymbolTable.forThread(), SymbolTable.forThread());
+    }
+
+    @SmallTest
+    public void testSubstring() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        String name = symbols.get("xsi:type".toCharArray(), 4, 4);
+        assertEquals("type", name);
+        assertSame(name, symbols.get("xsi:type", 4, 4));
+        assertEquals(1, symbols.size());
+    }
+
+    @SmallTest
+    public void testBounded() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        for(int i=0; i<SymbolTable.MAX_SYMBOLS*2; i++) {
+            char[] name = ("element" + i).toCharArray();
+            assertEquals("element" + i, symbols.get(name, 0, name.length));
+        }
+        assertEquals(SymbolTable.MAX_SYMBOLS, symbols.size());
+        char[] name = "element0".toCharArray();
+        assertSame(symbols.get(name, 0, name.length), symbols.get(name, 0, name.length));
+
+        char[] longName = new char[SymbolTable.MAX_LENGTH+1];
+        java.util.Arrays.fill(longName, 'a');
+        assertNotSame(symbols.get(longName, 0, longName.length), symbols.get(longName, 0, longName.length));
+    }
+}
@@ -0,0 +1,184 @@
+package com.kedzie.vbox.test.soap;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.kedzie.vbox.soap.ResponseEnvelope;
+import com.kedzie.vbox.soap.ResponseReader;
+
+import junit.framework.TestCase;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.serialization.PropertyInfo;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.ksoap2.transport.HttpTransportSE;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses and writes messages with the parser and serializer reused by each thread, and envelopes sharing their default mappings
+ */
+public class TransportReuseTest extends TestCase {
+    private static final String TAG = "TransportReuse";
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 20000;
+
+    /** reads the first element as text */
+    private static final ResponseReader<String> TEXT = new ResponseReader<String>() {
+        @Override
+        public String read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            if(!nextElement(parser))
+                return null;
+            String value = readText(parser);
+            skipRemaining(parser);
+            return value;
+        }
+    };
+
+    /**
+     * Exposes parsing and serialization of the transport
+     */
+    private static class Transport extends HttpTransportSE {
+        Transport() {
+            super("http://localhost:18083");
+        }
+
+        Object parse(String body) throws Exception {
+            ResponseEnvelope<String> envelope = new ResponseEnvelope<String>(SoapEnvelope.VER11, TEXT);
+            parseResponse(envelope, stream(body));
+            return envelope.bodyIn;
+        }
+
+        void parse(SoapEnvelope envelope, InputStream is) throws Exception {
+            parseResponse(envelope, is);
+        }
+
+        String write(SoapEnvelope envelope) throws IOException {
+            return new String(createRequestData(envelope), "UTF-8");
+        }
+    }
+
+    private static InputStream stream(String body) throws IOException {
+        return new ByteArrayInputStream(SoapFixtures.response("IMachine_getName", body).getBytes("UTF-8"));
+    }
+
+    @SmallTest
+    public void testParseAfterFailure() throws Exception {
+        Transport transport = new Transport();
+        assertEquals("vm", transport.parse("<returnval>vm</returnval>"));
+        try {
+            transport.parse("<returnval>v&bogus;</returnval>");
+            fail("Unknown entity accepted");
+        } catch(XmlPullParserException e) {
+        }
+        try {
+            transport.parse("<returnval><a></returnval>");
+            fail("Mismatched tag accepted");
+        } catch(XmlPullParserException e) {
+        }
+        assertEquals("v&m\r\n", transport.parse("<returnval>v&amp;m&#13;&#10;</returnval>"));
+        assertEquals("é", transport.parse("<returnval>é</returnval>"));
+    }
+
+    /**
+     * Text decoded by the UTF-8 reader kept by the parser, across its buffer boundaries
+     */
+    @SmallTest
+    public void testUtf8() throws Exception {
+        Transport transport = new Transport();
+        StringBuilder text = new StringBuilder();
+        for(int i=0; i<5000; i++)
+            text.append("a\u00e9\u20ac\ud83d\ude00");
+        String expected = text.toString();
+        assertEquals(expected, transport.parse("<returnval>" + expected + "</returnval>"));
+        assertEquals("vm", transport.parse("<returnval>vm</returnval>"));
+
+        byte[] malformed = SoapFixtures.response("IMachine_getName", "<returnval>a\u00e9</returnval>").getBytes("UTF-8");
+        int index = new String(malformed, "ISO-8859-1").indexOf('\u00c3');
+        malformed[index+1] = 'b';
+        ResponseEnvelope<String> envelope = new ResponseEnvelope<String>(SoapEnvelope.VER11, TEXT);
+        transport.parse(envelope, new ByteArrayInputStream(malformed));
+        assertEquals("a\ufffdb", envelope.bodyIn);
+    }
+
+    /**
+     * A response parsed by an envelope that parses another response with the same thread's parser
+     */
+    @SmallTest
+    public void testNestedParse() throws Exception {
+        final Transport transport = new Transport();
+        final Object[] nested = new Object[1];
+        ResponseEnvelope<String> envelope = new ResponseEnvelope<String>(SoapEnvelope.VER11, new ResponseReader<String>() {
+            @Override
+            public String read(XmlPullParser parser) throws IOException, XmlPullParserException {
+                try {
+                    nested[0] = transport.parse("<returnval>inner</returnval>");
+                } catch(Exception e) {
+                    throw new IOException(e.toString());
+                }
+                return TEXT.read(parser);
+            }
+        });
+        transport.parse(envelope, stream("<returnval>outer</returnval>"));
+        assertEquals("outer", envelope.bodyIn);
+        assertEquals("inner", nested[0]);
+    }
+
+    @SmallTest
+    public void testWriteRepeatedly() throws Exception {
+        Transport transport = new Transport();
+        //longer than the buffer of the thread's writer
+        StringBuilder description = new StringBuilder();
+        for(int i=0; i<2000; i++)
+            description.append("x€");
+        String first = null;
+        for(int i=0; i<3; i++) {
+            SoapObject request = new SoapObject("http://www.virtualbox.org/", "IMachine_setDescription");
+            request.addProperty("_this", "a&b");
+            request.addProperty("description", description.toString());
+            SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+            envelope.setOutputSoapObject(request);
+            String written = transport.write(envelope);
+            assertTrue(written, written.contains("<_this i:type=\"d:string\">a&amp;b</_this>"));
+            assertTrue(written.contains(">" + description.toString().replace("€", "&#8364;") + "</description>"));
+            if(first==null)
+                first = written;
+            assertEquals(first, written);
+        }
+    }
+
+    @SmallTest
+    public void testSharedMappings() throws Exception {
+        SoapSerializationEnvelope own = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        own.addMapping("http://www.virtualbox.org/", "IMachine", SoapObject.class);
+        SoapSerializationEnvelope other = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        assertEquals("IMachine", own.getInfo(SoapObject.class, null)[1]);
+        assertEquals("anyType", other.getInfo(SoapObject.class, null)[1]);
+        assertEquals("int", other.getInfo(PropertyInfo.INTEGER_CLASS, null)[1]);
+        assertEquals(SoapEnvelope.XSD1999, new SoapSerializationEnvelope(SoapEnvelope.VER10).getInfo(PropertyInfo.INTEGER_CLASS, null)[0]);
+        assertEquals(SoapEnvelope.XSD, other.getInfo(PropertyInfo.INTEGER_CLASS, null)[0]);
+    }
+
+    /**
+     * Parse a small response, like the ones polled for metrics and events
+     */
+    @LargeTest
+    public void testPollingThroughput() throws Exception {
+        Transport transport = new Transport();
+        byte[] response = SoapFixtures.response("IMachine_getName", "<returnval>42</returnval>").getBytes("UTF-8");
+        for(int i=0; i<WARMUP; i++)
+            transport.parse(new ResponseEnvelope<String>(SoapEnvelope.VER11, TEXT), new ByteArrayInputStream(response));
+        long start = System.nanoTime();
+        for(int i=0; i<ITERATIONS; i++)
+            transport.parse(new ResponseEnvelope<String>(SoapEnvelope.VER11, TEXT), new ByteArrayInputStream(response));
+        double perSecond = ITERATIONS * 1e9 / (System.nanoTime() - start);
+        Log.i(TAG, String.format("polling: %.0f responses/s", perSecond));
+        assertTrue(perSecond > 0);
+    }
+}
@@ -0,0 +1,49 @@
+package com.kedzie.vbox.api;
+
+import com.kedzie.vbox.soap.PropertyCache;
+import com.kedzie.vbox.soap.SoapFuture;
+import com.kedzie.vbox.soap.VBoxSvc;
+
+import java.util.Map;
+
+/**
+ * Base of the generated asynchronous companions of {@link IManagedObjectRef} interfaces.  Methods return a
+ * {@link SoapFuture} instead of blocking, so several calls can be in flight at once.
+ * <p>The companion shares the property cache of the proxy it was created from.</p>
+ * <pre>
+ * IMachineAsync machine = new IMachineAsync(proxy);
+ * SoapFuture&lt;MachineState&gt; state = machine.getState();
+ * SoapFuture&lt;String&gt; name = machine.getName();
+ * </pre>
+ * @author kedzie
+ */
+public abstract class BaseAsyncProxy {
+    public static final String NAMESPACE = "http://www.virtualbox.org/";
+
+    /** Unique identifier (UIUD) of {@link IManagedObjectRef} */
+    protected String _uiud;
+    /** cached property values */
+    protected PropertyCache _cache;
+    /** service */
+    protected VBoxSvc _vmgr;
+
+    /**
+     * @param layout    slots of the cached getters, for a proxy whose cache isn't a {@link PropertyCache} with them
+     */
+    public BaseAsyncProxy(IManagedObjectRef proxy, PropertyCache.Layout layout) {
+        _vmgr = proxy.getAPI();
+        _uiud = proxy.getIdRef();
+        Map<String, Object> cache = proxy.getCache();
+        if(cache instanceof PropertyCache && ((PropertyCache)cache).getLayout().size()>=layout.size())
+            _cache = (PropertyCache)cache;
+        else
+            _cache = new PropertyCache(layout, cache);
+    }
+
+    /**
+     * @return Managed object identifier
+     */
+    public String getIdRef() {
+        return _uiud;
+    }
+}
@@ -5,12 +5,14 @@ import android.os.Parcelable;
 import android.util.Log;
 
 import com.kedzie.vbox.app.Utils;
+import com.kedzie.vbox.soap.CacheInvalidator;
+import com.kedzie.vbox.soap.PropertyCache;
+import com.kedzie.vbox.soap.SoapFuture;
 import com.kedzie.vbox.soap.VBoxSvc;
 
+import org.ksoap2.SoapFault;
 import org.ksoap2.serialization.SoapSerializationEnvelope;
 
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -27,15 +29,28 @@ public abstract class BaseProxy implements IManagedObjectRef, Parcelable {
     /** Type of {@link IManagedObjectRef} */
     protected Class<?> _type;
     /** cached property values */
-    protected Map<String, Object> _cache;
+    protected PropertyCache _cache;
     /** service */
     protected VBoxSvc _vmgr;
 
     public BaseProxy(VBoxSvc vmgr, String id, Class<?> type, Map<String,Object> cache) {
+        this(vmgr, id, type, cache, PropertyCache.Layout.EMPTY);
+    }
+
+    /**
+     * @param cache     cached properties.  A {@link PropertyCache} of the same layout is shared, anything else is copied.
+     *                  The cache is tracked by the {@link CacheInvalidator} if events change properties of the type.
+     * @param layout    slots of the cached getters of the generated proxy
+     */
+    protected BaseProxy(VBoxSvc vmgr, String id, Class<?> type, Map<String,Object> cache, PropertyCache.Layout layout) {
         _vmgr = vmgr;
         _uiud=id;
         _type=type;
-        _cache = cache!=null ? cache : new HashMap<String, Object>();
+        if(cache instanceof PropertyCache && ((PropertyCache)cache).getLayout()==layout)
+            _cache = (PropertyCache)cache;
+        else
+            _cache = new PropertyCache(layout, cache);
+        CacheInvalidator.track(type, id, _cache);
         TAG = _type.getSimpleName();
     }
 
@@ -46,7 +61,7 @@ public abstract class BaseProxy implements IManagedObjectRef, Parcelable {
 
     @Override
     public void clearCache() {
-        _cache.clear();
+        _cache.invalidate();
     }
 
     @Override
@@ -96,24 +111,19 @@ public abstract class BaseProxy implements IManagedObjectRef, Parcelable {
     }
 
     /**
-     * Thread for making SOAP invocations
+     * Logs the outcome of asynchronous SOAP invocations, which have no caller to report to
      */
-    public class AsynchronousThread implements Runnable {
-        private String request;
-        private SoapSerializationEnvelope envelope;
+    public class AsynchronousCallback implements SoapFuture.Callback<SoapSerializationEnvelope> {
 
-        public AsynchronousThread(String request, SoapSerializationEnvelope envelope) {
-            this.request=request;
-            this.envelope = envelope;
+        @Override
+        public void onSuccess(SoapSerializationEnvelope envelope) {
+            if(envelope.bodyIn instanceof SoapFault)
+                Log.e(TAG, "Error", (SoapFault)envelope.bodyIn);
         }
 
         @Override
-        public void run() {
-            try {
-                _vmgr.httpCall(request, envelope);
-            } catch (IOException e) {
-                Log.e(TAG, "Error", e);
-            }
+        public void onFailure(Throwable t) {
+            Log.e(TAG, "Error", t);
         }
     }
 }
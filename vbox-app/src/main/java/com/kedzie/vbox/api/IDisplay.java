@@ -15,5 +15,5 @@ public interface IDisplay extends IManagedObjectRef {
 
     @KSOAP Map<String, String> getScreenResolution(@KSOAP(type="unsignedInt", value="screenId") int screenId);
 
-    @KSOAP byte[] takeScreenShotToArray(@KSOAP(type="unsignedInt", value="screenId") int screenId, @KSOAP(type="unsignedInt", value="width") int width, @KSOAP(type="unsignedInt", value="height") int height, @KSOAP("bitmapFormat") BitmapFormat bitmapFormat);
+    @KSOAP(timeout=60000) byte[] takeScreenShotToArray(@KSOAP(type="unsignedInt", value="screenId") int screenId, @KSOAP(type="unsignedInt", value="width") int width, @KSOAP(type="unsignedInt", value="height") int height, @KSOAP("bitmapFormat") BitmapFormat bitmapFormat);
 }
@@ -8,6 +8,7 @@ import android.os.Parcelable;
 
 import com.kedzie.vbox.api.jaxb.VBoxEventType;
 import com.kedzie.vbox.soap.KSOAP;
+import com.kedzie.vbox.soap.KSOAPCachePolicy;
 import com.kedzie.vbox.soap.VBoxSvc;
 
 /**
@@ -54,7 +55,7 @@ public interface IEvent extends IManagedObjectRef, Parcelable {
 		}
 	};
 	
-	@KSOAP(cacheable=true, prefix="IEvent") public VBoxEventType getType();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.IMMUTABLE, prefix="IEvent") public VBoxEventType getType();
 	@KSOAP(prefix="IEvent")	public Boolean waitProcessed(@KSOAP(type="unsignedInt", value="timeout") int timeout);
 	@KSOAP(prefix="IEvent")	public boolean setProcessed();
 	@KSOAP(cacheable=true, prefix="IEvent")  public IEventSource getSource();
@@ -26,6 +26,7 @@ import com.kedzie.vbox.api.jaxb.StorageBus;
 import com.kedzie.vbox.machine.group.TreeNode;
 import com.kedzie.vbox.soap.Asyncronous;
 import com.kedzie.vbox.soap.KSOAP;
+import com.kedzie.vbox.soap.KSOAPCachePolicy;
 import com.kedzie.vbox.soap.VBoxSvc;
 
 /**
@@ -81,12 +82,12 @@ public interface IMachine extends IManagedObjectRef, TreeNode, Parcelable {
 	/**
 	 * @return UUID of the virtual machine. 
 	 */
-	@KSOAP(cacheable=true) public String getId();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.IMMUTABLE) public String getId();
 	
 	 /**
 	  * @return Name of the virtual machine. 
 	  */
-	 @KSOAP(cacheable=true) public String getName() ;
+	 @KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=30000) public String getName() ;
 	 @Asyncronous public void setName(@KSOAP("name") String name);
 
 	 /**
@@ -98,7 +99,7 @@ public interface IMachine extends IManagedObjectRef, TreeNode, Parcelable {
 	/**
 	 * @return User-defined identifier of the Guest OS type. 
 	 */
-	@KSOAP(cacheable=true) public String getOSTypeId();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=30000) public String getOSTypeId();
 	@Asyncronous public void setOSTypeId(@KSOAP("OSTypeId") String osTypeId);
 	
 	/**
@@ -243,39 +244,39 @@ operation should be explicitly performed by the caller after the medium is succe
  	/**
  	 * @return Current session state for this machine. 
  	 */
- 	@KSOAP(cacheable=true) public SessionState getSessionState();
+ 	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=2000) public SessionState getSessionState();
 
 	/**
 	 * @return  Type of the session. 
 	 */
-	@KSOAP(cacheable=true) public SessionType getSessionType();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=2000) public SessionType getSessionType();
 	
 	@KSOAP(cacheable=true) public Boolean getSettingsModified();
 	
 	/**
 	 * @return Identifier of the session process. 
 	 */
-	@KSOAP(cacheable=true) public Integer getSessionPid();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=2000) public Integer getSessionPid();
 	
 	/**
 	 * @return Current execution state of this machine. 
 	 */
-	@KSOAP(cacheable=true) public MachineState getState() ;
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=2000, hedge=true) public MachineState getState() ;
 
 	/**
 	 * @return Number of snapshots taken on this machine. 
 	 */
-	@KSOAP(cacheable=true) public  Integer getSnapshotCount();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=10000) public  Integer getSnapshotCount();
 	
 	/**
 	 * @return	Current snapshot of this machine. 
 	 */
-	@KSOAP(cacheable=true) public ISnapshot getCurrentSnapshot();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=10000) public ISnapshot getCurrentSnapshot();
  	
 	/**
 	 * @return Returns true if the current state of the machine is not identical to the state stored in the current snapshot. 
 	 */
-	@KSOAP(cacheable=true) public Boolean getCurrentStateModified();
+	@KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.EVENT, cacheTTL=10000) public Boolean getCurrentStateModified();
 	
 	@KSOAP(cacheable=true) public Boolean getIOCacheEnabled();
 	@Asyncronous public void setIOCacheEnabled(@KSOAP("IOCacheEnabled") boolean ioEnabled);
@@ -372,11 +373,11 @@ operation should be explicitly performed by the caller after the medium is succe
 	public IProgress launchVMProcess(@KSOAP("session")ISession session, @KSOAP("type") LaunchMode type) throws IOException;
 	
 	public Map<String, List<String>> querySavedScreenshotInfo(@KSOAP(type="unsignedInt", value="screenId") int screenId);
-	public Map<String, String> readSavedScreenshotToArray(@KSOAP(type="unsignedInt", value="screenId") int screenId, @KSOAP("format") BitmapFormat format);
+	@KSOAP(timeout=60000) public Map<String, String> readSavedScreenshotToArray(@KSOAP(type="unsignedInt", value="screenId") int screenId, @KSOAP("format") BitmapFormat format);
 	
 	public String queryLogFilename(@KSOAP(type="unsignedInt", value="idx") int idx);
 	
-	public byte[] readLog(@KSOAP(type="unsignedInt", value="idx") int idx, @KSOAP(type="long", value="offset") long offset, @KSOAP(type="long", value="size") long size) throws IOException;
+	@KSOAP(timeout=60000) public byte[] readLog(@KSOAP(type="unsignedInt", value="idx") int idx, @KSOAP(type="long", value="offset") long offset, @KSOAP(type="long", value="size") long size) throws IOException;
 	
 	/**
 	 * <p>Creates a clone of this machine, either as a full clone (which means creating independent copies of the hard disk media, save states and so on), or as a linked clone 
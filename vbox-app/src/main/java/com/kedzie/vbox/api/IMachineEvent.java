@@ -7,6 +7,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import com.kedzie.vbox.soap.KSOAP;
+import com.kedzie.vbox.soap.KSOAPCachePolicy;
 import com.kedzie.vbox.soap.VBoxSvc;
 
 @KSOAP()
@@ -27,5 +28,5 @@ public interface IMachineEvent extends IEvent, Parcelable {
 		}
 	};
 
-    @KSOAP(cacheable=true, prefix="IMachineEvent") public String getMachineId();
+    @KSOAP(cacheable=true, cachePolicy=KSOAPCachePolicy.IMMUTABLE, prefix="IMachineEvent") public String getMachineId();
 }
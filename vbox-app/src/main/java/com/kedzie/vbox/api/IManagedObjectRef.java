@@ -24,7 +24,7 @@ public interface IManagedObjectRef  {
 	public String getIdRef();
 	
 	/**
-	 * Clear cached property values
+	 * Clear cached property values, except those of immutable properties
 	 */
 	public void clearCache();
 	
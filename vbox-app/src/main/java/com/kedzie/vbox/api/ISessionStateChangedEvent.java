@@ -4,6 +4,6 @@ import com.kedzie.vbox.api.jaxb.SessionState;
 import com.kedzie.vbox.soap.KSOAP;
 
 @KSOAP
-public interface ISessionStateChangedEvent extends IEvent {
+public interface ISessionStateChangedEvent extends IMachineEvent {
 	@KSOAP(cacheable=true) public SessionState getState();
 }
@@ -3,6 +3,6 @@ package com.kedzie.vbox.api;
 import com.kedzie.vbox.soap.KSOAP;
 
 @KSOAP
-public interface ISnapshotEvent extends IEvent {
+public interface ISnapshotEvent extends IMachineEvent {
 	@KSOAP(cacheable=true, prefix="ISnapshotEvent") public String getSnapshotId();
 }
@@ -28,7 +28,7 @@ public interface IVirtualBox extends IManagedObjectRef, Parcelable {
     public static final String BUNDLE = "vbox";
 
 	/** Object corresponding to the supplied arguments does not exist. */
-	public static final long VBOX_E_OBJECT_NOT_FOUND = 0x80BB000;
+	public static final long VBOX_E_OBJECT_NOT_FOUND = 0x80BB0001;
 	/** Current virtual machine state prevents the operation.  */
 	public static final long VBOX_E_INVALID_VM_STATE = 0x80BB0002;
 	/** Virtual machine error occurred attempting the operation. */
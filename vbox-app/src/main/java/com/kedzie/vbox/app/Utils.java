@@ -543,12 +543,11 @@ public class Utils {
 	}
 
     /**
-     * Cache commonly used Machine properties
+     * Cache commonly used Machine properties.  Stale values are refetched according to their cache policy.
      * @param machine
      */
     public static IMachine cacheProperties(IMachine machine) {
         synchronized (machine) {
-            machine.clearCacheNamed("getName", "getState", "getCurrentStateModified", "gotOSTypeId", "getCurrentSnapshot");
             machine.getName();
             machine.getState();
             machine.getCurrentStateModified();
@@ -21,6 +21,7 @@ import com.kedzie.vbox.app.BundleBuilder;
 import com.kedzie.vbox.app.LoopingThread;
 import com.kedzie.vbox.app.Utils;
 import com.kedzie.vbox.machine.MachineListActivity;
+import com.kedzie.vbox.soap.CacheInvalidator;
 import com.kedzie.vbox.soap.VBoxSvc;
 
 import javax.inject.Inject;
@@ -126,8 +127,13 @@ public class EventIntentService extends Service {
             try {
                 if((mEvent = mSource.getEvent(mListener, 0))!=null) {
                     BundleBuilder bundle = new BundleBuilder().putProxy(BUNDLE_EVENT, mEvent);
-                    if(mEvent instanceof IMachineEvent)
-                        bundle.putProxy(IMachine.BUNDLE,  _vmgr.getVBox().findMachine(((IMachineEvent) mEvent).getMachineId()));
+                    IMachine machine = null;
+                    if(mEvent instanceof IMachineEvent) {
+                        machine = _vmgr.getVBox().findMachine(((IMachineEvent) mEvent).getMachineId());
+                        bundle.putProxy(IMachine.BUNDLE, machine);
+                    }
+                    //before publishing, so receivers see fresh values
+                    CacheInvalidator.onEvent(mEvent.getType(), machine!=null ? machine.getIdRef() : null);
                     _lbm.sendBroadcast(new Intent(mEvent.getType().name()).putExtras(bundle.create()));
                     mSource.eventProcessed(mListener, mEvent);
                 } else if(_running)
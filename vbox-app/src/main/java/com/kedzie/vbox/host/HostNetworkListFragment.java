@@ -132,7 +132,7 @@ public class HostNetworkListFragment extends Fragment {
 					}
 					if(cause instanceof SoapFault) {
 						SoapFault sf = (SoapFault) cause;
-						Timber.e( "SoapFault finding DHCP Server " + sf.detail.getText(0), e);
+						Timber.e( "SoapFault finding DHCP Server " + sf, e);
 					}
 					_dhcpServers.add(null);
 				}
@@ -19,6 +19,7 @@ import android.widget.TextView;
 
 import com.kedzie.vbox.R;
 import com.kedzie.vbox.api.IMachine;
+import com.kedzie.vbox.api.IMachineAsync;
 import com.kedzie.vbox.api.INetworkAdapter;
 import com.kedzie.vbox.api.IStorageController;
 import com.kedzie.vbox.api.IVRDEServer;
@@ -69,16 +70,14 @@ public class InfoFragment extends Fragment {
 			//cache values
 			Utils.cacheProperties(m[0]);
 			
-			fork(new MachineRunnable(m[0]) {
-                    public void run() {
-                        m.getMemorySize(); m.getCPUCount(); m.getVRAMSize(); 
-                        m.getAccelerate2DVideoEnabled(); m.getAccelerate3DEnabled(); 
-                        m.getDescription(); m.getGroups();
-                        m.getHWVirtExProperty(HWVirtExPropertyType.NESTED_PAGING);
-                        m.getHWVirtExProperty(HWVirtExPropertyType.ENABLED);
-                        m.getCPUProperty(CPUPropertyType.PAE);
-                    }
-			});
+			//independent attributes are requested together instead of one after another
+			IMachineAsync async = new IMachineAsync(m[0]);
+			fork(async.getMemorySize(), async.getCPUCount(), async.getVRAMSize(),
+                    async.getAccelerate2DVideoEnabled(), async.getAccelerate3DEnabled(),
+                    async.getDescription(), async.getGroups(),
+                    async.getHWVirtExProperty(HWVirtExPropertyType.NESTED_PAGING),
+                    async.getHWVirtExProperty(HWVirtExPropertyType.ENABLED),
+                    async.getCPUProperty(CPUPropertyType.PAE));
 			
 			fork(new MachineRunnable(m[0]) {
                 public void run() {
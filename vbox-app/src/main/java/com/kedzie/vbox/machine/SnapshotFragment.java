@@ -130,7 +130,6 @@ public class SnapshotFragment extends Fragment {
 
         @Override
         protected ISnapshot work(ISnapshotTakenEvent... params) throws Exception {
-            _machine.clearCacheNamed("getCurrentSnapshot");
             ISnapshot snapshot = _machine.getCurrentSnapshot();
             snapshot.getName();
             snapshot.getDescription();
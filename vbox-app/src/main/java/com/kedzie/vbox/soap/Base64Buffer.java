@@ -0,0 +1,128 @@
+package com.kedzie.vbox.soap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes Base64 text handed over in chunks, as it is read from the response, into a byte buffer.  The buffer is
+ * taken from a pool of one, so repeated screenshots decode into the same array and only the result of the exact
+ * size is allocated.
+ * <pre>
+ * Base64Buffer buffer = new Base64Buffer();
+ * try {
+ *     while((n = parser.readText(chunk, 0, chunk.length)) != -1)
+ *         buffer.decode(chunk, 0, n);
+ *     return buffer.toByteArray();
+ * } finally {
+ *     buffer.release();
+ * }
+ * </pre>
+ * Accepts the same input as <code>Base64.decode(text, Base64.DEFAULT)</code>: whitespace is ignored and padding is optional.
+ */
+public class Base64Buffer {
+    /** Larger buffers are not returned to the pool */
+    static final int MAX_POOLED = 4*1024*1024;
+    private static final int INITIAL_SIZE = 8*1024;
+    private static final byte WHITESPACE = -2;
+    private static final byte PADDING = -3;
+    private static final byte[] DECODE = new byte[128];
+    private static final AtomicReference<byte[]> POOL = new AtomicReference<byte[]>();
+
+    static {
+        Arrays.fill(DECODE, (byte)-1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for(int i=0; i<alphabet.length(); i++)
+            DECODE[alphabet.charAt(i)] = (byte)i;
+        DECODE[' '] = DECODE['\t'] = DECODE['\r'] = DECODE['\n'] = WHITESPACE;
+        DECODE['='] = PADDING;
+    }
+
+    private byte[] _buffer;
+    private int _size;
+    /** Bits of the incomplete group of four characters */
+    private int _bits;
+    /** Characters in the incomplete group */
+    private int _count;
+    private boolean _padded;
+
+    public Base64Buffer() {
+        _buffer = POOL.getAndSet(null);
+        if(_buffer==null)
+            _buffer = new byte[INITIAL_SIZE];
+    }
+
+    /**
+     * Decode the next chunk of text
+     * @throws IllegalArgumentException if the text is not Base64
+     */
+    public void decode(char[] text, int offset, int length) {
+        ensureCapacity(length/4*3 + 3);
+        for(int i=offset; i<offset+length; i++) {
+            char c = text[i];
+            int value = c<128 ? DECODE[c] : -1;
+            if(value>=0) {
+                if(_padded)
+                    throw new IllegalArgumentException("bad base-64: data after padding");
+                _bits = (_bits << 6) | value;
+                if(++_count==4) {
+                    _buffer[_size++] = (byte)(_bits >> 16);
+                    _buffer[_size++] = (byte)(_bits >> 8);
+                    _buffer[_size++] = (byte)_bits;
+                    _bits = 0;
+                    _count = 0;
+                }
+            } else if(value==PADDING) {
+                _padded = true;
+            } else if(value!=WHITESPACE) {
+                throw new IllegalArgumentException("bad base-64: '" + c + "'");
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes decoded so far, not counting an incomplete group
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Finish decoding
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the text ends with a single character
+     */
+    public byte[] toByteArray() {
+        switch(_count) {
+            case 1:
+                throw new IllegalArgumentException("bad base-64: truncated");
+            case 2:
+                ensureCapacity(1);
+                _buffer[_size++] = (byte)(_bits >> 4);
+                break;
+            case 3:
+                ensureCapacity(2);
+                _buffer[_size++] = (byte)(_bits >> 10);
+                _buffer[_size++] = (byte)(_bits >> 2);
+                break;
+        }
+        _bits = 0;
+        _count = 0;
+        return Arrays.copyOf(_buffer, _size);
+    }
+
+    /**
+     * Return the buffer to the pool.  The object must not be used afterwards.
+     */
+    public void release() {
+        byte[] pooled = POOL.get();
+        if(_buffer!=null && _buffer.length<=MAX_POOLED && (pooled==null || pooled.length<_buffer.length))
+            POOL.compareAndSet(pooled, _buffer);
+        _buffer = null;
+    }
+
+    private void ensureCapacity(int extra) {
+        if(_size + extra <= _buffer.length)
+            return;
+        _buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length*2, _size + extra));
+    }
+}
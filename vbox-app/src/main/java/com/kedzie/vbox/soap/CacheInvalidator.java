@@ -0,0 +1,184 @@
+package com.kedzie.vbox.soap;
+
+import com.kedzie.vbox.api.IMachine;
+import com.kedzie.vbox.api.INetworkAdapter;
+import com.kedzie.vbox.api.ISnapshot;
+import com.kedzie.vbox.api.IVRDEServer;
+import com.kedzie.vbox.api.IVirtualBox;
+import com.kedzie.vbox.api.jaxb.VBoxEventType;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drops the cached properties which a VirtualBox event changes, so screens can trust the caches of their proxies
+ * instead of clearing and refetching them by hand.
+ * <p>Each event type maps to the proxy types and getters it affects.  The caches of those types are tracked by
+ * managed object reference when their proxy is created, every proxy of the same object in the process is invalidated.
+ * Rules for machines apply only to the machine of the event, if it has one, otherwise to all of them.</p>
+ * <p>Getters without parameters drop their slot, getters with parameters drop the values of all arguments.  A rule
+ * without getters {@link PropertyCache#invalidate() invalidates} the whole cache.</p>
+ */
+public final class CacheInvalidator {
+
+    /**
+     * Getters of a proxy type which an event changes
+     */
+    private static class Rule {
+        final Class<?> type;
+        final String[] names;
+
+        Rule(Class<?> type, String... names) {
+            this.type = type;
+            this.names = names;
+        }
+    }
+
+    /**
+     * Tracked cache, which knows where it is tracked so it can be removed once its proxy is collected
+     */
+    private static class TrackedCache extends WeakReference<PropertyCache> {
+        final Map<String, List<TrackedCache>> caches;
+        final String id;
+
+        TrackedCache(PropertyCache cache, Map<String, List<TrackedCache>> caches, String id) {
+            super(cache, CLEARED);
+            this.caches = caches;
+            this.id = id;
+        }
+    }
+
+    private static final Map<VBoxEventType, List<Rule>> RULES = new EnumMap<VBoxEventType, List<Rule>>(VBoxEventType.class);
+    /** tracked caches, by type and managed object reference */
+    private static final Map<Class<?>, Map<String, List<TrackedCache>>> CACHES = new HashMap<Class<?>, Map<String, List<TrackedCache>>>();
+    /** tracked caches whose proxies were collected */
+    private static final ReferenceQueue<PropertyCache> CLEARED = new ReferenceQueue<PropertyCache>();
+
+    static {
+        rule(VBoxEventType.ON_MACHINE_STATE_CHANGED, IMachine.class, "getState", "getCurrentStateModified");
+        rule(VBoxEventType.ON_SESSION_STATE_CHANGED, IMachine.class, "getSessionState", "getSessionType", "getSessionPid");
+        rule(VBoxEventType.ON_MACHINE_DATA_CHANGED, IMachine.class);
+        rule(VBoxEventType.ON_SNAPSHOT_TAKEN, IMachine.class, "getCurrentSnapshot", "getSnapshotCount", "getCurrentStateModified");
+        rule(VBoxEventType.ON_SNAPSHOT_TAKEN, ISnapshot.class, "getChildren");
+        rule(VBoxEventType.ON_SNAPSHOT_DELETED, IMachine.class, "getCurrentSnapshot", "getSnapshotCount");
+        rule(VBoxEventType.ON_SNAPSHOT_DELETED, ISnapshot.class, "getChildren", "getParent");
+        rule(VBoxEventType.ON_SNAPSHOT_RESTORED, IMachine.class, "getCurrentSnapshot", "getCurrentStateModified");
+        rule(VBoxEventType.ON_SNAPSHOT_CHANGED, ISnapshot.class, "getName", "getDescription");
+        rule(VBoxEventType.ON_STORAGE_CONTROLLER_CHANGED, IMachine.class, "getStorageControllers", "getStorageControllerByName",
+                "getStorageControllerByInstance", "getMediumAttachments", "getMediumAttachmentsOfController");
+        rule(VBoxEventType.ON_STORAGE_DEVICE_CHANGED, IMachine.class, "getMediumAttachments", "getMediumAttachmentsOfController",
+                "getMediumAttachment", "getMedium");
+        rule(VBoxEventType.ON_MEDIUM_CHANGED, IMachine.class, "getMediumAttachments", "getMediumAttachmentsOfController",
+                "getMediumAttachment", "getMedium");
+        rule(VBoxEventType.ON_MEDIUM_REGISTERED, IVirtualBox.class, "getHardDisks", "getDVDImages", "getFloppyImages");
+        rule(VBoxEventType.ON_EXTRA_DATA_CHANGED, IMachine.class, "getExtraData", "getExtraDataKeys");
+        rule(VBoxEventType.ON_EXTRA_DATA_CHANGED, IVirtualBox.class, "getExtraData", "getExtraDataKeys");
+        rule(VBoxEventType.ON_NETWORK_ADAPTER_CHANGED, INetworkAdapter.class);
+        rule(VBoxEventType.ON_VRDE_SERVER_CHANGED, IVRDEServer.class);
+    }
+
+    private static void rule(VBoxEventType event, Class<?> type, String... names) {
+        List<Rule> rules = RULES.get(event);
+        if(rules==null)
+            RULES.put(event, rules = new ArrayList<Rule>(2));
+        rules.add(new Rule(type, names));
+        if(!CACHES.containsKey(type))
+            CACHES.put(type, new HashMap<String, List<TrackedCache>>());
+    }
+
+    private CacheInvalidator() {
+    }
+
+    /**
+     * Track the cache of a proxy, if its type is changed by any event
+     * @param type  interface of the proxy
+     * @param id    managed object reference
+     */
+    public static void track(Class<?> type, String id, PropertyCache cache) {
+        Map<String, List<TrackedCache>> caches = CACHES.get(type);
+        if(caches==null || id==null)
+            return;
+        expunge();
+        synchronized(caches) {
+            List<TrackedCache> refs = caches.get(id);
+            if(refs==null)
+                caches.put(id, refs = new ArrayList<TrackedCache>(2));
+            for(Iterator<TrackedCache> i = refs.iterator(); i.hasNext(); ) {
+                PropertyCache tracked = i.next().get();
+                if(tracked==null)
+                    i.remove();
+                else if(tracked==cache)
+                    return;
+            }
+            refs.add(new TrackedCache(cache, caches, id));
+        }
+    }
+
+    /**
+     * Drop the cached properties changed by an event.  Called by the event listener for each event, before it is
+     * published.
+     * @param machine   managed object reference of the machine of the event, or <code>null</code>
+     */
+    public static void onEvent(VBoxEventType event, String machine) {
+        List<Rule> rules = RULES.get(event);
+        if(rules==null)
+            return;
+        expunge();
+        for(Rule rule : rules) {
+            Map<String, List<TrackedCache>> caches = CACHES.get(rule.type);
+            synchronized(caches) {
+                if(rule.type==IMachine.class && machine!=null) {
+                    if(invalidate(caches, machine, rule))
+                        caches.remove(machine);
+                } else {
+                    for(Iterator<String> ids = caches.keySet().iterator(); ids.hasNext(); ) {
+                        if(invalidate(caches, ids.next(), rule))
+                            ids.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop tracking the caches of collected proxies, and the objects without any caches left
+     */
+    private static void expunge() {
+        for(Reference<? extends PropertyCache> ref; (ref = CLEARED.poll())!=null; ) {
+            TrackedCache tracked = (TrackedCache)ref;
+            synchronized(tracked.caches) {
+                List<TrackedCache> refs = tracked.caches.get(tracked.id);
+                if(refs!=null && refs.remove(tracked) && refs.isEmpty())
+                    tracked.caches.remove(tracked.id);
+            }
+        }
+    }
+
+    /**
+     * @return whether none of the caches of the object are left
+     */
+    private static boolean invalidate(Map<String, List<TrackedCache>> caches, String id, Rule rule) {
+        List<TrackedCache> refs = caches.get(id);
+        if(refs==null)
+            return false;
+        for(Iterator<TrackedCache> i = refs.iterator(); i.hasNext(); ) {
+            PropertyCache cache = i.next().get();
+            if(cache==null) {
+                i.remove();
+            } else if(rule.names.length==0) {
+                cache.invalidate();
+            } else {
+                for(String name : rule.names)
+                    cache.invalidate(name);
+            }
+        }
+        return refs.isEmpty();
+    }
+}
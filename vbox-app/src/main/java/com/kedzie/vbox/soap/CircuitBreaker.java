@@ -0,0 +1,229 @@
+package com.kedzie.vbox.soap;
+
+import android.util.Log;
+
+import com.kedzie.vbox.server.Server;
+
+import org.ksoap2.SoapFault;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stops calls to a server which is unreachable, so they fail at once instead of each waiting out the timeout.
+ * <p>While <b>closed</b> the outcomes of recent calls are tracked, and once too many of them failed to reach the
+ * server the breaker <b>opens</b>.  Calls are then rejected with a {@link CircuitOpenException} until the backoff
+ * expires, when the breaker turns <b>half-open</b> and lets a single probe call through.  If the probe succeeds the
+ * breaker closes again, otherwise it reopens with twice the backoff.  The probe is told apart by the {@link Permit}
+ * it was given, calls made before the breaker opened may still report their outcomes while it is half-open.</p>
+ * <p>Only failures to reach the server count, SOAP faults mean the server is up.</p>
+ */
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    /** Number of recent calls whose failure rate is tracked */
+    private static final int WINDOW = 10;
+    /** The breaker doesn't open until this many calls are in the window */
+    private static final int MIN_CALLS = 5;
+    /** Percentage of failed calls in the window which opens the breaker */
+    private static final int FAILURE_RATE = 50;
+    /** Milliseconds the breaker stays open the first time */
+    private static final long INITIAL_BACKOFF = 2000;
+    /** Upper limit of the backoff in milliseconds */
+    private static final long MAX_BACKOFF = 60000;
+
+    public enum State {
+        /** calls go through */
+        CLOSED,
+        /** calls are rejected */
+        OPEN,
+        /** a single probe call is let through */
+        HALF_OPEN
+    }
+
+    /**
+     * Notified when the breaker of a server changes state, on the thread whose call caused the change
+     */
+    public interface Listener {
+        /**
+         * @param server    the server
+         * @param state     the new state
+         */
+        void onStateChanged(Server server, State state);
+    }
+
+    /**
+     * Thrown instead of making a call while the breaker is open
+     */
+    public static class CircuitOpenException extends ConnectException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Given to a permitted call, which hands it back with its outcome
+     */
+    public static final class Permit {
+        private Permit() {
+        }
+    }
+
+    /** permit of the calls made while closed, which don't need telling apart */
+    private static final Permit CALL = new Permit();
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new HashMap<String, CircuitBreaker>();
+
+    /**
+     * Get the shared breaker for a server
+     * @param server    the server
+     * @return the breaker
+     */
+    public static CircuitBreaker get(Server server) {
+        String key = server.toUriString();
+        synchronized (BREAKERS) {
+            CircuitBreaker breaker = BREAKERS.get(key);
+            if(breaker==null) {
+                breaker = new CircuitBreaker(server);
+                BREAKERS.put(key, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * @param e     failure of a call
+     * @return <code>true</code> if the failure means the server could not be reached
+     */
+    public static boolean isUnreachable(Throwable e) {
+        if(e instanceof SoapFault || e instanceof CircuitOpenException)
+            return false;
+        //interrupted by the caller rather than timed out
+        if(e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+            return false;
+        return e instanceof IOException;
+    }
+
+    private final Server _server;
+    private final List<Listener> _listeners = new CopyOnWriteArrayList<Listener>();
+    private State _state = State.CLOSED;
+    /** outcomes of recent calls, <code>true</code> for failures */
+    private final boolean []_window = new boolean[WINDOW];
+    private int _windowIndex;
+    private int _windowCount;
+    private int _failures;
+    private long _backoff = INITIAL_BACKOFF;
+    private long _openUntil;
+    /** permit of the probe while half-open */
+    private Permit _probe;
+
+    public CircuitBreaker(Server server) {
+        _server = server;
+    }
+
+    public void addListener(Listener listener) {
+        _listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        _listeners.remove(listener);
+    }
+
+    public synchronized State getState() {
+        return _state;
+    }
+
+    /**
+     * Ask to make a call.  Every permitted call must report its outcome with {@link #onSuccess} or {@link #onFailure}.
+     * @return permit to report the outcome with
+     * @throws CircuitOpenException if the call must not be made
+     */
+    public Permit acquire() throws CircuitOpenException {
+        Permit probe;
+        synchronized (this) {
+            if(_state==State.CLOSED)
+                return CALL;
+            if(_state==State.HALF_OPEN)
+                throw new CircuitOpenException(_server + " is unreachable, waiting for probe");
+            long wait = _openUntil - System.currentTimeMillis();
+            if(wait > 0)
+                throw new CircuitOpenException(_server + " is unreachable, retrying in " + (wait+999)/1000 + "s");
+            //this call is the probe
+            _state = State.HALF_OPEN;
+            probe = _probe = new Permit();
+        }
+        stateChanged(State.HALF_OPEN);
+        return probe;
+    }
+
+    /**
+     * A permitted call reached the server
+     * @param permit    permit of the call
+     */
+    public void onSuccess(Permit permit) {
+        synchronized (this) {
+            if(_state==State.HALF_OPEN && permit!=_probe)
+                return;
+            record(false);
+            if(_state!=State.HALF_OPEN)
+                return;
+            _state = State.CLOSED;
+            _probe = null;
+            _backoff = INITIAL_BACKOFF;
+            _windowCount = _windowIndex = _failures = 0;
+        }
+        stateChanged(State.CLOSED);
+    }
+
+    /**
+     * A permitted call failed
+     * @param permit    permit of the call
+     * @param e         the failure, which only counts if {@link #isUnreachable}
+     */
+    public void onFailure(Permit permit, Throwable e) {
+        if(!isUnreachable(e)) {
+            onSuccess(permit);
+            return;
+        }
+        long backoff;
+        synchronized (this) {
+            if(_state==State.HALF_OPEN) {
+                if(permit!=_probe)
+                    return;
+                _probe = null;
+                _backoff = Math.min(_backoff*2, MAX_BACKOFF);
+            } else {
+                record(true);
+                if(_state!=State.CLOSED || _windowCount < MIN_CALLS || _failures*100 < _windowCount*FAILURE_RATE)
+                    return;
+            }
+            _state = State.OPEN;
+            _openUntil = System.currentTimeMillis() + _backoff;
+            backoff = _backoff;
+        }
+        Log.w(TAG, "Opening circuit to " + _server + " for " + backoff + "ms: " + e.getMessage());
+        stateChanged(State.OPEN);
+    }
+
+    private void record(boolean failure) {
+        if(_windowCount==WINDOW && _window[_windowIndex])
+            _failures--;
+        _window[_windowIndex] = failure;
+        if(failure)
+            _failures++;
+        _windowIndex = (_windowIndex+1) % WINDOW;
+        _windowCount = Math.min(_windowCount+1, WINDOW);
+    }
+
+    private void stateChanged(State state) {
+        Log.i(TAG, _server + " circuit " + state);
+        for(Listener listener : _listeners)
+            listener.onStateChanged(_server, state);
+    }
+}
@@ -0,0 +1,499 @@
+package com.kedzie.vbox.soap;
+
+import android.util.Log;
+
+import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.ssl.SSLUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Pool of persistent {@link KeepAliveConnection}s to a single <code>vboxwebsrv</code> server.
+ * <p>Pools are shared by every {@link VBoxSvc} talking to the same server, so connections survive
+ * the service being parcelled between activities.  Idle connections are evicted after {@link #KEEP_ALIVE_DURATION}
+ * and checked for staleness before they are handed out again.</p>
+ * <p>Connections to SSL servers use the cached socket factory from {@link SSLUtil#getSocketFactory}, so new
+ * connections resume the TLS session instead of repeating the full handshake.</p>
+ * <p>Idle connections are kept on a lock-free stack, most recently used on top, and leases are counted by a
+ * {@link Semaphore}, so borrowing and returning only block when every connection is in use.  Pool activity is
+ * reported by {@link #getStats}.</p>
+ * <p>Request bodies of at least {@link #setCompressionThreshold the threshold} are sent gzip compressed until the
+ * server rejects one.  Since support isn't advertised, the first compressed request is a probe: an error response
+ * other than a SOAP fault marks the server as unable to decompress, and the request is made again uncompressed.
+ * A fault, which <code>vboxwebsrv</code> sends with HTTP 500, shows the request was understood and goes to the caller.
+ * Once a compressed request succeeded only <code>415 Unsupported Media Type</code> counts as a rejection.</p>
+ * @apiviz.owns com.kedzie.vbox.soap.KeepAliveConnection
+ * @apiviz.composedOf com.kedzie.vbox.soap.ConnectionPool$Stats
+ */
+public class ConnectionPool {
+    private static final String TAG = "ConnectionPool";
+
+    /** Idle connections older than this are closed instead of reused */
+    public static final long KEEP_ALIVE_DURATION = 30000;
+    /** Request bodies smaller than this aren't worth compressing */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    /** whether the server accepts compressed requests is not known yet */
+    private static final int COMPRESSION_UNKNOWN = 0;
+    private static final int COMPRESSION_SUPPORTED = 1;
+    private static final int COMPRESSION_UNSUPPORTED = 2;
+
+    private static final Map<String, ConnectionPool> POOLS = new HashMap<String, ConnectionPool>();
+
+    /**
+     * Get the shared pool for a server
+     * @param server            the server
+     * @param maxConnections    maximum number of open connections
+     * @param timeout           connect/read timeout in milliseconds
+     * @return the connection pool
+     */
+    public static ConnectionPool get(Server server, int maxConnections, int timeout) {
+        String key = server.toUriString();
+        synchronized (POOLS) {
+            ConnectionPool pool = POOLS.get(key);
+            if(pool==null) {
+                pool = new ConnectionPool(server, maxConnections, timeout);
+                POOLS.put(key, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Snapshot of pool activity
+     */
+    public static class Stats {
+        /** open connections, idle or leased */
+        public final int open;
+        public final int idle;
+        public final int leased;
+        /** threads waiting for a connection */
+        public final int waiting;
+        /** highest number of connections leased at once */
+        public final int peakLeased;
+        public final long borrows;
+        /** borrows which had to wait for another connection to be returned */
+        public final long waits;
+        /** borrows served by an idle connection */
+        public final long reused;
+        public final long created;
+        public final long destroyed;
+        /** total milliseconds spent borrowing, including connecting */
+        public final long borrowMillis;
+        public final long maxBorrowMillis;
+        /** total milliseconds reused connections were idle */
+        public final long idleMillis;
+        /** requests sent compressed */
+        public final long compressed;
+        /** compressed requests the server rejected */
+        public final long compressionRejected;
+        /** size of the bodies of compressed requests, before and after compression */
+        public final long uncompressedBytes;
+        public final long compressedBytes;
+
+        Stats(ConnectionPool pool) {
+            leased = pool._maxConnections - pool._leases.availablePermits();
+            waiting = pool._leases.getQueueLength();
+            open = pool._open.get();
+            idle = pool._idleCount.get();
+            peakLeased = pool._peakLeased.get();
+            borrows = pool._borrows.get();
+            waits = pool._waits.get();
+            reused = pool._reused.get();
+            created = pool._created.get();
+            destroyed = pool._destroyed.get();
+            borrowMillis = pool._borrowMillis.get();
+            maxBorrowMillis = pool._maxBorrowMillis.get();
+            idleMillis = pool._idleMillis.get();
+            compressed = pool._compressed.get();
+            compressionRejected = pool._compressionRejected.get();
+            uncompressedBytes = pool._uncompressedBytes.get();
+            compressedBytes = pool._compressedBytes.get();
+        }
+
+        public long getAverageBorrowMillis() {
+            return borrows==0 ? 0 : borrowMillis/borrows;
+        }
+
+        public long getAverageIdleMillis() {
+            return reused==0 ? 0 : idleMillis/reused;
+        }
+
+        /**
+         * @return compressed size of the compressed requests relative to their original size, or <code>1</code> if none were compressed
+         */
+        public double getCompressionRatio() {
+            return uncompressedBytes==0 ? 1 : (double)compressedBytes/uncompressedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "open=" + open + " idle=" + idle + " leased=" + leased + " waiting=" + waiting + " peakLeased=" + peakLeased
+                    + " borrows=" + borrows + " waits=" + waits + " reused=" + reused + " created=" + created + " destroyed=" + destroyed
+                    + " avgBorrow=" + getAverageBorrowMillis() + "ms maxBorrow=" + maxBorrowMillis + "ms avgIdle=" + getAverageIdleMillis() + "ms"
+                    + " compressed=" + compressed + " ratio=" + String.format("%.2f", getCompressionRatio()) + " compressionRejected=" + compressionRejected;
+        }
+    }
+
+    /**
+     * Entry of the idle stack
+     */
+    private static class Node {
+        final KeepAliveConnection connection;
+        Node next;
+
+        Node(KeepAliveConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final Server _server;
+    private final String _host;
+    private final int _port;
+    private final int _maxConnections;
+    private final int _timeout;
+    /** top of the idle stack */
+    private final AtomicReference<Node> _idle = new AtomicReference<Node>();
+    /** one permit for each connection which may be leased */
+    private final Semaphore _leases;
+    /** number of open connections, idle or leased */
+    private final AtomicInteger _open = new AtomicInteger();
+    private final AtomicInteger _idleCount = new AtomicInteger();
+    private final AtomicLong _lastEviction = new AtomicLong(System.currentTimeMillis());
+    private volatile int _compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private final AtomicInteger _compression = new AtomicInteger(COMPRESSION_UNKNOWN);
+
+    private final AtomicInteger _peakLeased = new AtomicInteger();
+    private final AtomicLong _borrows = new AtomicLong();
+    private final AtomicLong _waits = new AtomicLong();
+    private final AtomicLong _reused = new AtomicLong();
+    private final AtomicLong _created = new AtomicLong();
+    private final AtomicLong _destroyed = new AtomicLong();
+    private final AtomicLong _borrowMillis = new AtomicLong();
+    private final AtomicLong _maxBorrowMillis = new AtomicLong();
+    private final AtomicLong _idleMillis = new AtomicLong();
+    private final AtomicLong _compressed = new AtomicLong();
+    private final AtomicLong _compressionRejected = new AtomicLong();
+    private final AtomicLong _uncompressedBytes = new AtomicLong();
+    private final AtomicLong _compressedBytes = new AtomicLong();
+
+    public ConnectionPool(Server server, int maxConnections, int timeout) {
+        _server = server;
+        _host = server.getHost();
+        _port = server.getPort();
+        _maxConnections = maxConnections;
+        _timeout = timeout;
+        _leases = new Semaphore(maxConnections, true);
+    }
+
+    public String getHost() {
+        return _host;
+    }
+
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * @param threshold smallest request body to compress in bytes, or <code>0</code> to never compress
+     */
+    public void setCompressionThreshold(int threshold) {
+        _compressionThreshold = threshold;
+    }
+
+    /**
+     * @param length    size of a request body
+     * @return <code>true</code> if the body should be sent compressed
+     */
+    boolean isCompressible(int length) {
+        int threshold = _compressionThreshold;
+        return threshold>0 && length>=threshold && _compression.get()!=COMPRESSION_UNSUPPORTED;
+    }
+
+    /**
+     * Count a request sent compressed
+     * @param length            size of the body
+     * @param compressedLength  size of the body sent
+     */
+    void onCompressed(int length, int compressedLength) {
+        _compressed.incrementAndGet();
+        _uncompressedBytes.addAndGet(length);
+        _compressedBytes.addAndGet(compressedLength);
+    }
+
+    /**
+     * Learn from the response to a compressed request whether the server accepts them
+     * @param code  HTTP status of the response
+     * @param fault whether the response is a SOAP fault
+     * @return <code>false</code> if the server rejected the request, which must be made again uncompressed
+     */
+    boolean onCompressedResponse(int code, boolean fault) {
+        if(code < 400 || (fault && code!=415)) {
+            _compression.compareAndSet(COMPRESSION_UNKNOWN, COMPRESSION_SUPPORTED);
+            return true;
+        }
+        if(code!=415 && _compression.get()==COMPRESSION_SUPPORTED)
+            return true;
+        if(_compression.getAndSet(COMPRESSION_UNSUPPORTED)!=COMPRESSION_UNSUPPORTED)
+            Log.i(TAG, "Server rejected compressed request with HTTP " + code + ", sending requests uncompressed");
+        _compressionRejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return snapshot of pool activity since the pool was created
+     */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    /**
+     * Borrow a connection, reusing an idle one if possible.  Blocks while the maximum number of connections are in use.
+     * @return a connection which must be given back with {@link #release} or {@link #discard}
+     * @throws IOException if no connection becomes available within the timeout or the server can't be reached
+     */
+    public KeepAliveConnection acquire() throws IOException {
+        return acquire(_timeout);
+    }
+
+    /**
+     * Borrow a connection for a call with its own deadline
+     * @param timeout   milliseconds to wait for a connection, then the read timeout of the connection
+     * @return a connection which must be given back with {@link #release} or {@link #discard}
+     * @throws IOException if no connection becomes available within the timeout or the server can't be reached
+     */
+    public KeepAliveConnection acquire(int timeout) throws IOException {
+        long start = System.currentTimeMillis();
+        if(!_leases.tryAcquire()) {
+            _waits.incrementAndGet();
+            try {
+                if(!_leases.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                    throw new IOException("Timed out waiting for a connection to " + _host + ":" + _port);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for a connection");
+            }
+        }
+        //the lease is given back when the connection is released or discarded
+        KeepAliveConnection connection;
+        try {
+            connection = reuse(timeout);
+            if(connection==null)
+                connection = open(timeout);
+        } catch(IOException e) {
+            _leases.release();
+            throw e;
+        }
+        connection._leased.set(true);
+
+        long elapsed = System.currentTimeMillis() - start;
+        _borrows.incrementAndGet();
+        _borrowMillis.addAndGet(elapsed);
+        max(_maxBorrowMillis, elapsed);
+        max(_peakLeased, _maxConnections - _leases.availablePermits());
+        return connection;
+    }
+
+    /**
+     * @return the most recently used idle connection which is still usable, or <code>null</code>
+     */
+    private KeepAliveConnection reuse(int timeout) {
+        KeepAliveConnection connection;
+        while((connection = pop()) != null) {
+            long idle = System.currentTimeMillis() - connection._idleSince;
+            if(idle > KEEP_ALIVE_DURATION) {
+                //connections further down the stack have been idle even longer
+                destroy(connection);
+                evictIdle();
+                continue;
+            }
+            try {
+                if(!connection.isStale(idle)) {
+                    connection.setTimeout(timeout);
+                    _reused.incrementAndGet();
+                    _idleMillis.addAndGet(idle);
+                    return connection;
+                }
+            } catch (IOException e) {
+            }
+            Log.d(TAG, "Discarding stale connection");
+            destroy(connection);
+        }
+        return null;
+    }
+
+    /**
+     * Open a new connection, counted against the maximum
+     */
+    private KeepAliveConnection open(int timeout) throws IOException {
+        _open.incrementAndGet();
+        try {
+            KeepAliveConnection connection = new KeepAliveConnection(this, connect(), _host + ":" + _port, timeout);
+            _created.incrementAndGet();
+            return connection;
+        } catch(IOException e) {
+            _open.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a socket to the server, performing the TLS handshake for SSL servers
+     */
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(_host, _port), _timeout);
+            if(!_server.isSSL())
+                return socket;
+            socket.setSoTimeout(_timeout);
+            //layering over a connected socket passes host & port to the session cache
+            SSLSocket sslSocket = (SSLSocket) SSLUtil.getSocketFactory(_server).createSocket(socket, _host, _port, true);
+            sslSocket.startHandshake();
+            return sslSocket;
+        } catch(IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open idle connections ahead of the first calls, so they don't wait for the TCP and TLS handshakes
+     * @param connections   number of open connections to reach, limited to the maximum
+     * @return number of connections opened
+     */
+    public int warmUp(int connections) {
+        int opened = 0;
+        while(_open.get() < Math.min(connections, _maxConnections)) {
+            try {
+                KeepAliveConnection connection = open(_timeout);
+                connection._idleSince = System.currentTimeMillis();
+                connection._idled = true;
+                push(connection);
+                opened++;
+            } catch(IOException e) {
+                Log.w(TAG, "Warm-up failed: " + e.getMessage());
+                break;
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Return a connection after its response has been consumed.  Connections the server asked to close are discarded.
+     * @param connection    the connection
+     */
+    public void release(KeepAliveConnection connection) {
+        //connections opened by warm-up while all were leased don't fit
+        if(!connection.isReusable() || _open.get() > _maxConnections) {
+            discard(connection);
+            return;
+        }
+        if(!connection._leased.compareAndSet(true, false))
+            return;
+        connection._idleSince = System.currentTimeMillis();
+        connection._idled = true;
+        push(connection);
+        _leases.release();
+
+        long last = _lastEviction.get();
+        if(connection._idleSince - last > KEEP_ALIVE_DURATION && _lastEviction.compareAndSet(last, connection._idleSince))
+            evictIdle();
+    }
+
+    /**
+     * Close a connection which can't be reused
+     * @param connection    the connection
+     */
+    public void discard(KeepAliveConnection connection) {
+        if(!connection._leased.compareAndSet(true, false))
+            return;
+        destroy(connection);
+        _leases.release();
+    }
+
+    /**
+     * Close all idle connections.  Called when one of them turned out to be stale, since the others
+     * were most likely dropped by the server at the same time.
+     */
+    public void evictAll() {
+        for(Node node = takeIdle(); node!=null; node = node.next)
+            destroy(node.connection);
+    }
+
+    /**
+     * Close connections which have been idle longer than {@link #KEEP_ALIVE_DURATION}
+     */
+    private void evictIdle() {
+        long expired = System.currentTimeMillis() - KEEP_ALIVE_DURATION;
+        List<KeepAliveConnection> keep = new ArrayList<KeepAliveConnection>();
+        for(Node node = takeIdle(); node!=null; node = node.next) {
+            if(node.connection._idleSince > expired)
+                keep.add(node.connection);
+            else
+                destroy(node.connection);
+        }
+        //oldest first, so the most recently used ends up on top again
+        for(int i=keep.size()-1; i>=0; i--)
+            push(keep.get(i));
+    }
+
+    private void destroy(KeepAliveConnection connection) {
+        connection.close();
+        _open.decrementAndGet();
+        _destroyed.incrementAndGet();
+    }
+
+    private void push(KeepAliveConnection connection) {
+        Node node = new Node(connection);
+        do {
+            node.next = _idle.get();
+        } while(!_idle.compareAndSet(node.next, node));
+        _idleCount.incrementAndGet();
+    }
+
+    private KeepAliveConnection pop() {
+        Node top;
+        do {
+            top = _idle.get();
+            if(top==null)
+                return null;
+        } while(!_idle.compareAndSet(top, top.next));
+        _idleCount.decrementAndGet();
+        return top.connection;
+    }
+
+    /**
+     * Empty the idle stack
+     * @return the former top of the stack
+     */
+    private Node takeIdle() {
+        Node top = _idle.getAndSet(null);
+        for(Node node = top; node!=null; node = node.next)
+            _idleCount.decrementAndGet();
+        return top;
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while(value > (current = max.get()) && !max.compareAndSet(current, value));
+    }
+
+    private static void max(AtomicInteger max, int value) {
+        int current;
+        while(value > (current = max.get()) && !max.compareAndSet(current, value));
+    }
+}
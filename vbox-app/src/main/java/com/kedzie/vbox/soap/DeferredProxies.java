@@ -0,0 +1,102 @@
+package com.kedzie.vbox.soap;
+
+import com.kedzie.vbox.api.IManagedObjectRef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Value read from a response together with the managed object references in it, such as the medium of an
+ * <code>IMediumAttachment</code>.  The proxies are made once the call completed instead of while the response is
+ * parsed.  Copies handed to identical calls sharing the response make the proxies once between them.
+ * @param <T>   type of the value
+ */
+public class DeferredProxies<T> {
+
+    /**
+     * Reference whose proxy is handed to the value once made
+     * @param <P>   type of the proxy
+     */
+    public static abstract class Reference<P extends IManagedObjectRef> {
+        private final Class<P> _type;
+        private final String _id;
+
+        protected Reference(Class<P> type, String id) {
+            _type = type;
+            _id = id;
+        }
+
+        /**
+         * @param proxy     proxy of the reference
+         */
+        protected abstract void set(P proxy);
+
+        void resolve(VBoxSvc vmgr) {
+            set(vmgr.getProxy(_type, _id));
+        }
+    }
+
+    /** references whose proxies haven't been made yet.  Shared by the copies, and guarding them. */
+    private final List<Reference<?>> _references;
+    private T _value;
+
+    public DeferredProxies() {
+        this(new ArrayList<Reference<?>>(), null);
+    }
+
+    private DeferredProxies(List<Reference<?>> references, T value) {
+        _references = references;
+        _value = value;
+    }
+
+    /**
+     * @param type  type of the proxy
+     * @param id    the reference
+     * @return a proxy to be made later
+     */
+    public static <P extends IManagedObjectRef> DeferredProxies<P> of(Class<P> type, String id) {
+        final DeferredProxies<P> deferred = new DeferredProxies<P>();
+        deferred.add(new Reference<P>(type, id) {
+            @Override
+            protected void set(P proxy) {
+                deferred._value = proxy;
+            }
+        });
+        return deferred;
+    }
+
+    public void add(Reference<?> reference) {
+        _references.add(reference);
+    }
+
+    public DeferredProxies<T> set(T value) {
+        _value = value;
+        return this;
+    }
+
+    public T getValue() {
+        return _value;
+    }
+
+    /**
+     * @param value     copy of the value, holding the same objects
+     * @return a copy whose proxies are made together with this one's
+     */
+    public DeferredProxies<T> copy(T value) {
+        return new DeferredProxies<T>(_references, value);
+    }
+
+    /**
+     * Make the proxies, unless a copy already did
+     * @param vmgr  the service
+     * @return the value
+     */
+    public T resolve(VBoxSvc vmgr) {
+        synchronized (_references) {
+            for(Reference<?> reference : _references)
+                reference.resolve(vmgr);
+            _references.clear();
+        }
+        return _value;
+    }
+}
@@ -0,0 +1,103 @@
+package com.kedzie.vbox.soap;
+
+/**
+ * Looks up the constant of an enum by its XML value straight from the parser's characters, without making a
+ * <code>String</code> or scanning <code>values()</code> like <code>fromValue</code> does.
+ * <p>A subclass is generated for each enum read by a <code>@KSOAP</code> proxy, as <code>MachineState$$Table</code>.
+ * The table is sized and hashed when it is built so that each value has a slot of its own, and a lookup is one hash
+ * of the characters and one comparison.</p>
+ * @param <E>   the enum
+ */
+public abstract class EnumTable<E extends Enum<E>> {
+    /** Multipliers tried when looking for a hash without collisions */
+    private static final int[] MULTIPLIERS = { 1, 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1, 0x7FEB352D, 0x846CA68B };
+    /** Largest table tried, relative to the smallest */
+    private static final int MAX_LOAD = 8;
+
+    private final E[] _constants;
+    private final String[] _values;
+    private final int _multiplier;
+    private final int _shift;
+
+    protected EnumTable(E[] constants) {
+        //smallest table with a collision free multiplier, or the largest one tried with linear probing
+        int minSize = Integer.highestOneBit(Math.max(constants.length, 1)*2 - 1) << 1;
+        int size = minSize;
+        int multiplier = MULTIPLIERS[1];
+        search:
+        for(int s=minSize; s<=minSize*MAX_LOAD/2; s<<=1) {
+            size = s;
+            for(int m : MULTIPLIERS) {
+                if(isPerfect(constants, s, m)) {
+                    multiplier = m;
+                    break search;
+                }
+            }
+        }
+        _constants = newArray(constants, size);
+        _values = new String[size];
+        _multiplier = multiplier;
+        _shift = 32 - Integer.numberOfTrailingZeros(size);
+        for(E constant : constants) {
+            String value = value(constant);
+            int slot = slot(value.hashCode());
+            while(_values[slot]!=null)
+                slot = (slot+1) & (size-1);
+            _values[slot] = value;
+            _constants[slot] = constant;
+        }
+    }
+
+    /**
+     * @return the XML value of the constant, i.e. <code>constant.value()</code>
+     */
+    protected abstract String value(E constant);
+
+    /**
+     * Find the constant for a value
+     * @throws IllegalArgumentException if no constant has the value
+     */
+    public E get(char[] text, int offset, int length) {
+        //same as String.hashCode()
+        int hash = 0;
+        for(int i=offset; i<offset+length; i++)
+            hash = 31*hash + text[i];
+        int mask = _values.length-1;
+        for(int slot = slot(hash); _values[slot]!=null; slot = (slot+1) & mask) {
+            if(matches(_values[slot], text, offset, length))
+                return _constants[slot];
+        }
+        throw new IllegalArgumentException(new String(text, offset, length));
+    }
+
+    private int slot(int hash) {
+        return (hash*_multiplier) >>> _shift;
+    }
+
+    private boolean isPerfect(E[] constants, int size, int multiplier) {
+        boolean[] used = new boolean[size];
+        int shift = 32 - Integer.numberOfTrailingZeros(size);
+        for(E constant : constants) {
+            int slot = (value(constant).hashCode()*multiplier) >>> shift;
+            if(used[slot])
+                return false;
+            used[slot] = true;
+        }
+        return true;
+    }
+
+    private static boolean matches(String value, char[] text, int offset, int length) {
+        if(value.length()!=length)
+            return false;
+        for(int i=0; i<length; i++) {
+            if(value.charAt(i)!=text[offset+i])
+                return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E[] newArray(E[] constants, int size) {
+        return (E[])java.lang.reflect.Array.newInstance(constants.getClass().getComponentType(), size);
+    }
+}
@@ -0,0 +1,97 @@
+package com.kedzie.vbox.soap;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip encoder for request bodies.  Each thread keeps one, like the request buffer of {@link KeepAliveConnection},
+ * so the native <code>Deflater</code> isn't allocated and ended for every request the way a
+ * <code>GZIPOutputStream</code> would.
+ * <p>Compressed data collects in {@link #getBuffer()} until it is taken with {@link #clear()}.</p>
+ */
+class GzipEncoder {
+    private static final byte[] HEADER = { 0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int INITIAL_SIZE = 8192;
+
+    private static final ThreadLocal<GzipEncoder> ENCODER = new ThreadLocal<GzipEncoder>() {
+        @Override
+        protected GzipEncoder initialValue() {
+            return new GzipEncoder();
+        }
+    };
+
+    /**
+     * @return the encoder of the current thread
+     */
+    static GzipEncoder get() {
+        return ENCODER.get();
+    }
+
+    private final Deflater _deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 _crc = new CRC32();
+    private byte[] _buf = new byte[INITIAL_SIZE];
+    private int _count;
+    private int _length;
+
+    /**
+     * Start a new gzip stream with its header
+     */
+    void start() {
+        _deflater.reset();
+        _crc.reset();
+        _length = 0;
+        System.arraycopy(HEADER, 0, _buf, 0, HEADER.length);
+        _count = HEADER.length;
+    }
+
+    /**
+     * Compress more of the body.  Output is held back by the <code>Deflater</code> until it has enough input.
+     */
+    void write(byte[] b, int off, int len) {
+        _crc.update(b, off, len);
+        _length += len;
+        _deflater.setInput(b, off, len);
+        while(!_deflater.needsInput())
+            deflate();
+    }
+
+    /**
+     * Compress the rest of the body and end the stream with its trailer
+     */
+    void finish() {
+        _deflater.finish();
+        while(!_deflater.finished())
+            deflate();
+        writeInt((int)_crc.getValue());
+        writeInt(_length);
+    }
+
+    private void deflate() {
+        if(_count == _buf.length)
+            _buf = Arrays.copyOf(_buf, _buf.length*2);
+        _count += _deflater.deflate(_buf, _count, _buf.length-_count);
+    }
+
+    private void writeInt(int value) {
+        if(_buf.length - _count < 4)
+            _buf = Arrays.copyOf(_buf, _buf.length*2);
+        for(int i=0; i<4; i++)
+            _buf[_count++] = (byte)(value >>> 8*i);
+    }
+
+    byte[] getBuffer() {
+        return _buf;
+    }
+
+    /**
+     * @return number of compressed bytes in the buffer
+     */
+    int size() {
+        return _count;
+    }
+
+    void clear() {
+        _count = 0;
+    }
+}
@@ -1,23 +1,84 @@
 package com.kedzie.vbox.soap;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.ksoap2.SoapEnvelope;
 import org.ksoap2.transport.HttpTransportSE;
 import org.ksoap2.transport.ServiceConnection;
-import org.ksoap2.transport.ServiceConnectionSE;
+import org.xmlpull.v1.XmlPullParserException;
 
 import com.kedzie.vbox.server.Server;
 
 /**
- * Don't reuse {@link ServiceConnection}s
+ * Makes calls over persistent connections borrowed from a {@link ConnectionPool}.
+ * Requests are serialized straight to the connection instead of being buffered in full.
  */
 public class HttpTransport extends HttpTransportSE {
+    private static final int CHUNK_LENGTH = 8192;
 
-    public HttpTransport(Server server, int timeout) {
-    	super(String.format("http://%s:%s", server.getHost(), server.getPort()), timeout);
+    private final ConnectionPool _pool;
+
+    public HttpTransport(Server server, ConnectionPool pool, int timeout) {
+    	super(server.toUriString(), timeout);
+        _pool = pool;
+        setChunkedStreamingMode(CHUNK_LENGTH);
     }
 
     public ServiceConnection getServiceConnection() throws IOException {
-        return new ServiceConnectionSE(proxy, url, timeout);
+        return new PooledServiceConnection(_pool, getPath(), timeout);
+    }
+
+    /**
+     * Requests built by generated proxies are already rendered to bytes, others go through the serializer
+     */
+    @Override
+    protected void writeRequestData(SoapEnvelope envelope, OutputStream os) throws IOException {
+        if(!(envelope.bodyOut instanceof SoapRequest)) {
+            super.writeRequestData(envelope, os);
+            return;
+        }
+        ((SoapRequest)envelope.bodyOut).writeTo(os);
+        os.write('\r');
+        os.write('\n');
+        os.flush();
+    }
+
+    /**
+     * Write a request on a connection managed by the caller, such as a {@link PipelinedDispatcher} lane
+     * @param connection    the connection
+     * @param soapAction    SOAP action
+     * @param envelope      request envelope
+     */
+    void writeRequest(KeepAliveConnection connection, String soapAction, SoapEnvelope envelope) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("User-Agent", USER_AGENT);
+        headers.put("SOAPAction", soapAction);
+        headers.put("Content-Type", CONTENT_TYPE_XML_CHARSET_UTF_8);
+        OutputStream os = connection.writeStreamingRequest("POST", getPath(), headers);
+        writeRequestData(envelope, os);
+        os.close();
+    }
+
+    /**
+     * Parse a response read from a connection managed by the caller.  SOAP faults arrive as HTTP errors with
+     * an envelope, so the body is parsed regardless of the status code.
+     * @param response      the response
+     * @param envelope      envelope to parse the response into
+     */
+    void readResponse(KeepAliveConnection.Response response, SoapEnvelope envelope) throws IOException {
+        InputStream is = response.getBody();
+        try {
+            parseResponse(envelope, is);
+        } catch(XmlPullParserException e) {
+            if(response.code >= 400)
+                throw new IOException("Server returned HTTP response code: " + response.code);
+            throw new IOException("Malformed SOAP response", e);
+        } finally {
+            is.close();
+        }
     }
 }
@@ -0,0 +1,646 @@
+package com.kedzie.vbox.soap;
+
+import org.kxml2.io.KXmlParser;
+import org.ksoap2.HeaderProperty;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent HTTP/1.1 connection to <code>vboxwebsrv</code>.
+ * <p>Responses are framed by <code>Content-Length</code> or chunked transfer-encoding so the socket
+ * can carry the next request once the response body has been consumed.  Requests are framed the same way,
+ * see {@link #writeStreamingRequest}, and gzip compressed when the pool allows it.</p>
+ * @apiviz.owns com.kedzie.vbox.soap.KeepAliveConnection$Response
+ */
+public class KeepAliveConnection {
+    private static final int BUFFER_SIZE = 8192;
+    /** Streamed request bodies up to this size are sent with a <code>Content-Length</code> instead of chunked */
+    private static final int REQUEST_BUFFER_SIZE = 32*1024;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+    private static final String CONTENT_ENCODING_GZIP = "Content-Encoding: gzip";
+    private static final String CHUNKED = "Transfer-Encoding: chunked";
+
+    /** request body buffers, reused by every streamed request made on the same thread */
+    private static final ThreadLocal<byte[]> REQUEST_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[REQUEST_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * A connection taken idle from the pool failed before any part of the response arrived.  The server most likely
+     * closed it while it sat idle in the pool, so the request can safely be repeated on a new connection.
+     */
+    public static class StaleConnectionException extends IOException {
+        public StaleConnectionException(IOException cause) {
+            super("Pooled connection is stale: " + cause.getMessage());
+            initCause(cause);
+        }
+    }
+
+    /**
+     * The server rejected a compressed request without acting on it.  The request can be made again, and
+     * the pool won't compress it this time.
+     */
+    public static class CompressionRejectedException extends IOException {
+        public CompressionRejectedException(int code) {
+            super("Compressed request rejected with HTTP " + code);
+        }
+    }
+
+    /** Connections idle for less than this, in milliseconds, aren't probed for EOF before they are reused */
+    static final long STALE_CHECK_IDLE = 1000;
+
+    private final ConnectionPool _pool;
+    private final Socket _socket;
+    private final BufferedInputStream _in;
+    private final OutputStream _out;
+    private final String _hostHeader;
+    private int _timeout;
+    /** number of requests written on this socket */
+    private int _requestCount;
+    /** whether the socket may be returned to the pool after the current exchange */
+    private boolean _reusable = true;
+    /** time the connection was returned to the pool */
+    volatile long _idleSince;
+    /** connection waited in the pool since it was opened or last answered, so the server may have closed it.
+     * Set by the pool, cleared by the next response. */
+    volatile boolean _idled;
+    /** connection is checked out of the pool */
+    final AtomicBoolean _leased = new AtomicBoolean();
+    /** connection is held by a {@link PipelinedDispatcher} lane, which returns it to the pool itself */
+    boolean _pipelined;
+    /** the current request was sent compressed */
+    private boolean _compressed;
+    /** size of the bodies of compressed requests, before and after compression */
+    private long _uncompressedBytes;
+    private long _compressedBytes;
+
+    KeepAliveConnection(ConnectionPool pool, Socket socket, String hostHeader, int timeout) throws IOException {
+        _pool = pool;
+        _socket = socket;
+        _hostHeader = hostHeader;
+        _timeout = timeout;
+        _socket.setSoTimeout(timeout);
+        _socket.setTcpNoDelay(true);
+        _socket.setKeepAlive(true);
+        _in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        _out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    /**
+     * @param timeout   read timeout in milliseconds for the next exchange
+     */
+    void setTimeout(int timeout) throws IOException {
+        if(timeout!=_timeout)
+            _socket.setSoTimeout(timeout);
+        _timeout = timeout;
+    }
+
+    /**
+     * @return <code>true</code> if an earlier exchange already completed on this socket
+     */
+    public boolean isReused() {
+        return _requestCount > 1;
+    }
+
+    /**
+     * @return compressed size of the requests compressed on this connection relative to their original size,
+     * or <code>1</code> if none were compressed
+     */
+    public double getCompressionRatio() {
+        return _uncompressedBytes==0 ? 1 : (double)_compressedBytes/_uncompressedBytes;
+    }
+
+    boolean isReusable() {
+        return _reusable && !_socket.isClosed();
+    }
+
+    /**
+     * Detect sockets the server has closed while they were idle.  An idle HTTP connection must not
+     * have anything to read, so either EOF or unexpected data means it can't be reused.
+     * <p>Probing for EOF takes a read with a short timeout, so it is left out for connections idle for less than
+     * {@link #STALE_CHECK_IDLE}.  A request failing on one of those is still retried on a new connection.</p>
+     * @param idle      milliseconds the connection has been idle
+     * @return <code>true</code> if the connection should be discarded
+     */
+    boolean isStale(long idle) {
+        if(_socket.isClosed() || _socket.isInputShutdown() || _socket.isOutputShutdown())
+            return true;
+        try {
+            if(_in.available()>0)
+                return true;
+            if(idle<STALE_CHECK_IDLE)
+                return false;
+            _socket.setSoTimeout(1);
+            try {
+                _in.read();
+                return true;
+            } finally {
+                _socket.setSoTimeout(_timeout);
+            }
+        } catch (SocketTimeoutException e) {
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Write the request line and headers.
+     * @param method        HTTP method
+     * @param path          request path
+     * @param headers       request headers
+     * @return stream to write the request body to.  Closing it flushes the request but leaves the socket open.
+     */
+    OutputStream writeRequest(String method, String path, Map<String, String> headers) throws IOException {
+        _requestCount++;
+        _compressed = false;
+        writeHead(method, path, headers);
+        return new RequestOutputStream();
+    }
+
+    /**
+     * Start a request whose body length isn't known ahead.  The body is collected in a per-thread buffer
+     * and sent with a <code>Content-Length</code> if it fits, otherwise the request switches to chunked transfer-encoding.
+     * Bodies over the pool's compression threshold are gzip compressed, except on pipelined connections.
+     * @param method        HTTP method
+     * @param path          request path
+     * @param headers       request headers
+     * @return stream to write the request body to.  The request is complete once it is closed.
+     */
+    OutputStream writeStreamingRequest(String method, String path, Map<String, String> headers) {
+        _requestCount++;
+        _compressed = false;
+        return new StreamingRequestOutputStream(method, path, headers);
+    }
+
+    private void writeHead(String method, String path, Map<String, String> headers, String... framing) throws IOException {
+        try {
+            StringBuilder head = new StringBuilder(256)
+                    .append(method).append(' ').append(path.length()==0 ? "/" : path).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(_hostHeader).append("\r\n")
+                    .append("Connection: keep-alive\r\n");
+            for(Map.Entry<String, String> header : headers.entrySet())
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            for(String line : framing)
+                head.append(line).append("\r\n");
+            head.append("\r\n");
+            _out.write(head.toString().getBytes("ISO-8859-1"));
+        } catch(IOException e) {
+            throw failed(e, true);
+        }
+    }
+
+    /**
+     * Read the status line and headers of the response.
+     * @return the response, whose body must be fully read or closed before the connection is reused
+     */
+    Response readResponse() throws IOException {
+        Response response = readHead();
+        if(_compressed && !_pool.onCompressedResponse(response.code, response.code>=400 && response.code!=415 && response.isFault())) {
+            //the connection is returned once the error is read
+            response.body.close();
+            throw new CompressionRejectedException(response.code);
+        }
+        return response;
+    }
+
+    /**
+     * @return whether the body is a SOAP fault
+     */
+    private static boolean isSoapFault(byte[] body) {
+        try {
+            XmlPullParser parser = new KXmlParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(new ByteArrayInputStream(body), null);
+            //Envelope, then Body, then Fault
+            for(int type = parser.next(); type!=XmlPullParser.END_DOCUMENT; type = parser.next()) {
+                if(type==XmlPullParser.START_TAG && parser.getDepth()==3 && "Fault".equals(parser.getName()))
+                    return true;
+            }
+        } catch(XmlPullParserException e) {
+        } catch(IOException e) {
+        }
+        return false;
+    }
+
+    private Response readHead() throws IOException {
+        String statusLine;
+        try {
+            statusLine = readLine();
+        } catch(IOException e) {
+            throw failed(e, true);
+        }
+        _idled = false;
+        try {
+            Response response = new Response(statusLine);
+            for(String line = readLine(); line.length()>0; line = readLine()) {
+                int colon = line.indexOf(':');
+                if(colon>0)
+                    response.headers.add(new HeaderProperty(line.substring(0, colon).trim(), line.substring(colon+1).trim()));
+            }
+            String connection = response.getHeader("Connection");
+            if("close".equalsIgnoreCase(connection) || (statusLine.startsWith("HTTP/1.0") && !"keep-alive".equalsIgnoreCase(connection)))
+                _reusable = false;
+
+            String length = response.getHeader("Content-Length");
+            if("chunked".equalsIgnoreCase(response.getHeader("Transfer-Encoding")))
+                response.body = new ChunkedInputStream();
+            else if(length!=null)
+                response.body = new FixedLengthInputStream(Long.parseLong(length));
+            else {
+                //body is delimited by end of stream, so the socket can't be reused
+                _reusable = false;
+                response.body = new FixedLengthInputStream(-1);
+            }
+            return response;
+        } catch(IOException e) {
+            throw failed(e, false);
+        } catch(RuntimeException e) {
+            throw failed(new IOException("Malformed HTTP response", e), false);
+        }
+    }
+
+    /**
+     * Record a request body sent compressed
+     */
+    private void compressed(int length, int compressedLength) {
+        _compressed = true;
+        _uncompressedBytes += length;
+        _compressedBytes += compressedLength;
+        _pool.onCompressed(length, compressedLength);
+    }
+
+    /**
+     * Mark the connection unusable and decide whether the request may be retried.
+     * @param e          the failure
+     * @param retryable  <code>true</code> if no response data was received yet
+     */
+    private IOException failed(IOException e, boolean retryable) {
+        _reusable = false;
+        //pipelined connections are discarded by their lane, after reading the responses that already arrived
+        if(_pipelined)
+            return e;
+        _pool.discard(this);
+        //a read timeout means the server got the request and is still working on it
+        if(!retryable || !_idled || e instanceof SocketTimeoutException)
+            return e;
+        _pool.evictAll();
+        return new StaleConnectionException(e);
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while((c = _in.read()) != '\n') {
+            if(c == -1)
+                throw new EOFException("Connection closed by server");
+            if(c != '\r')
+                line.append((char)c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Response body completed or was abandoned.  Return the connection to the pool if it is still usable.
+     */
+    private void bodyClosed(boolean complete) {
+        if(!complete)
+            _reusable = false;
+        if(!_pipelined)
+            _pool.release(this);
+    }
+
+    void close() {
+        try {
+            _socket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * HTTP response status and headers
+     */
+    public class Response {
+        public final int code;
+        public final String statusLine;
+        final List<HeaderProperty> headers = new ArrayList<HeaderProperty>();
+        InputStream body;
+
+        Response(String statusLine) throws IOException {
+            this.statusLine = statusLine;
+            int start = statusLine.indexOf(' ');
+            if(!statusLine.startsWith("HTTP/") || start<0)
+                throw new IOException("Unexpected status line: " + statusLine);
+            int end = statusLine.indexOf(' ', start+1);
+            code = Integer.parseInt(statusLine.substring(start+1, end<0 ? statusLine.length() : end));
+        }
+
+        public String getHeader(String name) {
+            for(HeaderProperty header : headers)
+                if(header.getKey().equalsIgnoreCase(name))
+                    return header.getValue();
+            return null;
+        }
+
+        public List<HeaderProperty> getHeaders() {
+            return headers;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * Read the body, which is kept in memory for the caller, and check whether it is a SOAP fault
+         */
+        boolean isFault() throws IOException {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(1024);
+            byte[] b = new byte[1024];
+            try {
+                for(int n; (n = body.read(b, 0, b.length)) != -1; )
+                    buf.write(b, 0, n);
+            } finally {
+                body.close();
+            }
+            byte[] data = buf.toByteArray();
+            body = new ByteArrayInputStream(data);
+            return isSoapFault(data);
+        }
+    }
+
+    /**
+     * Request body.  Closing it flushes the request but leaves the socket open.
+     */
+    private class RequestOutputStream extends FilterOutputStream {
+
+        RequestOutputStream() {
+            super(_out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch(IOException e) {
+                throw failed(e, true);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch(IOException e) {
+                throw failed(e, true);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Request body of unknown length.  Headers are held back until the body either outgrows the buffer,
+     * in which case it is sent in chunks, or is closed, in which case its length is known.  Either way the body is
+     * compressed if the pool allows it, though a buffered body is sent as is if it doesn't get any smaller.
+     */
+    private class StreamingRequestOutputStream extends OutputStream {
+        private final String _method;
+        private final String _path;
+        private final Map<String, String> _headers;
+        private final byte[] _buf = REQUEST_BUFFER.get();
+        private int _count;
+        /** set once the request has switched to chunked transfer-encoding */
+        private OutputStream _chunks;
+        /** set if the chunked body is compressed */
+        private GzipEncoder _gzip;
+        /** size of the chunked body before and after compression */
+        private int _length;
+        private int _compressedLength;
+        private boolean _closed;
+
+        StreamingRequestOutputStream(String method, String path, Map<String, String> headers) {
+            _method = method;
+            _path = path;
+            _headers = headers;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(_count == _buf.length)
+                writeChunk();
+            _buf[_count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while(len > 0) {
+                if(_count == _buf.length)
+                    writeChunk();
+                int n = Math.min(len, _buf.length-_count);
+                System.arraycopy(b, off, _buf, _count, n);
+                _count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Buffered data is sent on {@link #close()}; flushing earlier would force a chunked request
+         */
+        @Override
+        public void flush() {
+        }
+
+        private void writeChunk() throws IOException {
+            if(_chunks == null) {
+                if(!_pipelined && _pool.isCompressible(_buf.length)) {
+                    _gzip = GzipEncoder.get();
+                    _gzip.start();
+                    writeHead(_method, _path, _headers, CONTENT_ENCODING_GZIP, CHUNKED);
+                } else
+                    writeHead(_method, _path, _headers, CHUNKED);
+                _chunks = new RequestOutputStream();
+            }
+            _length += _count;
+            if(_gzip != null) {
+                _gzip.write(_buf, 0, _count);
+                writeGzipChunk();
+            } else
+                writeChunk(_buf, _count);
+            _count = 0;
+        }
+
+        private void writeGzipChunk() throws IOException {
+            _compressedLength += _gzip.size();
+            writeChunk(_gzip.getBuffer(), _gzip.size());
+            _gzip.clear();
+        }
+
+        private void writeChunk(byte[] b, int len) throws IOException {
+            if(len == 0)
+                return;
+            _chunks.write((Integer.toHexString(len) + "\r\n").getBytes("ISO-8859-1"));
+            _chunks.write(b, 0, len);
+            _chunks.write(CRLF, 0, CRLF.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(_closed)
+                return;
+            _closed = true;
+            if(_chunks == null) {
+                GzipEncoder gzip = null;
+                if(!_pipelined && _pool.isCompressible(_count)) {
+                    gzip = GzipEncoder.get();
+                    gzip.start();
+                    gzip.write(_buf, 0, _count);
+                    gzip.finish();
+                    if(gzip.size() >= _count)
+                        gzip = null;
+                }
+                OutputStream out;
+                if(gzip != null) {
+                    compressed(_count, gzip.size());
+                    writeHead(_method, _path, _headers, CONTENT_ENCODING_GZIP, "Content-Length: " + gzip.size());
+                    out = new RequestOutputStream();
+                    out.write(gzip.getBuffer(), 0, gzip.size());
+                    gzip.clear();
+                } else {
+                    writeHead(_method, _path, _headers, "Content-Length: " + _count);
+                    out = new RequestOutputStream();
+                    out.write(_buf, 0, _count);
+                }
+                out.close();
+            } else {
+                writeChunk();
+                if(_gzip != null) {
+                    _gzip.finish();
+                    writeGzipChunk();
+                    compressed(_length, _compressedLength);
+                }
+                _chunks.write(LAST_CHUNK, 0, LAST_CHUNK.length);
+                _chunks.close();
+            }
+        }
+    }
+
+    /**
+     * Base class for response bodies.  Closing the body drains any unread data so the connection can be reused.
+     */
+    private abstract class BodyInputStream extends InputStream {
+        protected boolean _closed;
+        protected boolean _complete;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(_closed)
+                return;
+            _closed = true;
+            if(!_complete && _reusable) {
+                try {
+                    byte[] skip = new byte[1024];
+                    while(read(skip, 0, skip.length) != -1);
+                } catch(IOException e) {
+                    _reusable = false;
+                }
+            }
+            bodyClosed(_complete);
+        }
+
+        protected int fill(byte[] b, int off, int len) throws IOException {
+            int read = _in.read(b, off, len);
+            if(read == -1)
+                throw new EOFException("Unexpected end of response body");
+            return read;
+        }
+    }
+
+    private class FixedLengthInputStream extends BodyInputStream {
+        /** bytes left to read, or <code>-1</code> if the body ends when the server closes the socket */
+        private long _remaining;
+
+        FixedLengthInputStream(long length) {
+            _remaining = length;
+            _complete = length==0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(_complete)
+                return -1;
+            if(_remaining == -1) {
+                int read = _in.read(b, off, len);
+                if(read == -1)
+                    _complete = true;
+                return read;
+            }
+            int read = fill(b, off, (int)Math.min(len, _remaining));
+            _remaining -= read;
+            if(_remaining == 0)
+                _complete = true;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return _remaining == -1 ? _in.available() : (int)Math.min(_in.available(), _remaining);
+        }
+    }
+
+    private class ChunkedInputStream extends BodyInputStream {
+        private int _chunkRemaining;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(_complete)
+                return -1;
+            if(_chunkRemaining == 0) {
+                String size = readLine();
+                int semicolon = size.indexOf(';');
+                _chunkRemaining = Integer.parseInt((semicolon<0 ? size : size.substring(0, semicolon)).trim(), 16);
+                if(_chunkRemaining == 0) {
+                    //skip trailers
+                    while(readLine().length()>0);
+                    _complete = true;
+                    return -1;
+                }
+            }
+            int read = fill(b, off, Math.min(len, _chunkRemaining));
+            _chunkRemaining -= read;
+            if(_chunkRemaining == 0)
+                readLine();
+            return read;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package com.kedzie.vbox.soap;
+
+import android.util.Log;
+
+import com.kedzie.vbox.server.Server;
+
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipelines independent SOAP calls over a few persistent connections borrowed from a {@link ConnectionPool}.
+ * <p>Calls are written to a lane's connection as soon as they are submitted, without waiting for the responses
+ * to earlier calls.  Submitting only queues a call, connections are opened and requests written by the dispatcher's
+ * sender thread, so a caller on the UI thread never waits on the network.  Each lane has a reader thread which
+ * matches responses to calls in the order they were sent.
+ * Only calls which are safe to repeat are accepted (see {@link #isPipelinable}), because the calls left unanswered
+ * when a connection fails are retried on a new one.  If the server turns out not to handle pipelined requests
+ * the dispatcher falls back to one outstanding request per connection for a while.</p>
+ * <p>Identical calls submitted while one is still queued, for example several screens refreshing the state of the
+ * same machine, are not sent again but share its response.  A call already written may have been answered by the
+ * server before the state changed, so later calls are sent on their own.</p>
+ * <p>Calls sent to the server ask the {@link CircuitBreaker} first and report their outcome to it, once for each
+ * call on the wire no matter how many identical calls share it.</p>
+ * @apiviz.owns com.kedzie.vbox.soap.PipelinedDispatcher$Lane
+ */
+public class PipelinedDispatcher {
+    private static final String TAG = "PipelinedDispatcher";
+
+    /** Maximum number of requests written to a connection ahead of their responses */
+    public static final int DEFAULT_DEPTH = 4;
+    /** Maximum number of connections used for pipelining */
+    public static final int DEFAULT_LANES = 2;
+    /** Lanes with nothing to do for this long give their connection back to the pool */
+    private static final long LANE_IDLE_TIMEOUT = 5000;
+    /** Pipelining is tried again once this long has passed without a connection failing because of it */
+    private static final long PIPELINING_RETRY_INTERVAL = 5*60*1000;
+    /** Number of times an unanswered call is sent again after its connection failed */
+    private static final int MAX_RETRIES = 1;
+    /** Number of recent latencies kept for {@link #getLatency} */
+    private static final int LATENCY_SAMPLES = 128;
+    /** Latency percentiles aren't reported until this many calls have been answered */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private static final ThreadFactory SENDER_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final Map<String, PipelinedDispatcher> DISPATCHERS = new HashMap<String, PipelinedDispatcher>();
+
+    /**
+     * Get the shared dispatcher for a server
+     * @param server    the server
+     * @param pool      pool to borrow connections from
+     * @param timeout   read timeout in milliseconds
+     * @return the dispatcher
+     */
+    public static PipelinedDispatcher get(Server server, ConnectionPool pool, int timeout) {
+        String key = server.toUriString();
+        synchronized (DISPATCHERS) {
+            PipelinedDispatcher dispatcher = DISPATCHERS.get(key);
+            if(dispatcher==null) {
+                dispatcher = new PipelinedDispatcher(new HttpTransport(server, pool, timeout), pool, CircuitBreaker.get(server), DEFAULT_LANES, DEFAULT_DEPTH);
+                DISPATCHERS.put(key, dispatcher);
+            }
+            return dispatcher;
+        }
+    }
+
+    /**
+     * Whether a call may go through the dispatcher.  Attribute getters, whose only parameter is the object
+     * reference, are cheap for the server so they won't hold up the calls pipelined behind them, and safe to repeat.
+     * Getters with parameters, like <code>IEventSource_getEvent</code>, can block on the server and are excluded.
+     * So are {@link ResponseReader#isStreaming() streamed} responses, which must be read exactly once.
+     * @param envelope  request envelope
+     * @return <code>true</code> if the call can be pipelined
+     */
+    public static boolean isPipelinable(SoapSerializationEnvelope envelope) {
+        if(envelope instanceof ResponseEnvelope && ((ResponseEnvelope<?>)envelope).getReader().isStreaming())
+            return false;
+        String name;
+        int count;
+        if(envelope.bodyOut instanceof SoapRequest) {
+            name = ((SoapRequest)envelope.bodyOut).getName();
+            count = ((SoapRequest)envelope.bodyOut).getPropertyCount();
+        } else if(envelope.bodyOut instanceof SoapObject) {
+            name = ((SoapObject)envelope.bodyOut).getName();
+            count = ((SoapObject)envelope.bodyOut).getPropertyCount();
+        } else
+            return false;
+        return count<=1 && name.startsWith("get", name.indexOf('_')+1);
+    }
+
+    /**
+     * Call waiting for its response
+     */
+    private static class Call {
+        final String soapAction;
+        final SoapSerializationEnvelope envelope;
+        final String key;
+        final SoapFuture<SoapSerializationEnvelope> future = new SoapFuture<SoapSerializationEnvelope>();
+        final long submitted = System.currentTimeMillis();
+        /** identical calls answered with the response to this one. Guarded by the dispatcher. */
+        List<Call> followers;
+        /** permit of the circuit breaker, if the call is sent */
+        CircuitBreaker.Permit permit;
+        int retries;
+
+        Call(String soapAction, SoapSerializationEnvelope envelope) {
+            this.soapAction = soapAction;
+            this.envelope = envelope;
+            StringBuilder key = new StringBuilder(soapAction);
+            if(envelope.bodyOut instanceof SoapRequest) {
+                key.append('#').append(((SoapRequest)envelope.bodyOut).getArguments());
+            } else {
+                SoapObject request = (SoapObject)envelope.bodyOut;
+                for(int i=0; i<request.getPropertyCount(); i++)
+                    key.append('#').append(request.getProperty(i));
+            }
+            this.key = key.toString();
+        }
+    }
+
+    private final HttpTransport _codec;
+    private final ConnectionPool _pool;
+    private final CircuitBreaker _breaker;
+    private final int _maxLanes;
+    private final int _maxDepth;
+    private int _depth;
+    /** when pipelining was last disabled */
+    private long _depthReduced;
+    /** calls not yet written to a lane */
+    private final LinkedList<Call> _pending = new LinkedList<Call>();
+    private final List<Lane> _lanes = new ArrayList<Lane>();
+    /** calls in {@link #_pending}, by {@link Call#key} */
+    private final Map<String, Call> _unsent = new HashMap<String, Call>();
+    /** milliseconds from submission to response of recent calls */
+    private final long []_latencies = new long[LATENCY_SAMPLES];
+    private int _latencyIndex;
+    private int _latencyCount;
+    /** opens connections and writes requests.  Its thread goes away when there is nothing to send. */
+    private final ThreadPoolExecutor _sender = new ThreadPoolExecutor(0, 1, LANE_IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), SENDER_THREADS);
+    /** a dispatch is queued on the sender. Guarded by the dispatcher. */
+    private boolean _dispatchQueued;
+    private final Runnable _dispatch = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (PipelinedDispatcher.this) {
+                _dispatchQueued = false;
+            }
+            dispatch();
+        }
+    };
+
+    /**
+     * @param codec     transport used to write requests and parse responses
+     * @param pool      pool to borrow connections from
+     * @param maxLanes  maximum number of connections
+     * @param depth     maximum number of outstanding requests per connection
+     */
+    public PipelinedDispatcher(HttpTransport codec, ConnectionPool pool, int maxLanes, int depth) {
+        this(codec, pool, null, maxLanes, depth);
+    }
+
+    /**
+     * @param codec     transport used to write requests and parse responses
+     * @param pool      pool to borrow connections from
+     * @param breaker   circuit breaker of the server, or <code>null</code>
+     * @param maxLanes  maximum number of connections
+     * @param depth     maximum number of outstanding requests per connection
+     */
+    public PipelinedDispatcher(HttpTransport codec, ConnectionPool pool, CircuitBreaker breaker, int maxLanes, int depth) {
+        _codec = codec;
+        _pool = pool;
+        _breaker = breaker;
+        _maxLanes = maxLanes;
+        _maxDepth = _depth = depth;
+    }
+
+    /**
+     * Queue a call, unless an identical call is already queued.  Doesn't touch the network, the call is written
+     * by the sender thread.  The response is parsed into the envelope before the future completes.
+     * @param soapAction    SOAP action
+     * @param envelope      request envelope, which must satisfy {@link #isPipelinable}
+     * @return future completed with the envelope once the response arrives, or failed with a
+     *          {@link CircuitBreaker.CircuitOpenException} if the circuit breaker rejects the call
+     */
+    public SoapFuture<SoapSerializationEnvelope> submit(String soapAction, SoapSerializationEnvelope envelope) {
+        Call call = new Call(soapAction, envelope);
+        synchronized (this) {
+            Call leader = _unsent.get(call.key);
+            if(leader!=null) {
+                if(leader.followers==null)
+                    leader.followers = new ArrayList<Call>(2);
+                leader.followers.add(call);
+                return call.future;
+            }
+        }
+        if(_breaker!=null) {
+            try {
+                call.permit = _breaker.acquire();
+            } catch (CircuitBreaker.CircuitOpenException e) {
+                call.future.setException(e);
+                return call.future;
+            }
+        }
+        synchronized (this) {
+            _unsent.put(call.key, call);
+            _pending.add(call);
+            if(_dispatchQueued)
+                return call.future;
+            _dispatchQueued = true;
+        }
+        _sender.execute(_dispatch);
+        return call.future;
+    }
+
+    /**
+     * Complete a call and the identical calls which were submitted while it was queued.  Each of them gets its
+     * own copy of a collection, array or map result, so callers can't change each other's.
+     * @param call  the call
+     * @param e     the failure, or <code>null</code> if the response was parsed into the call's envelope
+     */
+    private void complete(Call call, IOException e) {
+        List<Call> followers;
+        synchronized (this) {
+            followers = call.followers;
+            if(e==null) {
+                _latencies[_latencyIndex] = System.currentTimeMillis() - call.submitted;
+                _latencyIndex = (_latencyIndex+1) % LATENCY_SAMPLES;
+                _latencyCount = Math.min(_latencyCount+1, LATENCY_SAMPLES);
+            }
+        }
+        if(call.permit!=null) {
+            if(e!=null)
+                _breaker.onFailure(call.permit, e);
+            else
+                _breaker.onSuccess(call.permit);
+        }
+        if(e!=null)
+            call.future.setException(e);
+        else
+            call.future.set(call.envelope);
+        if(followers==null)
+            return;
+        for(Call follower : followers) {
+            if(e!=null) {
+                follower.future.setException(e);
+            } else {
+                follower.envelope.bodyIn = copy(call.envelope.bodyIn);
+                follower.future.set(follower.envelope);
+            }
+        }
+    }
+
+    /**
+     * @return a shallow copy of a collection, array or map, also one whose proxies are yet to be made, otherwise the value itself
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if(value instanceof DeferredProxies) {
+            DeferredProxies<Object> deferred = (DeferredProxies<Object>)value;
+            return deferred.copy(copy(deferred.getValue()));
+        }
+        if(value instanceof Set)
+            return new LinkedHashSet<Object>((Set<Object>)value);
+        if(value instanceof Collection)
+            return new ArrayList<Object>((Collection<Object>)value);
+        if(value instanceof Map)
+            return new LinkedHashMap<Object, Object>((Map<Object, Object>)value);
+        if(value!=null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * @param percentile    percentile between 0 and 100
+     * @return the latency of recent calls at the percentile in milliseconds, or <code>-1</code> if too few calls were answered yet
+     */
+    public long getLatency(int percentile) {
+        long []latencies;
+        synchronized (this) {
+            if(_latencyCount < MIN_LATENCY_SAMPLES)
+                return -1;
+            latencies = Arrays.copyOf(_latencies, _latencyCount);
+        }
+        Arrays.sort(latencies);
+        return latencies[(latencies.length-1)*percentile/100];
+    }
+
+    /**
+     * @return number of connections currently used for pipelining
+     */
+    public synchronized int getLaneCount() {
+        return _lanes.size();
+    }
+
+    /**
+     * Write pending calls to lanes with spare capacity, opening new lanes as needed.  Calls which don't fit
+     * stay queued until a lane's reader receives a response.  Runs on the sender and reader threads only.
+     */
+    private void dispatch() {
+        dispatch(null);
+    }
+
+    /**
+     * @param only  restrict dispatching to this lane.  Readers only feed their own lane, so they never
+     *              block waiting for a connection while holding one.
+     */
+    private void dispatch(Lane only) {
+        while(true) {
+            Lane lane = null;
+            Call call;
+            synchronized (this) {
+                if(_pending.isEmpty())
+                    return;
+                if(_depth<_maxDepth && System.currentTimeMillis()-_depthReduced > PIPELINING_RETRY_INTERVAL) {
+                    Log.i(TAG, "Enabling pipelining again");
+                    _depth = _maxDepth;
+                }
+                if(only!=null) {
+                    if(only._outstanding < _depth && _lanes.contains(only))
+                        lane = only;
+                } else {
+                    for(Lane l : _lanes)
+                        if(l._outstanding < _depth && (lane==null || l._outstanding < lane._outstanding))
+                            lane = l;
+                }
+                if(lane==null) {
+                    if(only!=null || _lanes.size() >= _maxLanes)
+                        return;
+                    lane = new Lane();
+                    _lanes.add(lane);
+                }
+                call = _pending.removeFirst();
+                //calls submitted from now on are sent on their own
+                if(_unsent.get(call.key)==call)
+                    _unsent.remove(call.key);
+                lane._outstanding++;
+            }
+            lane.send(call);
+        }
+    }
+
+    /**
+     * Take a failed lane out of service and retry its unanswered calls
+     * @param lane          the lane
+     * @param calls         calls which were sent on the lane but not answered
+     * @param e             the failure
+     * @param pipelineError whether the failure may have been caused by pipelining
+     * @param charge        whether the failure counts against the retries of the oldest call
+     */
+    private void retry(Lane lane, List<Call> calls, IOException e, boolean pipelineError, boolean charge) {
+        Call failed = null;
+        synchronized (this) {
+            _lanes.remove(lane);
+            if(pipelineError && _depth>1 && lane._answered>0 && calls.size()>1) {
+                Log.w(TAG, "Connection failed with pipelined requests outstanding, disabling pipelining", e);
+                _depth = 1;
+                _depthReduced = System.currentTimeMillis();
+            }
+            //only the oldest call is charged for the failure, the calls behind it may never have reached the server
+            for(int i=calls.size()-1; i>=0; i--) {
+                Call call = calls.get(i);
+                if(i>0 || !charge || call.retries++ < MAX_RETRIES)
+                    _pending.addFirst(call);
+                else
+                    failed = call;
+            }
+        }
+        if(failed!=null)
+            complete(failed, e);
+        dispatch();
+    }
+
+    /**
+     * Put a call which was never written back at the front of the queue
+     */
+    private synchronized void requeue(Call call) {
+        _pending.addFirst(call);
+    }
+
+    /**
+     * Connection with a reader thread, carrying up to <code>depth</code> outstanding requests
+     */
+    private class Lane implements Runnable {
+        private final Object _writeLock = new Object();
+        /** calls written to the connection, in order */
+        private final LinkedList<Call> _inFlight = new LinkedList<Call>();
+        private KeepAliveConnection _connection;
+        /** calls assigned to this lane and not yet answered. Guarded by the dispatcher. */
+        int _outstanding;
+        /** responses received on this lane */
+        int _answered;
+        /** no more requests may be written, the reader finishes the calls already sent */
+        private boolean _closed;
+        private boolean _failed;
+
+        void send(Call call) {
+            synchronized (_writeLock) {
+                synchronized (this) {
+                    if(_closed) {
+                        //the lane was closed after the call was assigned to it
+                        requeue(call);
+                        return;
+                    }
+                    _inFlight.add(call);
+                    notifyAll();
+                }
+                if(_connection==null) {
+                    try {
+                        _connection = _pool.acquire();
+                    } catch(IOException e) {
+                        failed(e, false, true);
+                        return;
+                    }
+                    _connection._pipelined = true;
+                    Thread reader = new Thread(this, TAG);
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+                try {
+                    _codec.writeRequest(_connection, call.soapAction, call.envelope);
+                } catch(IOException e) {
+                    //usually the server closing the connection after its keep-alive limit.  Responses to
+                    //the calls written earlier may still be waiting to be read.
+                    Log.d(TAG, "Write failed: " + e.getMessage());
+                    close();
+                    boolean unsent;
+                    synchronized (this) {
+                        //unless the reader already failed and retried it
+                        unsent = _inFlight.remove(call);
+                        notifyAll();
+                    }
+                    if(unsent)
+                        requeue(call);
+                }
+            }
+        }
+
+        /**
+         * Stop writing requests to this lane
+         */
+        private void close() {
+            synchronized (PipelinedDispatcher.this) {
+                _lanes.remove(this);
+            }
+            synchronized (this) {
+                _closed = true;
+            }
+        }
+
+        /**
+         * @return the oldest unanswered call, or <code>null</code> if the lane is closed or has been idle too long
+         */
+        private synchronized Call next() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + LANE_IDLE_TIMEOUT;
+            while(_inFlight.isEmpty()) {
+                long wait = deadline - System.currentTimeMillis();
+                if(_closed || wait <= 0)
+                    return null;
+                wait(wait);
+            }
+            return _inFlight.getFirst();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(true) {
+                    Call call = next();
+                    if(call==null) {
+                        if(retire())
+                            return;
+                        continue;
+                    }
+                    KeepAliveConnection.Response response = _connection.readResponse();
+                    IOException error = null;
+                    try {
+                        _codec.readResponse(response, call.envelope);
+                    } catch(IOException e) {
+                        //response was consumed, so the call failed but the connection may still be usable
+                        error = e;
+                    }
+                    synchronized (this) {
+                        _inFlight.removeFirst();
+                        _answered++;
+                    }
+                    synchronized (PipelinedDispatcher.this) {
+                        _outstanding--;
+                    }
+                    complete(call, error);
+                    if(!_connection.isReusable()) {
+                        //the server won't read the remaining requests, which can be sent again on another connection
+                        failed(new IOException("Connection closed by server"), false, false);
+                        return;
+                    }
+                    dispatch(this);
+                }
+            } catch(InterruptedException e) {
+                failed(new IOException("Interrupted"), false, true);
+            } catch(IOException e) {
+                //a connection closed with requests outstanding may mean the server doesn't handle pipelining, a
+                //read timeout only means a slow call
+                failed(e, e instanceof EOFException || e instanceof SocketException, true);
+            }
+        }
+
+        /**
+         * Give the connection back to the pool, unless calls were assigned while waiting
+         * @return <code>true</code> if the lane was retired
+         */
+        private boolean retire() {
+            synchronized (PipelinedDispatcher.this) {
+                if(_lanes.contains(this) && _outstanding>0)
+                    return false;
+                _lanes.remove(this);
+            }
+            synchronized (this) {
+                _closed = true;
+                if(!_inFlight.isEmpty())
+                    return false;
+            }
+            _connection._pipelined = false;
+            if(_connection.isReusable())
+                _pool.release(_connection);
+            else
+                _pool.discard(_connection);
+            //calls may have been put back after this lane was closed
+            dispatch();
+            return true;
+        }
+
+        private void failed(IOException e, boolean pipelineError, boolean charge) {
+            List<Call> unanswered;
+            synchronized (this) {
+                if(_failed)
+                    return;
+                _failed = _closed = true;
+                unanswered = new ArrayList<Call>(_inFlight);
+                _inFlight.clear();
+                notifyAll();
+            }
+            if(!unanswered.isEmpty())
+                Log.d(TAG, "Lane failed with " + unanswered.size() + " calls outstanding: " + e.getMessage());
+            if(_connection!=null)
+                _pool.discard(_connection);
+            retry(this, unanswered, e, pipelineError, charge);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.kedzie.vbox.soap;
+
+import org.ksoap2.HeaderProperty;
+import org.ksoap2.transport.ServiceConnection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ServiceConnection} for a single request/response exchange over a connection borrowed from a {@link ConnectionPool}.
+ * <p>The connection goes back to the pool when the response body is closed.  The <code>Connection</code> header is
+ * managed by the pool, so requests for <code>Connection: close</code> are ignored.</p>
+ * <p>In chunked streaming mode the body is buffered per thread and only chunked if it outgrows the buffer,
+ * so the requested chunk length is not used.</p>
+ */
+public class PooledServiceConnection implements ServiceConnection {
+
+    private final ConnectionPool _pool;
+    private final String _path;
+    private final int _timeout;
+    private final Map<String, String> _requestHeaders = new LinkedHashMap<String, String>();
+    private String _requestMethod = "POST";
+    private boolean _streaming;
+    private KeepAliveConnection _connection;
+    private KeepAliveConnection.Response _response;
+
+    /**
+     * @param pool      pool to borrow connections from
+     * @param path      request path
+     * @param timeout   read timeout in milliseconds
+     */
+    public PooledServiceConnection(ConnectionPool pool, String path, int timeout) {
+        _pool = pool;
+        _path = path;
+        _timeout = timeout;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if(_connection==null)
+            _connection = _pool.acquire(_timeout);
+    }
+
+    @Override
+    public void disconnect() {
+        if(_connection!=null)
+            _pool.discard(_connection);
+    }
+
+    @Override
+    public List getResponseProperties() throws IOException {
+        readResponse();
+        List<HeaderProperty> properties = new ArrayList<HeaderProperty>(_response.getHeaders().size()+1);
+        properties.add(new HeaderProperty(null, _response.statusLine));
+        properties.addAll(_response.getHeaders());
+        return properties;
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        if("Connection".equalsIgnoreCase(key))
+            return;
+        _requestHeaders.put(key, value);
+    }
+
+    @Override
+    public void setRequestMethod(String requestMethod) {
+        _requestMethod = requestMethod;
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        _requestHeaders.put("Content-Length", String.valueOf(contentLength));
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunkLength) {
+        _requestHeaders.remove("Content-Length");
+        _streaming = true;
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+        connect();
+        return _streaming ? _connection.writeStreamingRequest(_requestMethod, _path, _requestHeaders)
+                : _connection.writeRequest(_requestMethod, _path, _requestHeaders);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        readResponse();
+        if(_response.code >= 400)
+            throw new IOException("Server returned HTTP response code: " + _response.code);
+        return _response.getBody();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return _response!=null && _response.code >= 400 ? _response.getBody() : null;
+    }
+
+    private void readResponse() throws IOException {
+        if(_response==null)
+            _response = _connection.readResponse();
+    }
+
+    @Override
+    public String getHost() {
+        return _pool.getHost();
+    }
+
+    @Override
+    public int getPort() {
+        return _pool.getPort();
+    }
+
+    @Override
+    public String getPath() {
+        return _path;
+    }
+}
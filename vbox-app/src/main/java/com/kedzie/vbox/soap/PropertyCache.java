@@ -0,0 +1,277 @@
+package com.kedzie.vbox.soap;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Property cache of a proxy.  The getters without parameters of a type are given fixed slots by
+ * <code>ProxyProcessor</code>, so the generated proxy checks and reads its cache with an array index instead of
+ * hashing a key, and a hit allocates nothing.  Results of getters with parameters are kept in a small map by
+ * method name and arguments, made when the first one is cached.
+ * <p>As a {@link Map} the cache is keyed by method name like before, for code which clears or checks single
+ * properties, and for parcelling.</p>
+ * <p>A slot may be given a policy from its <code>@KSOAP</code> annotation.  Its value then expires after a time to live,
+ * or is kept by {@link #invalidate()} because it never changes.  Slots without a policy are kept until they are
+ * cleared, or dropped by the {@link CacheInvalidator} when an event changes them.</p>
+ * <p>The cache is shared by the threads calling the proxy and the event thread invalidating it.  Slots are read
+ * and written without locking, a getter reads its slot once with {@link #get(int)}, which tells a miss apart
+ * by returning {@link #MISS}.  Everything else is guarded by the cache.</p>
+ */
+public class PropertyCache extends AbstractMap<String, Object> {
+    /** Returned by {@link #get(int)} and {@link #find} when nothing is cached */
+    public static final Object MISS = new Object();
+    /** Stands for a cached <code>null</code> in a slot */
+    private static final Object NULL = new Object();
+
+    /**
+     * Slots of the cached getters of a proxy type.  The slots of a subtype follow those of its supertype, so the
+     * slot of an inherited getter is the same for both.
+     */
+    public static final class Layout {
+        /** Layout without slots */
+        public static final Layout EMPTY = new Layout(null);
+
+        private final String[] _names;
+        private final Map<String, Integer> _slots;
+        /** time to live of the values of each slot in nanoseconds, or 0 */
+        private final long[] _ttls;
+        private final boolean[] _immutable;
+        /** whether any slot expires, so caches need stamps */
+        private boolean _expiring;
+
+        /**
+         * @param parent    layout of the supertype, or <code>null</code>
+         * @param names     getters of this type, given the slots after those of the supertype
+         */
+        public Layout(Layout parent, String... names) {
+            int start = parent!=null ? parent._names.length : 0;
+            _names = new String[start + names.length];
+            _slots = new HashMap<String, Integer>(_names.length*2);
+            _ttls = new long[_names.length];
+            _immutable = new boolean[_names.length];
+            if(parent!=null) {
+                System.arraycopy(parent._names, 0, _names, 0, start);
+                System.arraycopy(parent._ttls, 0, _ttls, 0, start);
+                System.arraycopy(parent._immutable, 0, _immutable, 0, start);
+                _slots.putAll(parent._slots);
+                _expiring = parent._expiring;
+            }
+            for(int i=0; i<names.length; i++) {
+                _names[start+i] = names[i];
+                _slots.put(names[i], start+i);
+            }
+        }
+
+        /**
+         * Values of the getter expire after some time
+         * @param ttl   time to live in milliseconds
+         */
+        public Layout expire(String name, long ttl) {
+            _ttls[slot(name)] = TimeUnit.MILLISECONDS.toNanos(ttl);
+            _expiring = true;
+            return this;
+        }
+
+        /**
+         * Values of the getter never change, they are kept when the cache is {@link #invalidate() invalidated}
+         */
+        public Layout immutable(String name) {
+            _immutable[slot(name)] = true;
+            return this;
+        }
+
+        /**
+         * @return number of slots
+         */
+        public int size() {
+            return _names.length;
+        }
+
+        /**
+         * @return slot of a getter, or <code>-1</code> if it has none
+         */
+        public int slot(String name) {
+            Integer slot = _slots.get(name);
+            return slot!=null ? slot : -1;
+        }
+    }
+
+    private final Layout _layout;
+    private final AtomicReferenceArray<Object> _values;
+    /** when the value of each slot expires, for slots with a time to live.  Written before the value. */
+    private final AtomicLongArray _expiry;
+    /** results of getters with parameters, by method name and arguments. Guarded by the cache. */
+    private Map<String, Object> _others;
+
+    public PropertyCache(Layout layout) {
+        _layout = layout;
+        _values = new AtomicReferenceArray<Object>(layout.size());
+        _expiry = layout._expiring ? new AtomicLongArray(layout.size()) : null;
+    }
+
+    /**
+     * @param values    properties to copy, may be <code>null</code>
+     */
+    public PropertyCache(Layout layout, Map<String, Object> values) {
+        this(layout);
+        if(values!=null)
+            putAll(values);
+    }
+
+    public Layout getLayout() {
+        return _layout;
+    }
+
+    /**
+     * @return whether a value is cached in the slot, which hasn't expired
+     */
+    public boolean has(int slot) {
+        return get(slot)!=MISS;
+    }
+
+    /**
+     * Read a slot once, so an invalidation in between can't turn a hit into a <code>null</code>
+     * @return value cached in the slot, which may be <code>null</code>, or {@link #MISS} if there is none or it expired
+     */
+    public Object get(int slot) {
+        Object value = _values.get(slot);
+        if(value==null)
+            return MISS;
+        if(_expiry!=null && _layout._ttls[slot]!=0 && System.nanoTime()-_expiry.get(slot) > 0) {
+            _values.compareAndSet(slot, value, null);
+            return MISS;
+        }
+        return value!=NULL ? value : null;
+    }
+
+    public void put(int slot, Object value) {
+        if(_expiry!=null)
+            _expiry.set(slot, System.nanoTime() + _layout._ttls[slot]);
+        _values.set(slot, value!=null ? value : NULL);
+    }
+
+    /**
+     * Look up the result of a getter with parameters
+     * @param key   method name and arguments
+     * @return the cached result, which may be <code>null</code>, or {@link #MISS}
+     */
+    public synchronized Object find(String key) {
+        int slot = slot(key);
+        if(slot>=0)
+            return get(slot);
+        return _others!=null && _others.containsKey(key) ? _others.get(key) : MISS;
+    }
+
+    /**
+     * Clear all values except those of immutable properties
+     */
+    public synchronized void invalidate() {
+        for(int i=0; i<_values.length(); i++) {
+            if(!_layout._immutable[i])
+                _values.set(i, null);
+        }
+        _others = null;
+    }
+
+    /**
+     * Clear the value of a getter, with any arguments
+     */
+    public synchronized void invalidate(String name) {
+        int slot = _layout.slot(name);
+        if(slot>=0)
+            _values.set(slot, null);
+        if(_others!=null) {
+            for(Iterator<String> keys = _others.keySet().iterator(); keys.hasNext(); ) {
+                if(keys.next().startsWith(name))
+                    keys.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        int slot = slot(key);
+        if(slot>=0)
+            return has(slot);
+        return _others!=null && _others.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        int slot = slot(key);
+        if(slot>=0) {
+            Object value = get(slot);
+            return value!=MISS ? value : null;
+        }
+        return _others!=null ? _others.get(key) : null;
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        int slot = slot(key);
+        if(slot>=0) {
+            Object old = get(slot);
+            put(slot, value);
+            return old!=MISS ? old : null;
+        }
+        if(_others==null)
+            _others = new HashMap<String, Object>(4);
+        return _others.put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        int slot = slot(key);
+        if(slot>=0) {
+            Object old = get(slot);
+            _values.set(slot, null);
+            return old!=MISS ? old : null;
+        }
+        return _others!=null ? _others.remove(key) : null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for(int i=0; i<_values.length(); i++)
+            _values.set(i, null);
+        _others = null;
+    }
+
+    @Override
+    public synchronized int size() {
+        int size = _others!=null ? _others.size() : 0;
+        for(int i=0; i<_values.length(); i++) {
+            if(has(i))
+                size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return copy of the cached properties, changing it does not change the cache
+     */
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> entries = new LinkedHashMap<String, Object>();
+        for(int i=0; i<_values.length(); i++) {
+            Object value = get(i);
+            if(value!=MISS)
+                entries.put(_layout._names[i], value);
+        }
+        if(_others!=null)
+            entries.putAll(_others);
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+
+    private int slot(Object key) {
+        return key instanceof String ? _layout.slot((String)key) : -1;
+    }
+}
@@ -0,0 +1,21 @@
+package com.kedzie.vbox.soap;
+
+import com.kedzie.vbox.api.IManagedObjectRef;
+
+import java.util.Map;
+
+/**
+ * Creates the generated proxy for an interface without reflection.  A factory for each <code>@KSOAP</code> interface
+ * is registered in the generated <code>ProxyRegistry</code>, which {@link VBoxSvc#getProxy} looks them up in.
+ * @param <T>   the interface
+ */
+public interface ProxyFactory<T extends IManagedObjectRef> {
+
+    /**
+     * @param vmgr      the service
+     * @param id        UIUD of the object
+     * @param cache     cached properties, or <code>null</code>
+     * @return a new proxy for the object
+     */
+    T create(VBoxSvc vmgr, String id, Map<String, Object> cache);
+}
@@ -0,0 +1,74 @@
+package com.kedzie.vbox.soap;
+
+import org.ksoap2.SoapFault;
+import org.ksoap2.SoapFault12;
+import org.ksoap2.serialization.SoapObject;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * Envelope whose response is read by a {@link ResponseReader}.  Once parsed, {@link #bodyIn} holds either the
+ * {@link VBoxFault} or the value returned by the reader.
+ * @param <T>   return type
+ */
+public class ResponseEnvelope<T> extends SoapSerializationEnvelope {
+
+    private final ResponseReader<T> _reader;
+
+    public ResponseEnvelope(int version, ResponseReader<T> reader) {
+        super(version);
+        _reader = reader;
+    }
+
+    public ResponseReader<T> getReader() {
+        return _reader;
+    }
+
+    /**
+     * @return a new envelope for the same request, whose response is read by the same reader
+     */
+    public ResponseEnvelope<T> copyRequest() {
+        ResponseEnvelope<T> copy = new ResponseEnvelope<T>(version, _reader);
+        copy.setAddAdornments(isAddAdornments());
+        copy.setOutputSoapObject(bodyOut);
+        return copy;
+    }
+
+    /**
+     * @return name of the SOAP method called, i.e. <code>IMachine_getName</code>
+     */
+    private String getMethod() {
+        if(bodyOut instanceof SoapRequest)
+            return ((SoapRequest)bodyOut).getName();
+        if(bodyOut instanceof SoapObject)
+            return ((SoapObject)bodyOut).getName();
+        return null;
+    }
+
+    @Override
+    public void parseBody(XmlPullParser parser) throws IOException, XmlPullParserException {
+        bodyIn = null;
+        parser.nextTag();
+        if (parser.getEventType() == XmlPullParser.START_TAG && parser.getNamespace().equals(env)
+                && parser.getName().equals("Fault")) {
+            SoapFault fault = version < VER12 ? new VBoxFault(getMethod()) : new SoapFault12(version);
+            fault.parse(parser);
+            bodyIn = fault;
+            return;
+        }
+        if (parser.getEventType() != XmlPullParser.START_TAG)
+            return;
+        try {
+            bodyIn = _reader.read(parser);
+        } catch(RuntimeException e) {
+            //a malformed value must not escape the thread reading responses
+            throw new XmlPullParserException("Malformed " + parser.getName() + ": " + e, parser, e);
+        }
+        parser.require(XmlPullParser.END_TAG, null, null);
+        while (parser.nextTag() == XmlPullParser.START_TAG)
+            ResponseReader.skip(parser);
+    }
+}
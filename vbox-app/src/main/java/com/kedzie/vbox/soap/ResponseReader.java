@@ -0,0 +1,299 @@
+package com.kedzie.vbox.soap;
+
+import org.ksoap2.SoapEnvelope;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads the response element of a SOAP call straight from the parser into the return type of the method, instead of
+ * building a tree of <code>SoapObject</code>s first.  Generated for each method of a <code>@KSOAP</code> proxy and
+ * run by a {@link ResponseEnvelope} on the thread reading the response, so it must not block.
+ * <p>The helpers read elements the way the <code>SoapObject</code> tree would have, where empty and <code>nil</code>
+ * elements are <code>null</code>.</p>
+ * @param <T>   return type
+ */
+public abstract class ResponseReader<T> {
+    /** Characters of Base64 text decoded at a time */
+    private static final int CHUNK_SIZE = 4096;
+    /** Receives the start and length of the text from <code>getTextCharacters</code> */
+    private static final ThreadLocal<int[]> RANGE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[2];
+        }
+    };
+
+    /**
+     * Skips the response, for methods without a return value
+     */
+    public static final ResponseReader<Void> NONE = new ResponseReader<Void>() {
+        @Override
+        public Void read(XmlPullParser parser) throws IOException, XmlPullParserException {
+            skip(parser);
+            return null;
+        }
+    };
+
+    /**
+     * Read the response
+     * @param parser    positioned on the start tag of the response element, and left on its end tag
+     * @return the return value
+     */
+    public abstract T read(XmlPullParser parser) throws IOException, XmlPullParserException;
+
+    /**
+     * @return <code>true</code> if the reader hands the elements of the response to a {@link SoapFuture.Consumer} as
+     * it reads them, so the response must be read exactly once and cannot be shared with other calls
+     */
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Hand an element of a streamed response to its consumer
+     * @param executor  runs the consumer, in order, such as the main thread
+     */
+    protected static <E> void deliver(final SoapFuture.Consumer<? super E> consumer, final E element, Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                consumer.accept(element);
+            }
+        });
+    }
+
+    /**
+     * Hand an element of a streamed response holding managed object references to its consumer.  The proxies are
+     * made on the executor, not while the response is parsed.
+     * @param vmgr      makes the proxies
+     * @param executor  runs the consumer, in order, such as the main thread
+     */
+    protected static <E> void deliver(final SoapFuture.Consumer<? super E> consumer, final DeferredProxies<E> element,
+            final VBoxSvc vmgr, Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                consumer.accept(element.resolve(vmgr));
+            }
+        });
+    }
+
+    /**
+     * Move to the next child of the current element
+     * @return <code>true</code> if positioned on the start tag of a child, <code>false</code> on the end tag of the parent
+     */
+    protected static boolean nextElement(XmlPullParser parser) throws IOException, XmlPullParserException {
+        return parser.nextTag()==XmlPullParser.START_TAG;
+    }
+
+    /**
+     * Skip the current element and its children
+     */
+    protected static void skip(XmlPullParser parser) throws IOException, XmlPullParserException {
+        for(int depth=1; depth>0; ) {
+            switch(parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document", parser, null);
+            }
+        }
+    }
+
+    /**
+     * Skip the remaining children of the current element
+     */
+    protected static void skipRemaining(XmlPullParser parser) throws IOException, XmlPullParserException {
+        while(nextElement(parser))
+            skip(parser);
+    }
+
+    /**
+     * Read the text of a simple element
+     * @return the text, or <code>null</code> if the element is empty or <code>nil</code>
+     */
+    protected static String readText(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        String text = null;
+        if(parser.next()==XmlPullParser.TEXT) {
+            text = parser.getText();
+            parser.next();
+        }
+        requireEnd(parser, name);
+        return nil ? null : text;
+    }
+
+    /**
+     * Read a Base64 element.  Text from a {@link KXmlParser} is decoded in chunks as it is read, so the text of a
+     * large value like a screenshot is never held in memory as a whole.
+     * @return the decoded bytes, or <code>null</code> if the element is empty or <code>nil</code>
+     */
+    protected static byte[] readBase64(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        Base64Buffer buffer = new Base64Buffer();
+        try {
+            if(parser instanceof KXmlParser) {
+                char[] chunk = new char[CHUNK_SIZE];
+                for(int n; (n = ((KXmlParser)parser).readText(chunk, 0, chunk.length)) != -1; )
+                    buffer.decode(chunk, 0, n);
+            }
+            //the rest of the text, or all of it from other parsers
+            int[] range = RANGE.get();
+            while(parser.next()==XmlPullParser.TEXT) {
+                char[] text = parser.getTextCharacters(range);
+                buffer.decode(text, range[0], range[1]);
+            }
+            requireEnd(parser, name);
+            byte[] value = buffer.toByteArray();
+            return nil || value.length==0 ? null : value;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    protected static Integer readInteger(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        Integer value = null;
+        if(parser.next()==XmlPullParser.TEXT) {
+            if(!nil) {
+                int[] range = RANGE.get();
+                char[] text = parser.getTextCharacters(range);
+                value = Integer.valueOf((int)parseLong(text, range[0], range[1], Integer.MIN_VALUE, Integer.MAX_VALUE));
+            }
+            parser.next();
+        }
+        requireEnd(parser, name);
+        return value;
+    }
+
+    protected static Long readLong(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        Long value = null;
+        if(parser.next()==XmlPullParser.TEXT) {
+            if(!nil) {
+                int[] range = RANGE.get();
+                char[] text = parser.getTextCharacters(range);
+                value = Long.valueOf(parseLong(text, range[0], range[1], Long.MIN_VALUE, Long.MAX_VALUE));
+            }
+            parser.next();
+        }
+        requireEnd(parser, name);
+        return value;
+    }
+
+    protected static Short readShort(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        Short value = null;
+        if(parser.next()==XmlPullParser.TEXT) {
+            if(!nil) {
+                int[] range = RANGE.get();
+                char[] text = parser.getTextCharacters(range);
+                value = Short.valueOf((short)parseLong(text, range[0], range[1], Short.MIN_VALUE, Short.MAX_VALUE));
+            }
+            parser.next();
+        }
+        requireEnd(parser, name);
+        return value;
+    }
+
+    /**
+     * Read a boolean like <code>Boolean.valueOf(String)</code>, where anything but <code>true</code> is <code>false</code>
+     */
+    protected static Boolean readBoolean(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        Boolean value = null;
+        if(parser.next()==XmlPullParser.TEXT) {
+            if(!nil) {
+                int[] range = RANGE.get();
+                char[] text = parser.getTextCharacters(range);
+                int start = range[0], end = range[0]+range[1];
+                while(start<end && text[start]<=' ')
+                    start++;
+                while(end>start && text[end-1]<=' ')
+                    end--;
+                value = end-start==4
+                        && Character.toLowerCase(text[start])=='t' && Character.toLowerCase(text[start+1])=='r'
+                        && Character.toLowerCase(text[start+2])=='u' && Character.toLowerCase(text[start+3])=='e'
+                        ? Boolean.TRUE : Boolean.FALSE;
+            }
+            parser.next();
+        }
+        requireEnd(parser, name);
+        return value;
+    }
+
+    /**
+     * Read an enum value
+     * @param table     generated table of the enum, like <code>MachineState$$Table.INSTANCE</code>
+     * @return the constant, or <code>null</code> if the element is empty or <code>nil</code>
+     */
+    protected static <E extends Enum<E>> E readEnum(XmlPullParser parser, EnumTable<E> table) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        boolean nil = isNil(parser);
+        E value = null;
+        if(parser.next()==XmlPullParser.TEXT) {
+            if(!nil) {
+                int[] range = RANGE.get();
+                value = table.get(parser.getTextCharacters(range), range[0], range[1]);
+            }
+            parser.next();
+        }
+        requireEnd(parser, name);
+        return value;
+    }
+
+    /**
+     * Parse a decimal number from the characters, ignoring surrounding whitespace like <code>String.trim()</code>
+     * @throws NumberFormatException if it is not a number between <code>min</code> and <code>max</code>
+     */
+    static long parseLong(char[] text, int offset, int length, long min, long max) {
+        int i = offset, end = offset+length;
+        while(i<end && text[i]<=' ')
+            i++;
+        while(end>i && text[end-1]<=' ')
+            end--;
+        boolean negative = i<end && text[i]=='-';
+        if(i<end && (text[i]=='-' || text[i]=='+'))
+            i++;
+        if(i==end)
+            throw new NumberFormatException("Invalid number: \"" + new String(text, offset, length) + "\"");
+        //accumulate negatively, which has room for min
+        long limit = negative ? min : -max;
+        long multiplyMin = limit/10;
+        long result = 0;
+        for(; i<end; i++) {
+            int digit = text[i]-'0';
+            if(digit<0 || digit>9 || result<multiplyMin || result*10<limit+digit)
+                throw new NumberFormatException("Invalid number: \"" + new String(text, offset, length) + "\"");
+            result = result*10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static boolean isNil(XmlPullParser parser) {
+        return SoapEnvelope.stringToBoolean(parser.getAttributeValue(SoapEnvelope.XSI, "nil"));
+    }
+
+    /**
+     * Check the parser is on the end tag of a simple element, after its text
+     */
+    private static void requireEnd(XmlPullParser parser, String name) throws IOException, XmlPullParserException {
+        if(parser.getEventType()==XmlPullParser.START_TAG)
+            throw new XmlPullParserException("Unexpected element in " + name, parser, null);
+        parser.require(XmlPullParser.END_TAG, null, name);
+    }
+}
@@ -0,0 +1,226 @@
+package com.kedzie.vbox.soap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of a SOAP call which completes on another thread.
+ * <p>Callbacks are handed to an {@link Executor} rather than run by the thread completing the future, which is
+ * usually a network thread.  This way a callback may block on other calls without stalling their responses.</p>
+ * @param <T>   result type
+ */
+public class SoapFuture<T> implements Future<T> {
+
+    /**
+     * Receives the outcome of a {@link SoapFuture}
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+        void onFailure(Throwable t);
+    }
+
+    /**
+     * Converts the result of a {@link SoapFuture}
+     */
+    public interface Function<T, R> {
+        R apply(T input) throws Exception;
+    }
+
+    /**
+     * Receives the elements of a streamed result one at a time, as they are read from the response
+     */
+    public interface Consumer<T> {
+        void accept(T element);
+    }
+
+    /**
+     * Runs callbacks on the thread completing the future.  Only for callbacks which return quickly and never block.
+     */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private T _result;
+    private Throwable _exception;
+    private boolean _done;
+    private boolean _cancelled;
+    private List<Runnable> _listeners;
+
+    /**
+     * @param result    the result
+     * @return a future which has already completed
+     */
+    public static <T> SoapFuture<T> immediate(T result) {
+        SoapFuture<T> future = new SoapFuture<T>();
+        future.set(result);
+        return future;
+    }
+
+    /**
+     * Complete with a result
+     * @param result    the result
+     * @return <code>false</code> if already completed
+     */
+    public boolean set(T result) {
+        synchronized (this) {
+            if(_done)
+                return false;
+            _result = result;
+            _done = true;
+            notifyAll();
+        }
+        runListeners();
+        return true;
+    }
+
+    /**
+     * Complete with a failure
+     * @param exception    the failure
+     * @return <code>false</code> if already completed
+     */
+    public boolean setException(Throwable exception) {
+        synchronized (this) {
+            if(_done)
+                return false;
+            _exception = exception;
+            _done = true;
+            notifyAll();
+        }
+        runListeners();
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if(_done)
+                return false;
+            _cancelled = true;
+            _done = true;
+            notifyAll();
+        }
+        runListeners();
+        return true;
+    }
+
+    /**
+     * Run a callback once the future completes
+     * @param callback  the callback
+     * @param executor  executor to run the callback on
+     */
+    public void addCallback(final Callback<? super T> callback, final Executor executor) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        T result;
+                        try {
+                            result = getResult();
+                        } catch (ExecutionException e) {
+                            callback.onFailure(e.getCause());
+                            return;
+                        } catch (CancellationException e) {
+                            callback.onFailure(e);
+                            return;
+                        }
+                        callback.onSuccess(result);
+                    }
+                });
+            }
+        };
+        synchronized (this) {
+            if(!_done) {
+                if(_listeners==null)
+                    _listeners = new ArrayList<Runnable>(2);
+                _listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Chain a conversion of the result
+     * @param function  conversion, which fails the returned future if it throws
+     * @param executor  executor to run the conversion on
+     * @return future of the converted result
+     */
+    public <R> SoapFuture<R> then(final Function<? super T, ? extends R> function, Executor executor) {
+        final SoapFuture<R> converted = new SoapFuture<R>();
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    converted.set(function.apply(result));
+                } catch (Throwable e) {
+                    converted.setException(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                converted.setException(t);
+            }
+        }, executor);
+        return converted;
+    }
+
+    private void runListeners() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = _listeners;
+            _listeners = null;
+        }
+        if(listeners!=null)
+            for(Runnable listener : listeners)
+                listener.run();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return _cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return _done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while(!_done)
+            wait();
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while(!_done) {
+            long wait = deadline - System.currentTimeMillis();
+            if(wait <= 0)
+                throw new TimeoutException();
+            wait(wait);
+        }
+        return getResult();
+    }
+
+    private synchronized T getResult() throws ExecutionException {
+        if(_cancelled)
+            throw new CancellationException();
+        if(_exception!=null)
+            throw new ExecutionException(_exception);
+        return _result;
+    }
+}
@@ -0,0 +1,245 @@
+package com.kedzie.vbox.soap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * SOAP request body rendered straight to UTF-8 bytes.  The envelope and the elements of each parameter are rendered
+ * once per method by a {@link Template}, so building a request only copies them and escapes the argument values.
+ * <p>Set as the <code>bodyOut</code> of an envelope in place of a <code>SoapObject</code>, and written by
+ * {@link HttpTransport} instead of the <code>KXmlSerializer</code>.  The bytes match what the serializer writes for the
+ * equivalent <code>SoapObject</code>, except that <code>@</code> and non-ASCII characters are written as UTF-8 rather than
+ * character references.</p>
+ * <pre>
+ * static final SoapRequest.Template GET_NAME = new SoapRequest.Template("IMachine_getName", "_this", "d:string");
+ * SoapRequest request = GET_NAME.newRequest().add(0, machineId);
+ * </pre>
+ * Requests are immutable once built, so they can be written again for retries and hedged calls.
+ * @apiviz.composedOf com.kedzie.vbox.soap.SoapRequest$Template
+ */
+public class SoapRequest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String NAMESPACE = "http://www.virtualbox.org/";
+    /** Same namespace prefixes as <code>SoapEnvelope.write</code> */
+    private static final String ENVELOPE_START = "<v:Envelope xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:d=\"http://www.w3.org/2001/XMLSchema\" " +
+            "xmlns:c=\"http://schemas.xmlsoap.org/soap/encoding/\" xmlns:v=\"http://schemas.xmlsoap.org/soap/envelope/\"><v:Header /><v:Body>";
+    private static final String ENVELOPE_END = "</v:Body></v:Envelope>";
+    /** Room left for each argument value when sizing a new request */
+    private static final int VALUE_ESTIMATE = 40;
+
+    /**
+     * Pre-rendered envelope of a method
+     */
+    public static class Template {
+        final String _name;
+        final String _soapAction;
+        final byte[] _prefix;
+        final byte[] _suffix;
+        final byte[][] _open;
+        final byte[][] _close;
+        final byte[][] _null;
+        final int _estimate;
+
+        /**
+         * @param name          SOAP method, like <code>IMachine_getName</code>
+         * @param parameters    alternating element name and <code>xsi:type</code> of each parameter.  Types in the
+         *                      <code>http://www.w3.org/2001/XMLSchema</code> namespace use prefix <code>d</code>, those in the
+         *                      VirtualBox namespace prefix <code>n0</code>, and others are given as <code>{namespace}type</code>.
+         */
+        public Template(String name, String... parameters) {
+            _name = name;
+            _soapAction = NAMESPACE + name;
+            _prefix = (ENVELOPE_START + "<n0:" + name + " xmlns:n0=\"" + NAMESPACE + "\">").getBytes(UTF8);
+            _suffix = ("</n0:" + name + ">" + ENVELOPE_END).getBytes(UTF8);
+            int count = parameters.length/2;
+            _open = new byte[count][];
+            _close = new byte[count][];
+            _null = new byte[count][];
+            int estimate = _prefix.length;
+            for(int i=0; i<count; i++) {
+                String element = parameters[i*2];
+                String type = parameters[i*2+1];
+                String declaration = "";
+                if(type.startsWith("{")) {
+                    int end = type.indexOf('}');
+                    declaration = " xmlns:n1=\"" + type.substring(1, end) + "\"";
+                    type = "n1:" + type.substring(end+1);
+                }
+                _open[i] = ("<" + element + " i:type=\"" + type + "\"" + declaration + ">").getBytes(UTF8);
+                _close[i] = ("</" + element + ">").getBytes(UTF8);
+                _null[i] = ("<" + element + " i:null=\"true\" />").getBytes(UTF8);
+                estimate += _open[i].length + _close[i].length + VALUE_ESTIMATE;
+            }
+            _estimate = estimate;
+        }
+
+        /**
+         * @return a request without arguments
+         */
+        public SoapRequest newRequest() {
+            return new SoapRequest(this);
+        }
+    }
+
+    private final Template _template;
+    private byte[] _buffer;
+    private int _length;
+    private int _count;
+
+    SoapRequest(Template template) {
+        _template = template;
+        _buffer = new byte[template._estimate];
+        System.arraycopy(template._prefix, 0, _buffer, 0, template._prefix.length);
+        _length = template._prefix.length;
+    }
+
+    /**
+     * @return SOAP method, like <code>IMachine_getName</code>
+     */
+    public String getName() {
+        return _template._name;
+    }
+
+    public String getSoapAction() {
+        return _template._soapAction;
+    }
+
+    /**
+     * @return number of arguments added, counting each element of a list
+     */
+    public int getPropertyCount() {
+        return _count;
+    }
+
+    /**
+     * Add an argument
+     * @param parameter     index of the parameter in the {@link Template}
+     * @param value         the value, or <code>null</code> for a nil element
+     * @return this request
+     */
+    public SoapRequest add(int parameter, String value) {
+        if(value==null) {
+            append(_template._null[parameter]);
+            _count++;
+            return this;
+        }
+        append(_template._open[parameter]);
+        for(int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            //a surrogate pair takes 4 bytes, an escaped character up to 5
+            ensureCapacity(5);
+            if(c>=0x80) {
+                i = appendUTF8(value, i);
+                continue;
+            }
+            switch(c) {
+                case '&':
+                    appendASCII("&amp;");
+                    break;
+                case '<':
+                    appendASCII("&lt;");
+                    break;
+                case '>':
+                    appendASCII("&gt;");
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    _buffer[_length++] = (byte)c;
+                    break;
+                default:
+                    if(c < ' ')
+                        appendASCII("&#" + (int)c + ";");
+                    else
+                        _buffer[_length++] = (byte)c;
+            }
+        }
+        append(_template._close[parameter]);
+        _count++;
+        return this;
+    }
+
+    public SoapRequest add(int parameter, long value) {
+        append(_template._open[parameter]);
+        appendASCII(Long.toString(value));
+        append(_template._close[parameter]);
+        _count++;
+        return this;
+    }
+
+    public SoapRequest add(int parameter, boolean value) {
+        append(_template._open[parameter]);
+        appendASCII(value ? "true" : "false");
+        append(_template._close[parameter]);
+        _count++;
+        return this;
+    }
+
+    /**
+     * Write the complete envelope
+     */
+    public void writeTo(OutputStream os) throws IOException {
+        os.write(_buffer, 0, _length);
+        os.write(_template._suffix);
+    }
+
+    /**
+     * @return the arguments as rendered, which identify the call together with the SOAP action
+     */
+    public String getArguments() {
+        int start = _template._prefix.length;
+        return new String(_buffer, start, _length-start, UTF8);
+    }
+
+    @Override
+    public String toString() {
+        return _template._name + "{" + getArguments() + "}";
+    }
+
+    private void ensureCapacity(int extra) {
+        if(_length + extra <= _buffer.length)
+            return;
+        byte[] buffer = new byte[Math.max(_buffer.length*2, _length + extra)];
+        System.arraycopy(_buffer, 0, buffer, 0, _length);
+        _buffer = buffer;
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, _buffer, _length, bytes.length);
+        _length += bytes.length;
+    }
+
+    private void appendASCII(String s) {
+        ensureCapacity(s.length());
+        for(int i=0; i<s.length(); i++)
+            _buffer[_length++] = (byte)s.charAt(i);
+    }
+
+    /**
+     * Encode the character at <code>i</code>, which is not ASCII
+     * @return index of the last character consumed
+     */
+    private int appendUTF8(String s, int i) {
+        int c = s.charAt(i);
+        if(Character.isHighSurrogate((char)c) && i+1<s.length() && Character.isLowSurrogate(s.charAt(i+1))) {
+            c = Character.toCodePoint((char)c, s.charAt(++i));
+            _buffer[_length++] = (byte)(0xF0 | (c >> 18));
+            _buffer[_length++] = (byte)(0x80 | ((c >> 12) & 0x3F));
+        } else if(Character.isSurrogate((char)c)) {
+            //unpaired surrogate, as the charset encoder would write it
+            _buffer[_length++] = '?';
+            return i;
+        } else if(c >= 0x800) {
+            _buffer[_length++] = (byte)(0xE0 | (c >> 12));
+        } else {
+            _buffer[_length++] = (byte)(0xC0 | (c >> 6));
+            _buffer[_length++] = (byte)(0x80 | (c & 0x3F));
+            return i;
+        }
+        _buffer[_length++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+        _buffer[_length++] = (byte)(0x80 | (c & 0x3F));
+        return i;
+    }
+}
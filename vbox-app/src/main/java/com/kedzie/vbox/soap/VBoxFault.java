@@ -0,0 +1,141 @@
+package com.kedzie.vbox.soap;
+
+import com.kedzie.vbox.api.IVirtualBox;
+
+import org.ksoap2.SoapEnvelope;
+import org.ksoap2.SoapFault;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * Fault returned by <code>vboxwebsrv</code>, decoded in a single pass over the response instead of into a kdom tree
+ * of the <code>detail</code>, which is left <code>null</code>.
+ * <p>A failed method returns a <code>RuntimeFault</code> with the COM result code and a reference to an
+ * {@link com.kedzie.vbox.api.IVirtualBoxErrorInfo}, while a call on a released or expired object returns an
+ * <code>InvalidObjectFault</code> naming the object.</p>
+ */
+public class VBoxFault extends SoapFault {
+    private static final long serialVersionUID = 1L;
+
+    private final String _method;
+    private int _resultCode;
+    private String _errorInfo;
+    private String _badObject;
+
+    /**
+     * @param method    SOAP method which failed, i.e. <code>IMachine_launchVMProcess</code>
+     */
+    public VBoxFault(String method) {
+        super(SoapEnvelope.VER11);
+        _method = method;
+    }
+
+    /**
+     * @return the SOAP method which failed, i.e. <code>IMachine_launchVMProcess</code>
+     */
+    public String getMethod() {
+        return _method;
+    }
+
+    /**
+     * @return the interface of the method which failed, i.e. <code>IMachine</code>
+     */
+    public String getInterface() {
+        int separator = _method==null ? -1 : _method.indexOf('_');
+        return separator<0 ? null : _method.substring(0, separator);
+    }
+
+    /**
+     * @return COM result code of a <code>RuntimeFault</code>, like {@link IVirtualBox#VBOX_E_INVALID_VM_STATE}, or <code>0</code>
+     */
+    public int getResultCode() {
+        return _resultCode;
+    }
+
+    /**
+     * @return reference to the <code>IVirtualBoxErrorInfo</code> of a <code>RuntimeFault</code>, or <code>null</code>
+     */
+    public String getErrorInfo() {
+        return _errorInfo;
+    }
+
+    /**
+     * @return reference of the object named by an <code>InvalidObjectFault</code>, or <code>null</code>
+     */
+    public String getBadObject() {
+        return _badObject;
+    }
+
+    /**
+     * @return <code>true</code> if the object called was released, usually because the session expired
+     */
+    public boolean isInvalidObject() {
+        return _badObject!=null;
+    }
+
+    /**
+     * @return <code>true</code> if the call failed because of the state of the machine, session or object at the
+     * time, like a machine locked by another session, so it may succeed if made again later
+     */
+    public boolean isTransient() {
+        //the constants are int literals widened to long
+        long code = _resultCode;
+        return code==IVirtualBox.VBOX_E_INVALID_VM_STATE || code==IVirtualBox.VBOX_E_INVALID_OBJECT_STATE
+                || code==IVirtualBox.VBOX_E_INVALID_SESSION_STATE || code==IVirtualBox.VBOX_E_OBJECT_IN_USE;
+    }
+
+    @Override
+    public void parse(XmlPullParser parser) throws IOException, XmlPullParserException {
+        parser.require(XmlPullParser.START_TAG, SoapEnvelope.ENV, "Fault");
+        while(ResponseReader.nextElement(parser)) {
+            String name = parser.getName();
+            if(name.equals("faultcode"))
+                faultcode = ResponseReader.readText(parser);
+            else if(name.equals("faultstring"))
+                faultstring = ResponseReader.readText(parser);
+            else if(name.equals("faultactor"))
+                faultactor = ResponseReader.readText(parser);
+            else if(name.equals("detail"))
+                parseDetail(parser);
+            else
+                ResponseReader.skip(parser);
+        }
+        parser.require(XmlPullParser.END_TAG, SoapEnvelope.ENV, "Fault");
+        parser.nextTag();
+    }
+
+    /**
+     * Read the <code>RuntimeFault</code> or <code>InvalidObjectFault</code> in the <code>detail</code>
+     */
+    private void parseDetail(XmlPullParser parser) throws IOException, XmlPullParserException {
+        while(ResponseReader.nextElement(parser)) {
+            while(ResponseReader.nextElement(parser)) {
+                String name = parser.getName();
+                if(name.equals("resultCode")) {
+                    String code = ResponseReader.readText(parser);
+                    //an xsd:int, though some servers write it unsigned
+                    if(code!=null)
+                        _resultCode = (int)ResponseReader.parseLong(code.toCharArray(), 0, code.length(), Integer.MIN_VALUE, 0xFFFFFFFFL);
+                } else if(name.equals("returnval"))
+                    _errorInfo = ResponseReader.readText(parser);
+                else if(name.equals("badObjectID"))
+                    _badObject = ResponseReader.readText(parser);
+                else
+                    ResponseReader.skip(parser);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder("VBoxFault - ").append(_method).append(": ");
+        if(_resultCode!=0)
+            string.append(String.format("0x%08x ", _resultCode));
+        string.append(faultstring);
+        if(_badObject!=null)
+            string.append(" (invalid object ").append(_badObject).append(')');
+        return string.toString();
+    }
+}
@@ -1,64 +1,67 @@
 package com.kedzie.vbox.soap;
 
+import android.os.Build;
 import android.os.Handler;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.Base64;
 import android.util.Log;
 
-import com.kedzie.vbox.api.BaseProxy;
 import com.kedzie.vbox.api.IDHCPServer;
 import com.kedzie.vbox.api.IDisplay;
 import com.kedzie.vbox.api.IEvent;
 import com.kedzie.vbox.api.IHost;
 import com.kedzie.vbox.api.IHostNetworkInterface;
 import com.kedzie.vbox.api.IMachine;
-import com.kedzie.vbox.api.IMachineStateChangedEvent;
 import com.kedzie.vbox.api.IManagedObjectRef;
 import com.kedzie.vbox.api.IMedium;
 import com.kedzie.vbox.api.INetworkAdapter;
 import com.kedzie.vbox.api.IProgress;
 import com.kedzie.vbox.api.ISession;
-import com.kedzie.vbox.api.ISessionStateChangedEvent;
-import com.kedzie.vbox.api.ISnapshotDeletedEvent;
-import com.kedzie.vbox.api.ISnapshotTakenEvent;
 import com.kedzie.vbox.api.IVirtualBox;
 import com.kedzie.vbox.api.Screenshot;
 import com.kedzie.vbox.api.jaxb.BitmapFormat;
 import com.kedzie.vbox.api.jaxb.LockType;
 import com.kedzie.vbox.api.jaxb.MachineState;
 import com.kedzie.vbox.api.jaxb.VBoxEventType;
+import com.kedzie.vbox.api.jaxb.VBoxEventType$$Table;
 import com.kedzie.vbox.app.Tuple;
 import com.kedzie.vbox.app.Utils;
 import com.kedzie.vbox.metrics.MetricQuery;
 import com.kedzie.vbox.server.Server;
+import com.kedzie.vbox.soap.KeepAliveConnection.CompressionRejectedException;
+import com.kedzie.vbox.soap.KeepAliveConnection.StaleConnectionException;
 import com.kedzie.vbox.soap.ssl.InteractiveTrustedHttpsTransport;
-import com.kedzie.vbox.soap.ssl.KeystoreTrustedHttpsTransport;
 
 import org.ksoap2.SoapEnvelope;
 import org.ksoap2.SoapFault;
 import org.ksoap2.serialization.SoapObject;
 import org.ksoap2.serialization.SoapSerializationEnvelope;
 import org.ksoap2.transport.HttpTransportSE;
+import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.lang.reflect.Constructor;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import nf.fr.eraasoft.pool.ObjectPool;
-import nf.fr.eraasoft.pool.PoolSettings;
-import nf.fr.eraasoft.pool.PoolableObjectBase;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * VirtualBox JAX-WS API
@@ -66,6 +69,9 @@ import nf.fr.eraasoft.pool.PoolableObjectBase;
  * @apiviz.stereotype service
  * @apiviz.owns com.kedzie.vbox.api.IVirtualBox
  * @apiviz.owns com.kedzie.vbox.soap.HttpTransport
+ * @apiviz.uses com.kedzie.vbox.soap.ConnectionPool
+ * @apiviz.uses com.kedzie.vbox.soap.PipelinedDispatcher
+ * @apiviz.uses com.kedzie.vbox.soap.CircuitBreaker
  * @apiviz.owns com.kedzie.vbox.soap.TrustedHttpsTransport
  * @apiviz.owns com.kedzie.vbox.server.Server
  * @apiviz.uses com.kedzie.vbox.soap.KSOAP
@@ -77,7 +83,27 @@ public class VBoxSvc implements Parcelable, Externalizable {
 	public static final String BUNDLE = "vmgr";
 	public static final String NAMESPACE = "http://www.virtualbox.org/";
 	private static final int THREAD_POOL_SIZE = 15;
-	private static final int TRANSPORT_POOL_SIZE = 15;
+	private static final int MAX_CONNECTIONS = 15;
+	/** Connections opened ahead of the first calls after logon */
+	private static final int WARM_CONNECTIONS = PipelinedDispatcher.DEFAULT_LANES;
+	/** Percentile of recent getter latencies after which a hedged getter is sent again */
+	private static final int HEDGE_PERCENTILE = 95;
+	/** Hedged getters are never sent again sooner than this, in milliseconds */
+	private static final long MIN_HEDGE_DELAY = 50;
+	/** Runs the deadlines and hedges of asynchronous calls */
+	private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, TAG + " scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static {
+		//deadlines are cancelled as soon as their calls complete, don't keep them queued until they would have run
+		if(Utils.isVersion(Build.VERSION_CODES.LOLLIPOP))
+			SCHEDULER.setRemoveOnCancelPolicy(true);
+	}
 	private static final ClassLoader LOADER = VBoxSvc.class.getClassLoader();
 
 	public static final Parcelable.Creator<VBoxSvc> CREATOR = new Parcelable.Creator<VBoxSvc>() {
@@ -93,10 +119,26 @@ public class VBoxSvc implements Parcelable, Externalizable {
 		}
 	};
 
-    private Map<String, Constructor<? extends BaseProxy>> proxyCache = new HashMap<String, Constructor<? extends BaseProxy>>();
+	/** Request for the type of an event, which decides the interface of its proxy */
+	private static final SoapRequest.Template EVENT_TYPE_REQUEST = new SoapRequest.Template("IEvent_getType", "_this", "d:string");
+	/** Cache key of {@link IEvent#getType()}, so the proxy doesn't ask again */
+	private static final String EVENT_TYPE_KEY = "getType";
+	private static final ResponseReader<VBoxEventType> EVENT_TYPE_READER = new ResponseReader<VBoxEventType>() {
+		@Override
+		public VBoxEventType read(XmlPullParser parser) throws IOException, XmlPullParserException {
+			if(!nextElement(parser))
+				return null;
+			VBoxEventType value = readEnum(parser, VBoxEventType$$Table.INSTANCE);
+			skipRemaining(parser);
+			return value;
+		}
+	};
+
 	private Server _server;
 	private IVirtualBox _vbox;
-	private ObjectPool<HttpTransportSE> _transportPool;
+	private ConnectionPool _connectionPool;
+	private PipelinedDispatcher _dispatcher;
+	private CircuitBreaker _breaker;
 	private ExecutorService _threadPoolExecutor;
 
 	/**
@@ -117,20 +159,11 @@ public class VBoxSvc implements Parcelable, Externalizable {
 	}
 	
 	private void init() {
-        Log.i(TAG, "Initializing Virtualbox API");
+		Log.i(TAG, "Initializing Virtualbox API");
 		_threadPoolExecutor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-		PoolSettings<HttpTransportSE> poolSettings = new PoolSettings<HttpTransportSE>(
-		                new PoolableObjectBase<HttpTransportSE>() {
-		                	@Override public void activate(HttpTransportSE t) {}
-		                	@Override
-		                	public HttpTransportSE make() {
-		                		return _server.isSSL() ? 
-		                				new KeystoreTrustedHttpsTransport(_server, TIMEOUT) : 
-		                				new HttpTransport(_server, TIMEOUT);
-		                	}
-		                });
-		poolSettings.min(0).max(TRANSPORT_POOL_SIZE);
-		_transportPool = poolSettings.pool();
+		_connectionPool = ConnectionPool.get(_server, MAX_CONNECTIONS, TIMEOUT);
+		_dispatcher = PipelinedDispatcher.get(_server, _connectionPool, TIMEOUT);
+		_breaker = CircuitBreaker.get(_server);
 	}
 
 	public IVirtualBox getVBox() {
@@ -146,28 +179,235 @@ public class VBoxSvc implements Parcelable, Externalizable {
 	}
 	
 	public ExecutorService getExecutor() {
-	    return _threadPoolExecutor;
-	}
-
-    /**
-     * Make HTTP request using transport from the pool
-     * @param request
-     * @param envelope
-     * @throws IOException
-     */
-    public void httpCall(String request, SoapSerializationEnvelope envelope) throws IOException {
-        HttpTransportSE transport = null;
-        try {
-            transport = _transportPool.getObj();
-            transport.call(request, envelope);
-        } catch (Throwable e) {
-            Log.e(TAG, "Exception", e);
-            if(e instanceof IOException) throw (IOException)e;
-        } finally {
-            if(transport!=null)
-                _transportPool.returnObj(transport);
-        }
-    }
+		return _threadPoolExecutor;
+	}
+
+	/**
+	 * @return circuit breaker which rejects calls while the server is unreachable
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return _breaker;
+	}
+
+	/**
+	 * Make HTTP request over a pooled keep-alive connection.
+	 * Requests which fail because the server dropped an idle connection are retried once on a new connection.
+	 * Attribute getters are pipelined by the {@link PipelinedDispatcher}, so concurrent callers share a few connections.
+	 * @param request
+	 * @param envelope
+	 * @throws IOException
+	 */
+	public void httpCall(String request, SoapSerializationEnvelope envelope) throws IOException {
+		httpCall(request, envelope, 0, false);
+	}
+
+	/**
+	 * Make HTTP request with its own deadline
+	 * @param request
+	 * @param envelope
+	 * @param timeout   deadline for the response in milliseconds, or <code>0</code> for the default
+	 * @param hedge     whether a slow attribute getter is sent again on another connection, see {@link KSOAP#hedge()}
+	 * @throws IOException
+	 */
+	public void httpCall(String request, SoapSerializationEnvelope envelope, int timeout, boolean hedge) throws IOException {
+		if(timeout<=0)
+			timeout = TIMEOUT;
+		if(PipelinedDispatcher.isPipelinable(envelope)) {
+			awaitCall(request, getterCall(request, envelope, timeout, hedge), timeout);
+			return;
+		}
+		try {
+			pooledCall(request, envelope, timeout);
+		} catch (Throwable e) {
+			Log.e(TAG, "Exception", e);
+			if(e instanceof IOException) throw (IOException)e;
+		}
+	}
+
+	/**
+	 * Make HTTP request without blocking the caller.  Attribute getters are pipelined by the {@link PipelinedDispatcher}
+	 * and don't occupy a thread while in flight, other calls run on the {@link #getExecutor() executor}.
+	 * @param request
+	 * @param envelope
+	 * @return future completed with the envelope once the response has been parsed into it
+	 */
+	public SoapFuture<SoapSerializationEnvelope> httpCallAsync(String request, SoapSerializationEnvelope envelope) {
+		return httpCallAsync(request, envelope, 0, false);
+	}
+
+	/**
+	 * Make HTTP request with its own deadline without blocking the caller
+	 * @param request
+	 * @param envelope
+	 * @param timeout   deadline for the response in milliseconds, or <code>0</code> for the default
+	 * @param hedge     whether a slow attribute getter is sent again on another connection, see {@link KSOAP#hedge()}
+	 * @return future completed with the envelope once the response has been parsed into it
+	 */
+	public SoapFuture<SoapSerializationEnvelope> httpCallAsync(final String request, final SoapSerializationEnvelope envelope, int timeout, boolean hedge) {
+		if(PipelinedDispatcher.isPipelinable(envelope)) {
+			final SoapFuture<SoapSerializationEnvelope> future = getterCall(request, envelope, timeout>0 ? timeout : TIMEOUT, hedge);
+			//otherwise pipelined calls are only timed out by the read timeout of their lane
+			if(timeout>0) {
+				final ScheduledFuture<?> deadline = SCHEDULER.schedule(new Runnable() {
+					@Override
+					public void run() {
+						future.setException(new SocketTimeoutException("No response to " + request));
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+				future.addCallback(new SoapFuture.Callback<SoapSerializationEnvelope>() {
+					@Override
+					public void onSuccess(SoapSerializationEnvelope result) {
+						deadline.cancel(false);
+					}
+
+					@Override
+					public void onFailure(Throwable t) {
+						deadline.cancel(false);
+					}
+				}, SoapFuture.DIRECT);
+			}
+			return future;
+		}
+		final SoapFuture<SoapSerializationEnvelope> future = new SoapFuture<SoapSerializationEnvelope>();
+		final int callTimeout = timeout>0 ? timeout : TIMEOUT;
+		_threadPoolExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					pooledCall(request, envelope, callTimeout);
+					future.set(envelope);
+				} catch (Throwable e) {
+					future.setException(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	private void pooledCall(String request, SoapSerializationEnvelope envelope, int timeout) throws IOException, XmlPullParserException {
+		CircuitBreaker.Permit permit = _breaker.acquire();
+		IOException failure = null;
+		try {
+			try {
+				createTransport(timeout).call(request, envelope);
+			} catch (StaleConnectionException e) {
+				Log.d(TAG, "Retrying on new connection: " + e.getMessage());
+				createTransport(timeout).call(request, envelope);
+			} catch (CompressionRejectedException e) {
+				Log.d(TAG, "Retrying uncompressed: " + e.getMessage());
+				createTransport(timeout).call(request, envelope);
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} finally {
+			if(failure!=null)
+				_breaker.onFailure(permit, failure);
+			else
+				_breaker.onSuccess(permit);
+		}
+	}
+
+	/**
+	 * Send an attribute getter through the {@link PipelinedDispatcher}.  When hedging, a getter which is still waiting after
+	 * {@link #HEDGE_PERCENTILE} of recent getters were answered is sent again on another pooled connection.  The first response wins.
+	 * @param request
+	 * @param envelope
+	 * @param timeout   deadline of the call in milliseconds, the hedged getter only gets what is left of it
+	 * @param hedge     whether to hedge
+	 * @return future completed with the envelope once the response has been parsed into it
+	 */
+	private SoapFuture<SoapSerializationEnvelope> getterCall(final String request, final SoapSerializationEnvelope envelope, int timeout, boolean hedge) {
+		long delay = hedge ? _dispatcher.getLatency(HEDGE_PERCENTILE) : -1;
+		if(delay<0)
+			return _dispatcher.submit(request, envelope);
+		//each attempt parses into its own envelope, the winner's response is handed to the caller's
+		final SoapFuture<SoapSerializationEnvelope> future = new SoapFuture<SoapSerializationEnvelope>();
+		final long deadline = System.currentTimeMillis() + timeout;
+		final AtomicInteger attempts = new AtomicInteger(1);
+		final SoapFuture.Callback<SoapSerializationEnvelope> outcome = new SoapFuture.Callback<SoapSerializationEnvelope>() {
+			@Override
+			public void onSuccess(SoapSerializationEnvelope result) {
+				synchronized (future) {
+					if(!future.isDone()) {
+						envelope.bodyIn = result.bodyIn;
+						future.set(envelope);
+					}
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				if(attempts.decrementAndGet()==0)
+					future.setException(t);
+			}
+		};
+		_dispatcher.submit(request, copyRequest(envelope)).addCallback(outcome, SoapFuture.DIRECT);
+		final ScheduledFuture<?> hedgeTask = SCHEDULER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				final int remaining = (int)(deadline - System.currentTimeMillis());
+				if(future.isDone() || remaining<=0)
+					return;
+				attempts.incrementAndGet();
+				Log.d(TAG, "Hedging " + request);
+				final SoapSerializationEnvelope hedged = copyRequest(envelope);
+				_threadPoolExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							pooledCall(request, hedged, remaining);
+							outcome.onSuccess(hedged);
+						} catch (Throwable e) {
+							outcome.onFailure(e);
+						}
+					}
+				});
+			}
+		}, Math.max(delay, MIN_HEDGE_DELAY), TimeUnit.MILLISECONDS);
+		future.addCallback(new SoapFuture.Callback<SoapSerializationEnvelope>() {
+			@Override
+			public void onSuccess(SoapSerializationEnvelope result) {
+				hedgeTask.cancel(false);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				hedgeTask.cancel(false);
+			}
+		}, SoapFuture.DIRECT);
+		return future;
+	}
+
+	/**
+	 * @return a new envelope for the same request
+	 */
+	private static SoapSerializationEnvelope copyRequest(SoapSerializationEnvelope envelope) {
+		if(envelope instanceof ResponseEnvelope)
+			return ((ResponseEnvelope<?>)envelope).copyRequest();
+		SoapSerializationEnvelope copy = new SoapSerializationEnvelope(envelope.version);
+		copy.setAddAdornments(envelope.isAddAdornments());
+		copy.setOutputSoapObject(envelope.bodyOut);
+		return copy;
+	}
+
+	private void awaitCall(String request, SoapFuture<SoapSerializationEnvelope> future, int timeout) throws IOException {
+		try {
+			future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + request);
+		} catch (TimeoutException e) {
+			throw new SocketTimeoutException("No response to " + request + " within " + timeout + "ms");
+		} catch (ExecutionException e) {
+			Log.e(TAG, "Exception", e.getCause());
+			if(e.getCause() instanceof IOException) throw (IOException)e.getCause();
+		}
+	}
+
+	private HttpTransportSE createTransport(int timeout) {
+		return new HttpTransport(_server, _connectionPool, timeout);
+	}
 
 	@Override
 	public int describeContents() {
@@ -206,42 +446,55 @@ public class VBoxSvc implements Parcelable, Externalizable {
 		return getProxy(clazz, id, null);
 	}
 
-    /**
-     * Create remote-invocation proxy w/cached properties
-     * @param clazz 		type of {@link IManagedObjectRef}
-     * @param id 			UIUD of {@link IManagedObjectRef}
-     * @param cache			cached properties
-     * @return 				remote invocation proxy
-     */
-    public <T extends IManagedObjectRef> T getProxy(Class<T> clazz, String id, Map<String, Object> cache) {
-        String proxyClassName = clazz.getName()+"$$Proxy";
-        try {
-            synchronized (proxyCache) {
-                if (!proxyCache.containsKey(proxyClassName)) {
-                    Class<? extends BaseProxy> proxyClazz = (Class<? extends BaseProxy>) Class.forName(proxyClassName);
-                    Constructor<? extends BaseProxy> constructor = proxyClazz.getDeclaredConstructor(VBoxSvc.class, String.class, Class.class, Map.class);
-                    proxyCache.put(proxyClassName, constructor);
-                }
-            }
-            T proxy = clazz.cast(proxyCache.get(proxyClassName).newInstance(this, id, clazz, cache));
-
-            if(IEvent.class.equals(clazz)) {
-                VBoxEventType type = ((IEvent)proxy).getType();
-                if(type.equals(VBoxEventType.ON_MACHINE_STATE_CHANGED))
-                    return clazz.cast(getProxy(IMachineStateChangedEvent.class, id, cache));
-                else if(type.equals(VBoxEventType.ON_SESSION_STATE_CHANGED))
-                    return clazz.cast(getProxy(ISessionStateChangedEvent.class, id, cache));
-                else if(type.equals(VBoxEventType.ON_SNAPSHOT_DELETED))
-                    return clazz.cast(getProxy(ISnapshotDeletedEvent.class, id, cache));
-                else if(type.equals(VBoxEventType.ON_SNAPSHOT_TAKEN))
-                    return clazz.cast(getProxy(ISnapshotTakenEvent.class, id, cache));
-            }
-            return proxy;
-        } catch (Throwable e) {
-        	if(e instanceof RuntimeException) throw (RuntimeException)e;
-        	throw new RuntimeException(e);
-        }
-    }
+	/**
+	 * Create remote-invocation proxy w/cached properties.  Proxies of events get their type from the server unless it is
+	 * cached, so this must not be called while a response is being parsed.
+	 * @param clazz 		type of {@link IManagedObjectRef}
+	 * @param id 			UIUD of {@link IManagedObjectRef}
+	 * @param cache			cached properties
+	 * @return 				remote invocation proxy
+	 * @throws IllegalArgumentException if no proxy was generated for the type
+	 */
+	public <T extends IManagedObjectRef> T getProxy(Class<T> clazz, String id, Map<String, Object> cache) {
+		ProxyFactory<T> factory = ProxyRegistry.get(clazz);
+		if(factory==null)
+			throw new IllegalArgumentException("No proxy generated for " + clazz.getName());
+		if(IEvent.class.equals(clazz)) {
+			//the type is kept in the cache of the proxy of the event's own interface
+			if(cache==null)
+				cache = new HashMap<String, Object>();
+			ProxyFactory<? extends IEvent> event = ProxyRegistry.getEvent(getEventType(id, cache));
+			if(event!=null)
+				return clazz.cast(event.create(this, id, cache));
+		}
+		return factory.create(this, id, cache);
+	}
+
+	/**
+	 * Get the type of an event, unless already cached
+	 * @param id        UIUD of the {@link IEvent}
+	 * @param cache     cached properties of the event, where the type is stored
+	 * @return the event type
+	 */
+	private VBoxEventType getEventType(String id, Map<String, Object> cache) {
+		VBoxEventType type = (VBoxEventType)cache.get(EVENT_TYPE_KEY);
+		if(type!=null)
+			return type;
+		SoapRequest request = EVENT_TYPE_REQUEST.newRequest().add(0, id);
+		ResponseEnvelope<VBoxEventType> envelope = new ResponseEnvelope<VBoxEventType>(SoapEnvelope.VER11, EVENT_TYPE_READER);
+		envelope.setAddAdornments(false);
+		envelope.setOutputSoapObject(request);
+		try {
+			httpCall(request.getSoapAction(), envelope);
+			if(envelope.bodyIn instanceof SoapFault)
+				throw (SoapFault)envelope.bodyIn;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		type = (VBoxEventType)envelope.bodyIn;
+		cache.put(EVENT_TYPE_KEY, type);
+		return type;
+	}
 
 	/**
 	 * Connect to <code>vboxwebsrv</code> & initialize the VBoxSvc API interface
@@ -251,11 +504,20 @@ public class VBoxSvc implements Parcelable, Externalizable {
 	 */
 	public IVirtualBox logon() throws IOException  {
 		try {
-			return (_vbox = getProxy(IVirtualBox.class, null).logon(_server.getUsername(), _server.getPassword()));
+			_vbox = getProxy(IVirtualBox.class, null).logon(_server.getUsername(), _server.getPassword());
 		} catch(SoapFault e) {
 			Log.e(TAG, "Logon error", e);
 			throw new ConnectException("Authentication Error");
 		}
+		//as many connections as were in use at once last session
+		final int connections = Math.max(WARM_CONNECTIONS, _connectionPool.getStats().peakLeased);
+		_threadPoolExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				_connectionPool.warmUp(connections);
+			}
+		});
+		return _vbox;
 	}
 
 	/**
@@ -266,6 +528,8 @@ public class VBoxSvc implements Parcelable, Externalizable {
 		if(_vbox!=null)
 			_vbox.logoff();
 		_vbox=null;
+		Log.i(TAG, "Connection pool: " + _connectionPool.getStats());
+		_connectionPool.evictAll();
 	}
 
 	/**
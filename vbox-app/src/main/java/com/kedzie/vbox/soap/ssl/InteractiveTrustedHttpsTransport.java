@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
@@ -26,6 +27,7 @@ public class InteractiveTrustedHttpsTransport extends HttpTransportSE{
 	static final String PROTOCOL = "https";
 
 	private ServiceConnection serviceConnection = null;
+	private SSLSocketFactory socketFactory;
 	protected final Server server;
 	private final int timeout;
 	protected Handler handler;
@@ -72,7 +74,9 @@ public class InteractiveTrustedHttpsTransport extends HttpTransportSE{
 	 * @see org.ksoap2.transport.HttpsTransportSE#getServiceConnection()
 	 */
 	public ServiceConnection getServiceConnection() throws IOException {
-		serviceConnection = new TrustedHttpsServiceConnection(server.getHost(), server.getPort(), "", timeout, trust);
+		if(socketFactory==null)
+			socketFactory = SSLUtil.createSSLContext(trust).getSocketFactory();
+		serviceConnection = new TrustedHttpsServiceConnection(server.getHost(), server.getPort(), "", timeout, socketFactory);
 		return serviceConnection;
 	}
 
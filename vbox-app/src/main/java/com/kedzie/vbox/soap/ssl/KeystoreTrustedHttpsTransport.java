@@ -28,7 +28,7 @@ public class KeystoreTrustedHttpsTransport extends HttpTransportSE{
 	 * @see org.ksoap2.transport.HttpsTransportSE#getServiceConnection()
 	 */
 	public ServiceConnection getServiceConnection() throws IOException {
-		serviceConnection = new TrustedHttpsServiceConnection(server.getHost(), server.getPort(), "", timeout, SSLUtil.getKeyStoreTrustManager());
+		serviceConnection = new TrustedHttpsServiceConnection(server.getHost(), server.getPort(), "", timeout, SSLUtil.getSocketFactory(server));
 		return serviceConnection;
 	}
 	
@@ -8,9 +8,15 @@ import java.io.IOException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 
@@ -31,6 +37,10 @@ public class SSLUtil {
 
 	private static final char[] KEYSTORE_PASSWORD = "virtualbox".toCharArray();
 	private static final String KEYSTORE_NAME = "virtualbox.bks";
+	/** number of TLS sessions kept for resumption */
+	private static final int SESSION_CACHE_SIZE = 32;
+	/** lifetime of cached TLS sessions in seconds */
+	private static final int SESSION_TIMEOUT = 8*60*60;
 
 	/**
 	 * Add certificate to the keystore and save
@@ -57,8 +67,50 @@ public class SSLUtil {
 
 	private static TrustManager[] mTrustManagers;
 	private static KeyStore mKeystore;
+	/** incremented whenever a certificate is added to the keystore */
+	private static int mKeystoreVersion;
+	/** socket factories trusting the keystore, by server & keystore version */
+	private static final Map<String, SSLSocketFactory> mSocketFactories = new HashMap<String, SSLSocketFactory>();
 
-	public static TrustManager[] getKeyStoreTrustManager() {
+	/**
+	 * Create an {@link SSLContext} with client-side TLS session caching enabled
+	 * @param trust	trust managers used to verify server certificates
+	 * @return the initialized context
+	 */
+	public static SSLContext createSSLContext(TrustManager[] trust) throws IOException {
+		try {
+			SSLContext sc = SSLContext.getInstance("TLS");
+			sc.init(null, trust, new SecureRandom());
+			SSLSessionContext sessions = sc.getClientSessionContext();
+			if(sessions!=null) {
+				sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+				sessions.setSessionTimeout(SESSION_TIMEOUT);
+			}
+			return sc;
+		} catch (Exception e) {
+			throw new IOException("Error initializing SSL", e);
+		}
+	}
+
+	/**
+	 * Get the socket factory for a server, trusting certificates in the keystore.  The factory is cached
+	 * until the keystore changes, so connections share one {@link SSLContext} and can resume TLS sessions
+	 * instead of doing a full handshake.
+	 * @param server	the server
+	 * @return SSL socket factory
+	 */
+	public static synchronized SSLSocketFactory getSocketFactory(Server server) throws IOException {
+		String key = server.toUriString() + "#" + mKeystoreVersion;
+		SSLSocketFactory factory = mSocketFactories.get(key);
+		if(factory==null) {
+			Log.i(TAG, "Initializing SSLContext for " + key);
+			factory = createSSLContext(getKeyStoreTrustManager()).getSocketFactory();
+			mSocketFactories.put(key, factory);
+		}
+		return factory;
+	}
+
+	public static synchronized TrustManager[] getKeyStoreTrustManager() {
 		if(mTrustManagers==null) {
 			Log.i(TAG, "Initializing TrustManagers");
 			try {
@@ -87,10 +139,12 @@ public class SSLUtil {
 		return mKeystore;
 	}
 
-	public static void storeKeystore() throws KeyStoreException, NoSuchAlgorithmException, CertificateException, FileNotFoundException, IOException {
+	public static synchronized void storeKeystore() throws KeyStoreException, NoSuchAlgorithmException, CertificateException, FileNotFoundException, IOException {
 		Log.i(TAG, "Saving updated keystore: " + getKeystorePath());
 		mKeystore.store(new FileOutputStream(getKeystorePath()), KEYSTORE_PASSWORD);
 		mTrustManagers = null;  //make sure TrustManagers are using the updated keystore
+		mKeystoreVersion++;
+		mSocketFactories.clear();
 	}
 
 	private static File getKeystoreFolder() {
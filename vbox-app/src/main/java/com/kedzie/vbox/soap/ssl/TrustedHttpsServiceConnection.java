@@ -9,7 +9,6 @@ import java.util.List;
 import java.util.Map;
 
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 
@@ -37,11 +36,23 @@ public class TrustedHttpsServiceConnection implements ServiceConnection {
      * @throws IOException
      */
     public TrustedHttpsServiceConnection(String host, int port, String file, int timeout, TrustManager[] trust) throws IOException {
+    	this(host, port, file, timeout, SSLUtil.createSSLContext(trust).getSocketFactory());
+    }
+
+    /**
+     * Create the transport using a shared socket factory, so TLS sessions can be resumed.
+     * @param host the name of the host e.g. webservices.somewhere.com
+     * @param port the http port to connect on
+     * @param file the path to the file on the webserver that represents the
+     * webservice e.g. /api/services/myservice.jsp
+     * @param timeout the timeout for the connection in milliseconds
+     * @param socketFactory factory for SSL sockets
+     * @throws IOException
+     */
+    public TrustedHttpsServiceConnection(String host, int port, String file, int timeout, SSLSocketFactory socketFactory) throws IOException {
     	try {
     		connection = (HttpsURLConnection) new URL(KeystoreTrustedHttpsTransport.PROTOCOL, host, port, file).openConnection();
-    		SSLContext sc = SSLContext.getInstance("TLS");
-    		sc.init(null, trust, new java.security.SecureRandom());
-    		connection.setSSLSocketFactory(sc.getSocketFactory());
+    		connection.setSSLSocketFactory(socketFactory);
     		((HttpsURLConnection) connection).setHostnameVerifier(new AllowAllHostnameVerifier());
     		updateConnectionParameters(timeout);
     	} catch (Exception e) {
@@ -87,6 +98,10 @@ public class TrustedHttpsServiceConnection implements ServiceConnection {
         connection.setFixedLengthStreamingMode(contentLength);
     }
 
+    public void setChunkedStreamingMode(int chunkLength) {
+        connection.setChunkedStreamingMode(chunkLength);
+    }
+
     public OutputStream openOutputStream() throws IOException {
         return connection.getOutputStream();
     }
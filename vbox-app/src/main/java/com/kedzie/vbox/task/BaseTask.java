@@ -14,13 +14,14 @@ import com.kedzie.vbox.api.IProgress;
 import com.kedzie.vbox.api.IVirtualBoxErrorInfo;
 import com.kedzie.vbox.app.BundleBuilder;
 import com.kedzie.vbox.app.Utils;
+import com.kedzie.vbox.soap.VBoxFault;
 import com.kedzie.vbox.soap.VBoxSvc;
 
 import org.ksoap2.SoapFault;
-import org.kxml2.kdom.Node;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -83,6 +84,14 @@ public abstract class BaseTask<Input, Output> extends AsyncTask<Input, IProgress
 	protected void fork(Runnable task) {
 	    _futures.add(_executor.submit(task));
 	}
+
+	/**
+	 * Include asynchronous calls in the next {@link #join()}
+	 * @param futures     results of calls already in flight
+	 */
+	protected void fork(Future<?>... futures) {
+	    Collections.addAll(_futures, futures);
+	}
 	
 	/**
 	 * Wait for completion of all parallel executions
@@ -166,15 +175,9 @@ public abstract class BaseTask<Input, Output> extends AsyncTask<Input, IProgress
 	 */
 	protected void showAlert(SoapFault e) {
 		Timber.e(e,"SoapFault");
-		Node detail = e.detail;
-		while(detail.getChildCount()>0) {
-		    Object child = detail.getChild(0);
-		    if(child instanceof Node)
-		        detail = (Node) detail.getChild(0);
-		    else {
-		        Timber.i("String detail: " + detail);
-		        break;
-		    }
+		if(e instanceof VBoxFault && ((VBoxFault)e).getResultCode()!=0) {
+			showAlert(((VBoxFault)e).getResultCode(), e.faultstring);
+			return;
 		}
 		new BundleBuilder().putString("title", "Soap Fault")
 				.putString("msg", String.format("Code: %1$s\nActor: %2$s\nString: %3$s", e.faultcode, e.faultactor, e.faultstring))
@@ -1,10 +1,11 @@
 package org.ksoap2.serialization;
 
-import java.util.Vector;
+import java.util.ArrayList;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class AttributeContainer {
-    private Vector attributes = new Vector();
+    /** Not synchronized, the object is only used by one thread at a time */
+    private ArrayList attributes = new ArrayList();
 
     /**
      * Places AttributeInfo of desired attribute into a designated AttributeInfo object
@@ -13,7 +14,7 @@ public class AttributeContainer {
      * @param attributeInfo designated retainer of desired attribute
      */
     public void getAttributeInfo(int index, AttributeInfo attributeInfo) {
-        AttributeInfo p = (AttributeInfo) attributes.elementAt(index);
+        AttributeInfo p = (AttributeInfo) attributes.get(index);
         attributeInfo.name = p.name;
         attributeInfo.namespace = p.namespace;
         attributeInfo.flags = p.flags;
@@ -26,14 +27,14 @@ public class AttributeContainer {
      * Get the attribute at the given index
      */
     public Object getAttribute(int index) {
-        return ((AttributeInfo) attributes.elementAt(index)).getValue();
+        return ((AttributeInfo) attributes.get(index)).getValue();
     }
 
      /**
      * Get the attribute's toString value.
      */
     public String getAttributeAsString(int index) {
-        AttributeInfo attributeInfo = (AttributeInfo) attributes.elementAt(index);
+        AttributeInfo attributeInfo = (AttributeInfo) attributes.get(index);
         return attributeInfo.getValue().toString();
     }
 
@@ -110,8 +111,8 @@ public class AttributeContainer {
 
     private Integer attributeIndex(String name) {
         for (int i = 0; i < attributes.size(); i++) {
-            if (name.equals(((AttributeInfo) attributes.elementAt(i)).getName())) {
-                return new Integer(i);
+            if (name.equals(((AttributeInfo) attributes.get(i)).getName())) {
+                return Integer.valueOf(i);
             }
         }
         return null;
@@ -139,7 +140,7 @@ public class AttributeContainer {
         }
 
         for (int attribIndex = 0; attribIndex < numAttributes; attribIndex++) {
-            AttributeInfo thisAttrib = (AttributeInfo) this.attributes.elementAt(attribIndex);
+            AttributeInfo thisAttrib = (AttributeInfo) this.attributes.get(attribIndex);
             Object thisAttribValue = thisAttrib.getValue();
             if (!other.hasAttribute(thisAttrib.getName())) {
                 return false;
@@ -186,7 +187,7 @@ public class AttributeContainer {
      * @return {@code this} object.
      */
     public void addAttribute(AttributeInfo attributeInfo) {
-        attributes.addElement(attributeInfo);
+        attributes.add(attributeInfo);
     }
 
     /**
@@ -195,7 +196,7 @@ public class AttributeContainer {
      */
     public void addAttributeIfValue(AttributeInfo attributeInfo) {
         if (attributeInfo.value != null) {
-            attributes.addElement(attributeInfo);
+            attributes.add(attributeInfo);
         }
     }
 }
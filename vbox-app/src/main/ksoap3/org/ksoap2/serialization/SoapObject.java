@@ -50,9 +50,10 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      */
     protected String name;
     /**
-     * The Vector of properties (can contain PropertyInfo and SoapObject)
+     * The list of properties (can contain PropertyInfo and SoapObject).  Not synchronized, a SoapObject is only
+     * used by one thread at a time.
      */
-    protected Vector properties = new Vector();
+    protected ArrayList properties;
 
     // TODO: accessing properties and attributes would work much better if we
     // kept a list of known properties instead of iterating through the list
@@ -77,6 +78,24 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     public SoapObject(String namespace, String name) {
         this.namespace = namespace;
         this.name = name;
+        this.properties = new ArrayList();
+    }
+
+    /**
+     * Creates a new <code>SoapObject</code> instance with room for the given
+     * number of properties.
+     *
+     * @param namespace
+     *            the namespace for the soap object
+     * @param name
+     *            the name of the soap object
+     * @param capacity
+     *            expected number of properties
+     */
+    public SoapObject(String namespace, String name, int capacity) {
+        this.namespace = namespace;
+        this.name = name;
+        this.properties = new ArrayList(capacity);
     }
 
     public boolean equals(Object obj) {
@@ -98,7 +117,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
 
         // SoapObjects are only considered the same if properties equals and in the same order
         for (int propIndex = 0; propIndex < numProperties; propIndex++) {
-            Object thisProp = this.properties.elementAt(propIndex);
+            Object thisProp = this.properties.get(propIndex);
             if(!otherSoapObject.isPropertyEqual(thisProp, propIndex)) {
                 return false;
             }
@@ -118,7 +137,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
         if(index >= getPropertyCount()) {
             return false;
         }
-        Object thisProp = this.properties.elementAt(index);
+        Object thisProp = this.properties.get(index);
         if(otherProp instanceof PropertyInfo &&
                 thisProp instanceof PropertyInfo) {
             // Get both PropertInfos and compare values
@@ -146,7 +165,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      * @inheritDoc
      */
     public Object getProperty(int index) {
-        Object prop = properties.elementAt(index);
+        Object prop = properties.get(index);
         if(prop instanceof PropertyInfo) {
             return ((PropertyInfo)prop).getValue();
         } else {
@@ -161,7 +180,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      * @return
      */
     public String getPropertyAsString(int index) {
-        PropertyInfo propertyInfo = (PropertyInfo) properties.elementAt(index);
+        PropertyInfo propertyInfo = (PropertyInfo) properties.get(index);
         return propertyInfo.getValue().toString();
     }
 
@@ -301,7 +320,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     public Object getPrimitiveProperty(final String name){
         Integer index = propertyIndex(name);
         if (index != null){
-            PropertyInfo propertyInfo = (PropertyInfo) properties.elementAt(index.intValue());
+            PropertyInfo propertyInfo = (PropertyInfo) properties.get(index.intValue());
             if (propertyInfo.getType()!=SoapObject.class){
                 return propertyInfo.getValue();
             } else {
@@ -326,7 +345,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     public String getPrimitivePropertyAsString(final String name){
         Integer index = propertyIndex(name);
         if (index != null){
-            PropertyInfo propertyInfo = (PropertyInfo) properties.elementAt(index.intValue());
+            PropertyInfo propertyInfo = (PropertyInfo) properties.get(index.intValue());
             if (propertyInfo.getType()!=SoapObject.class){
                 return propertyInfo.getValue().toString();
             } else {
@@ -348,7 +367,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     public Object getPrimitivePropertySafely(final String name) {
         Integer index = propertyIndex(name);
         if (index != null){
-            PropertyInfo propertyInfo = (PropertyInfo) properties.elementAt(index.intValue());
+            PropertyInfo propertyInfo = (PropertyInfo) properties.get(index.intValue());
             if (propertyInfo.getType()!=SoapObject.class){
                 return propertyInfo.getValue().toString();
             } else {
@@ -374,7 +393,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     public String getPrimitivePropertySafelyAsString(final String name) {
         Integer index = propertyIndex(name);
         if (index != null){
-            PropertyInfo propertyInfo = (PropertyInfo) properties.elementAt(index.intValue());
+            PropertyInfo propertyInfo = (PropertyInfo) properties.get(index.intValue());
             if (propertyInfo.getType()!=SoapObject.class){
                 return propertyInfo.getValue().toString();
             } else {
@@ -390,8 +409,8 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     private Integer propertyIndex(String name) {
         if (name != null) {
             for (int i = 0; i < properties.size(); i++) {
-                if (name.equals(((PropertyInfo) properties.elementAt(i)).getName())) {
-                    return new Integer(i);
+                if (name.equals(((PropertyInfo) properties.get(i)).getName())) {
+                    return Integer.valueOf(i);
                 }
             }
         }
@@ -433,7 +452,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      *            designated retainer of desired property
      */
     public void getPropertyInfo(int index, PropertyInfo propertyInfo) {
-        Object element = properties.elementAt(index);
+        Object element = properties.get(index);
         if (element instanceof PropertyInfo) {
             PropertyInfo p = (PropertyInfo) element;
             propertyInfo.name = p.name;
@@ -463,11 +482,11 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      * @return a copy of this.
      */
     public SoapObject newInstance() {
-        SoapObject o = new SoapObject(namespace, name);
+        SoapObject o = new SoapObject(namespace, name, properties.size());
         for (int propIndex = 0; propIndex < properties.size(); propIndex++) {
-            Object prop = properties.elementAt(propIndex);
+            Object prop = properties.get(propIndex);
             if(prop instanceof PropertyInfo) {
-                PropertyInfo propertyInfo = (PropertyInfo) properties.elementAt(propIndex);
+                PropertyInfo propertyInfo = (PropertyInfo) properties.get(propIndex);
                 PropertyInfo propertyInfoClonned = (PropertyInfo)propertyInfo.clone();
                 o.addProperty( propertyInfoClonned );
             } else if(prop instanceof SoapObject) {
@@ -493,7 +512,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      *            the new value of the property
      */
     public void setProperty(int index, Object value) {
-        Object prop = properties.elementAt(index);
+        Object prop = properties.get(index);
         if(prop instanceof PropertyInfo) {
             ((PropertyInfo) prop).setValue(value);
         }
@@ -557,7 +576,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      *            designated retainer of desired property
      */
     public SoapObject addProperty(PropertyInfo propertyInfo) {
-        properties.addElement(propertyInfo);
+        properties.add(propertyInfo);
         return this;
     }
 
@@ -569,7 +588,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      */
     public SoapObject addPropertyIfValue(PropertyInfo propertyInfo) {
         if (propertyInfo.value != null) {
-            properties.addElement(propertyInfo);
+            properties.add(propertyInfo);
             return this;
         } else {
             return this;
@@ -584,7 +603,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
      *            to be added as a property of the current object
      */
     public SoapObject addSoapObject(SoapObject soapObject) {
-        properties.addElement(soapObject);
+        properties.add(soapObject);
         return this;
     }
 
@@ -596,7 +615,7 @@ public class SoapObject extends AttributeContainer implements KvmSerializable {
     public String toString() {
         StringBuffer buf = new StringBuffer(EMPTY_STRING + name + "{");
         for (int i = 0; i < getPropertyCount(); i++) {
-            Object prop = properties.elementAt(i);
+            Object prop = properties.get(i);
             if(prop instanceof PropertyInfo) {
                 buf.append(EMPTY_STRING)
                     .append(((PropertyInfo) prop).getName())
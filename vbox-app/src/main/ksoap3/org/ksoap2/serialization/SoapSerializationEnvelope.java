@@ -27,13 +27,16 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Vector;
+import java.util.List;
 
 /**
  * @author Stefan Haustein
  *
  *         This class extends the SoapEnvelope with Soap Serialization functionality.
+ *         An envelope is written and parsed by one thread at a time, so its maps and lists are not synchronized.
  */
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class SoapSerializationEnvelope extends SoapEnvelope
@@ -51,11 +54,15 @@ public class SoapSerializationEnvelope extends SoapEnvelope
     private static final String TYPE_LABEL = "type";
     private static final String ITEM_LABEL = "item";
     private static final String ARRAY_TYPE_LABEL = "arrayType";
+    /** Room for the default mappings and a few more */
+    private static final int MAPPING_CAPACITY = 8;
     static final Marshal DEFAULT_MARSHAL = new DM();
+    /** Passed to {@link KvmSerializable#getPropertyInfo(int, Hashtable, PropertyInfo)}, which takes a Hashtable */
     public Hashtable properties = new Hashtable();
 
-    Hashtable idMap = new Hashtable();
-    Vector multiRef; // = new Vector();
+    /** Objects by id and forward references to them, created by the first <code>href</code> or <code>id</code> */
+    HashMap idMap;
+    ArrayList multiRef;
 
     /**
      * Set this variable to true if you don't want that type definitions for complex types/objects
@@ -79,16 +86,20 @@ public class SoapSerializationEnvelope extends SoapEnvelope
     public boolean avoidExceptionForUnknownProperty;
 
     /**
-     * Map from XML qualified names to Java classes
+     * Map from XML qualified names to Java classes.  Shared with other envelopes of the same version until a
+     * mapping is added, so it must only be changed through {@link #addMapping} and {@link #addTemplate}.
      */
 
-    protected Hashtable qNameToClass = new Hashtable();
+    protected HashMap qNameToClass;
 
     /**
-     * Map from Java class names to XML name and namespace pairs
+     * Map from Java class names to XML name and namespace pairs.  Shared like {@link #qNameToClass}.
      */
 
-    protected Hashtable classToQName = new Hashtable();
+    protected HashMap classToQName;
+
+    /** Whether the maps are the shared default mappings */
+    private boolean sharedMappings;
 
     /**
      * Set to true to add and ID and ROOT label to the envelope. Change to false for compatibility with WSDL.
@@ -98,8 +109,53 @@ public class SoapSerializationEnvelope extends SoapEnvelope
     public SoapSerializationEnvelope(int version)
     {
         super(version);
-        addMapping(enc, ARRAY_MAPPING_NAME, PropertyInfo.VECTOR_CLASS);
-        DEFAULT_MARSHAL.register(this);
+        SoapSerializationEnvelope defaults = defaults(version);
+        if (defaults != null) {
+            qNameToClass = defaults.qNameToClass;
+            classToQName = defaults.classToQName;
+            sharedMappings = true;
+        } else {
+            qNameToClass = new HashMap(MAPPING_CAPACITY);
+            classToQName = new HashMap(MAPPING_CAPACITY);
+            addMapping(enc, ARRAY_MAPPING_NAME, PropertyInfo.VECTOR_CLASS);
+            DEFAULT_MARSHAL.register(this);
+        }
+    }
+
+    /**
+     * @return the envelope holding the default mappings of the version, or <code>null</code> while it is built
+     */
+    private static SoapSerializationEnvelope defaults(int version) {
+        switch (version) {
+            case VER10:
+                return Defaults.VER10;
+            case VER11:
+                return Defaults.VER11;
+            case VER12:
+                return Defaults.VER12;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Envelopes holding the default mappings of each version
+     */
+    private static class Defaults {
+        static final SoapSerializationEnvelope VER10 = new SoapSerializationEnvelope(SoapEnvelope.VER10);
+        static final SoapSerializationEnvelope VER11 = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        static final SoapSerializationEnvelope VER12 = new SoapSerializationEnvelope(SoapEnvelope.VER12);
+    }
+
+    /**
+     * Copy the shared default mappings before changing them
+     */
+    private void ownMappings() {
+        if (!sharedMappings)
+            return;
+        qNameToClass = new HashMap(qNameToClass);
+        classToQName = new HashMap(classToQName);
+        sharedMappings = false;
     }
 
     /**
@@ -229,14 +285,14 @@ public class SoapSerializationEnvelope extends SoapEnvelope
         String namespace = parser.getNamespace();
 
         // cache the attribute info list from the current element before we move on
-        Vector attributeInfoVector = new Vector();
+        ArrayList attributeInfoList = new ArrayList(parser.getAttributeCount());
         for (int attributeCount = 0; attributeCount < parser.getAttributeCount(); attributeCount ++) {
             AttributeInfo attributeInfo = new AttributeInfo();
             attributeInfo.setName(parser.getAttributeName(attributeCount));
             attributeInfo.setValue(parser.getAttributeValue(attributeCount));
             attributeInfo.setNamespace(parser.getAttributeNamespace(attributeCount));
             attributeInfo.setType(parser.getAttributeType(attributeCount));
-            attributeInfoVector.addElement(attributeInfo);
+            attributeInfoList.add(attributeInfo);
         }
 
         parser.next(); // move to text, inner start tag or end tag
@@ -247,15 +303,15 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             SoapPrimitive sp = new SoapPrimitive(typeNamespace, typeName, text);
             result = sp;
               // apply all the cached attribute info list before we add the property and descend further for parsing
-            for (int i = 0; i < attributeInfoVector.size(); i++) {
-                sp.addAttribute((AttributeInfo) attributeInfoVector.elementAt(i));
+            for (int i = 0; i < attributeInfoList.size(); i++) {
+                sp.addAttribute((AttributeInfo) attributeInfoList.get(i));
             }
             parser.next();
         } else if (parser.getEventType() == XmlPullParser.END_TAG) {
             SoapObject so = new SoapObject(typeNamespace, typeName);
             // apply all the cached attribute info list before we add the property and descend further for parsing
-            for (int i = 0; i < attributeInfoVector.size(); i++) {
-                so.addAttribute((AttributeInfo) attributeInfoVector.elementAt(i));
+            for (int i = 0; i < attributeInfoList.size(); i++) {
+                so.addAttribute((AttributeInfo) attributeInfoList.get(i));
             }
             result = so;
         }
@@ -266,8 +322,8 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             }
             SoapObject so = new SoapObject(typeNamespace, typeName);
             // apply all the cached attribute info list before we add the property and descend further for parsing
-            for (int i = 0; i < attributeInfoVector.size(); i++) {
-                so.addAttribute((AttributeInfo) attributeInfoVector.elementAt(i));
+            for (int i = 0; i < attributeInfoList.size(); i++) {
+                so.addAttribute((AttributeInfo) attributeInfoList.get(i));
             }
 
             while (parser.getEventType() != XmlPullParser.END_TAG) {
@@ -289,7 +345,10 @@ public class SoapSerializationEnvelope extends SoapEnvelope
                 value.length() - 1));
     }
 
-    protected void readVector(XmlPullParser parser, Vector v, PropertyInfo elementType) throws IOException,
+    /**
+     * Read the items of a SOAP encoded array into the list, which is grown to the size of the array.
+     */
+    protected void readVector(XmlPullParser parser, List v, PropertyInfo elementType) throws IOException,
             XmlPullParserException {
         String namespace = null;
         String name = null;
@@ -304,7 +363,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             namespace = parser.getNamespace(prefix);
             size = getIndex(type, cut1, -1);
             if (size != -1) {
-                v.setSize(size);
+                setSize(v, size);
                 dynamic = false;
             }
         }
@@ -318,16 +377,28 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             position = getIndex(parser.getAttributeValue(enc, "position"), 0, position);
             if (dynamic && position >= size) {
                 size = position + 1;
-                v.setSize(size);
+                setSize(v, size);
             }
             // implicit handling of position exceeding specified size
-            v.setElementAt(read(parser, v, position, namespace, name, elementType), position);
+            v.set(position, read(parser, v, position, namespace, name, elementType));
             position++;
             parser.nextTag();
         }
         parser.require(XmlPullParser.END_TAG, null, null);
     }
 
+    private static void setSize(List list, int size) {
+        if (list instanceof ArrayList) {
+            ((ArrayList) list).ensureCapacity(size);
+        }
+        while (list.size() < size) {
+            list.add(null);
+        }
+        while (list.size() > size) {
+            list.remove(list.size() - 1);
+        }
+    }
+
     /**
      * Builds an object from the XML stream. This method is public for usage in conjuction with Marshal
      * subclasses. Precondition: On the start tag of the object or property, so href can be read.
@@ -343,6 +414,9 @@ public class SoapSerializationEnvelope extends SoapEnvelope
                 throw new RuntimeException("href at root level?!?");
             }
             href = href.substring(1);
+            if (idMap == null) {
+                idMap = new HashMap();
+            }
             obj = idMap.get(href);
             if (obj == null || obj instanceof FwdRef) {
                 FwdRef f = new FwdRef();
@@ -392,6 +466,9 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             }
             // finally, care about the id....
             if (id != null) {
+                if (idMap == null) {
+                    idMap = new HashMap();
+                }
                 Object hlp = idMap.get(id);
                 if (hlp instanceof FwdRef) {
                     FwdRef f = (FwdRef) hlp;
@@ -399,7 +476,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
                         if (f.obj instanceof KvmSerializable) {
                             ((KvmSerializable) f.obj).setProperty(f.index, obj);
                         } else {
-                            ((Vector) f.obj).setElementAt(obj, f.index);
+                            ((List) f.obj).set(f.index, obj);
                         }
                         f = f.next;
                     }
@@ -443,8 +520,8 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             readSerializable(parser, (SoapObject) obj);
         } else if (obj instanceof KvmSerializable) {
             readSerializable(parser, (KvmSerializable) obj);
-        } else if (obj instanceof Vector) {
-            readVector(parser, (Vector) obj, expected.elementType);
+        } else if (obj instanceof List) {
+            readVector(parser, (List) obj, expected.elementType);
         } else {
             throw new RuntimeException("no deserializer for " + obj.getClass());
         }
@@ -486,6 +563,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
      * marshal mechanism
      */
     public void addMapping(String namespace, String name, Class clazz, Marshal marshal) {
+        ownMappings();
         qNameToClass
                 .put(new SoapPrimitive(namespace, name, null), marshal == null ? (Object) clazz : marshal);
         classToQName.put(clazz.getName(), new Object[] { namespace, name, null, marshal });
@@ -503,6 +581,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
      * mapped to corresponding copies of the given SoapObject, maintaining the structure of the template.
      */
     public void addTemplate(SoapObject so) {
+        ownMappings();
         qNameToClass.put(new SoapPrimitive(so.namespace, so.name, null), so);
     }
 
@@ -532,8 +611,8 @@ public class SoapSerializationEnvelope extends SoapEnvelope
         // allow an empty body without any tags in it
         // see http://code.google.com/p/ksoap2-android/issues/detail?id=77
         if (bodyOut != null) {
-            multiRef = new Vector();
-            multiRef.addElement(bodyOut);
+            multiRef = new ArrayList();
+            multiRef.add(bodyOut);
             Object[] qName = getInfo(null, bodyOut);
             writer.startTag((dotNet) ? "" : (String) qName[QNAME_NAMESPACE], (String) qName[QNAME_TYPE]);
             if (dotNet) {
@@ -622,7 +701,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             int i = multiRef.indexOf(obj);
             if (i == -1) {
                 i = multiRef.size();
-                multiRef.addElement(obj);
+                multiRef.add(obj);
             }
             writer.attribute(null, HREF_LABEL, qName[2] == null ? ("#o" + i) : "#" + qName[2]);
         } else {
@@ -642,14 +721,14 @@ public class SoapSerializationEnvelope extends SoapEnvelope
             writeObjectBody(writer, (SoapObject) element);
         } else if (element instanceof KvmSerializable) {
             writeObjectBody(writer, (KvmSerializable) element);
-        } else if (element instanceof Vector) {
-            writeVectorBody(writer, (Vector) element, type.elementType);
+        } else if (element instanceof List) {
+            writeVectorBody(writer, (List) element, type.elementType);
         } else {
             throw new RuntimeException("Cannot serialize: " + element);
         }
     }
 
-    protected void writeVectorBody(XmlSerializer writer, Vector vector, PropertyInfo elementType)
+    protected void writeVectorBody(XmlSerializer writer, List vector, PropertyInfo elementType)
             throws IOException {
         String itemsTagName = ITEM_LABEL;
         String itemsNamespace = null;
@@ -674,7 +753,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
 
         boolean skipped = false;
         for (int i = 0; i < cnt; i++) {
-            if (vector.elementAt(i) == null) {
+            if (vector.get(i) == null) {
                 skipped = true;
             } else {
                 writer.startTag(itemsNamespace, itemsTagName);
@@ -682,7 +761,7 @@ public class SoapSerializationEnvelope extends SoapEnvelope
                     writer.attribute(enc, "position", "[" + i + "]");
                     skipped = false;
                 }
-                writeProperty(writer, vector.elementAt(i), elementType);
+                writeProperty(writer, vector.get(i), elementType);
                 writer.endTag(itemsNamespace, itemsTagName);
             }
         }
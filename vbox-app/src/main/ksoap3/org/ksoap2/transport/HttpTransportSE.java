@@ -42,6 +42,9 @@ public class HttpTransportSE extends Transport {
 
     private ServiceConnection serviceConnection;
 
+    /** size of request chunks when streaming, or <code>0</code> to buffer the whole request */
+    private int chunkLength;
+
     /**
      * Creates instance of HttpTransportSE with set url
      * 
@@ -99,6 +102,17 @@ public class HttpTransportSE extends Transport {
         super(proxy, url, timeout);
     }
 
+    /**
+     * Serialize requests straight to the connection instead of buffering the whole
+     * envelope to compute its length. Ignored while debugging, since the request is dumped.
+     * 
+     * @param chunkLength
+     *            the number of bytes in each chunk, or <code>0</code> to disable streaming
+     */
+    public void setChunkedStreamingMode(int chunkLength) {
+        this.chunkLength = chunkLength;
+    }
+
     /**
      * set the desired soapAction header field
      * 
@@ -136,7 +150,7 @@ public class HttpTransportSE extends Transport {
             soapAction = "\"\"";
         }
 
-        byte[] requestData = createRequestData(envelope);
+        byte[] requestData = chunkLength > 0 && !debug ? null : createRequestData(envelope);
             
         requestDump = debug ? new String(requestData) : null;
         responseDump = null;
@@ -159,8 +173,12 @@ public class HttpTransportSE extends Transport {
 
         connection.setRequestProperty("Connection", "close");
         connection.setRequestProperty("Accept-Encoding", "gzip");
-        connection.setRequestProperty("Content-Length", "" + requestData.length);
-        connection.setFixedLengthStreamingMode(requestData.length);
+        if (requestData != null) {
+            connection.setRequestProperty("Content-Length", "" + requestData.length);
+            connection.setFixedLengthStreamingMode(requestData.length);
+        } else {
+            connection.setChunkedStreamingMode(chunkLength);
+        }
             
         // Pass the headers provided by the user along with the call
         if (headers != null) {
@@ -172,17 +190,20 @@ public class HttpTransportSE extends Transport {
             
         connection.setRequestMethod("POST");
         
-
-        OutputStream os = connection.openOutputStream();
-      
-        os.write(requestData, 0, requestData.length);
-        os.flush();
-        os.close();
-        requestData = null;
-        InputStream is;
+        InputStream is = null;
         List retHeaders = null;
-            
         try {
+            OutputStream os = connection.openOutputStream();
+      
+            if (requestData != null) {
+                os.write(requestData, 0, requestData.length);
+            } else {
+                writeRequestData(envelope, os);
+            }
+            os.flush();
+            os.close();
+            requestData = null;
+            
             retHeaders = connection.getResponseProperties();
             boolean gZippedContent = false;
             for (int i = 0; i < retHeaders.size(); i++) {
@@ -208,31 +229,40 @@ public class HttpTransportSE extends Transport {
             is = connection.getErrorStream();
 
             if (is == null) {
-                connection.disconnect();
                 throw (e);
             }
+        } finally {
+            // a request which fails before its response is opened, for any reason, would keep a pooled connection
+            if (is == null) {
+                connection.disconnect();
+            }
         }
         
-        if (debug) {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            byte[] buf = new byte[256];
+        try {
+            if (debug) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                byte[] buf = new byte[256];
                     
-            while (true) {
-                int rd = is.read(buf, 0, 256);
-                if (rd == -1) {
-                    break;
+                while (true) {
+                    int rd = is.read(buf, 0, 256);
+                    if (rd == -1) {
+                        break;
+                    }
+                    bos.write(buf, 0, rd);
                 }
-                bos.write(buf, 0, rd);
-            }
                     
-            bos.flush();
-            buf = bos.toByteArray();
-            responseDump = new String(buf);
+                bos.flush();
+                buf = bos.toByteArray();
+                responseDump = new String(buf);
+                is.close();
+                is = new ByteArrayInputStream(buf);
+            }
+
+            parseResponse(envelope, is);
+        } finally {
+            // let pooled connections know the response has been consumed
             is.close();
-            is = new ByteArrayInputStream(buf);
         }
-      
-        parseResponse(envelope, is);
         return retHeaders;
     }
 
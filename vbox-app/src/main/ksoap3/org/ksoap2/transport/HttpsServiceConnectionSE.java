@@ -98,6 +98,10 @@ public class HttpsServiceConnectionSE implements ServiceConnection {
         connection.setFixedLengthStreamingMode(contentLength);
     }
 
+    public void setChunkedStreamingMode(int chunkLength) {
+        connection.setChunkedStreamingMode(chunkLength);
+    }
+
     public OutputStream openOutputStream() throws IOException {
         return connection.getOutputStream();
     }
@@ -88,6 +88,15 @@ public interface ServiceConnection {
      **/
     public void setFixedLengthStreamingMode(int contentLength);
 
+    /**
+     * If the length of a HTTP request body is not known ahead, sends the body
+     * in chunks so it can be streamed without buffering. Sets after connection will cause an exception.
+     *
+     * @param chunkLength the number of bytes in each chunk
+     * @see http://developer.android.com/reference/java/net/HttpURLConnection.html
+     **/
+    public void setChunkedStreamingMode(int chunkLength);
+
     /**
      * Open and return the outputStream to the endpoint.
      * 
@@ -116,6 +116,10 @@ public class ServiceConnectionSE implements ServiceConnection {
         connection.setFixedLengthStreamingMode(contentLength);
     }
 
+    public void setChunkedStreamingMode(int chunkLength) {
+        connection.setChunkedStreamingMode(chunkLength);
+    }
+
     public OutputStream openOutputStream() throws IOException {
         return connection.getOutputStream();
     }
@@ -62,6 +62,13 @@ abstract public class Transport {
 
     private int bufferLength = ServiceConnection.DEFAULT_BUFFER_SIZE;
 
+    /** Parser of each thread, reused for every response it reads */
+    private static final ThreadLocal<KXmlParser> PARSER = new ThreadLocal<KXmlParser>();
+    /** Serializer of each thread, reused for every request it writes */
+    private static final ThreadLocal<KXmlSerializer> SERIALIZER = new ThreadLocal<KXmlSerializer>();
+    /** UTF-8 writer of each thread's serializer, pointed at the stream of each request */
+    private static final ThreadLocal<Utf8StreamWriter> WRITER = new ThreadLocal<Utf8StreamWriter>();
+
     public Transport() {
     }
 
@@ -107,13 +114,25 @@ abstract public class Transport {
     }
 
     /**
-     * Sets up the parsing to hand over to the envelope to deserialize.
+     * Sets up the parsing to hand over to the envelope to deserialize.  Each thread reuses one parser, with its
+     * buffers and table of element names, for all the responses it reads.
      */
     protected void parseResponse(SoapEnvelope envelope, InputStream is) throws XmlPullParserException, IOException {
-        XmlPullParser xp = new KXmlParser();
-        xp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-        xp.setInput(is, null);
-        envelope.parse(xp);
+        KXmlParser xp = PARSER.get();
+        //taken while in use, so a nested parse gets a parser of its own
+        PARSER.set(null);
+        if (xp == null) {
+            xp = new KXmlParser(SymbolTable.forThread());
+            xp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        }
+        try {
+            xp.setInput(is, null);
+            envelope.parse(xp);
+        } finally {
+            //let go of the stream
+            xp.setInput(null);
+            PARSER.set(xp);
+        }
     }
 
     /**
@@ -121,19 +140,38 @@ abstract public class Transport {
      */
     protected byte[] createRequestData(SoapEnvelope envelope) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream(bufferLength);
-        byte result[] = null;
-        bos.write(xmlVersionTag.getBytes());
-        XmlSerializer xw = new KXmlSerializer();
-        xw.setOutput(bos, null);
-        envelope.write(xw);
-        xw.flush();
-        bos.write('\r');
-        bos.write('\n');
-        bos.flush();
-        result = bos.toByteArray();
-        xw = null;
-        bos = null;
-        return result;
+        writeRequestData(envelope, bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Serializes the request directly to the given stream, without buffering the whole message.
+     */
+    protected void writeRequestData(SoapEnvelope envelope, OutputStream os) throws IOException {
+        os.write(xmlVersionTag.getBytes());
+        KXmlSerializer xw = SERIALIZER.get();
+        Utf8StreamWriter writer = WRITER.get();
+        SERIALIZER.set(null);
+        WRITER.set(null);
+        if (xw == null) {
+            xw = new KXmlSerializer();
+            writer = new Utf8StreamWriter();
+        }
+        try {
+            writer.reset(os);
+            xw.setOutput(writer);
+            envelope.write(xw);
+            xw.flush();
+        } finally {
+            //let go of the stream
+            writer.reset(null);
+            xw.setOutput(null);
+            SERIALIZER.set(xw);
+            WRITER.set(writer);
+        }
+        os.write('\r');
+        os.write('\n');
+        os.flush();
     }
 
     /**
@@ -0,0 +1,102 @@
+package org.ksoap2.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * UTF-8 writer which can be pointed at another stream, so a thread writes all its requests through the same
+ * writer and buffer instead of allocating an <code>OutputStreamWriter</code> for each.
+ */
+class Utf8StreamWriter extends Writer {
+    private static final int BUFFER_SIZE = 4096;
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int count;
+    private OutputStream out;
+    /** high surrogate waiting for the rest of its character */
+    private char high;
+
+    /**
+     * @param out   stream to write to from now on, or <code>null</code> to let go of the last one
+     */
+    void reset(OutputStream out) {
+        this.out = out;
+        count = 0;
+        high = 0;
+    }
+
+    public void write(int c) throws IOException {
+        if (count + 4 > buf.length)
+            flushBuffer();
+        if (high != 0) {
+            char h = high;
+            high = 0;
+            if (Character.isLowSurrogate((char) c)) {
+                int cp = Character.toCodePoint(h, (char) c);
+                buf[count++] = (byte) (0xf0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (cp & 0x3f));
+                return;
+            }
+            //unpaired surrogate
+            buf[count++] = '?';
+            write(c);
+            return;
+        }
+        if (c < 0x80) {
+            buf[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[count++] = (byte) (0xc0 | (c >> 6));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate((char) c)) {
+            high = (char) c;
+        } else if (Character.isLowSurrogate((char) c)) {
+            buf[count++] = '?';
+        } else {
+            buf[count++] = (byte) (0xe0 | (c >> 12));
+            buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buf[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = cbuf[i];
+            if (c < 0x80 && high == 0 && count < buf.length)
+                buf[count++] = (byte) c;
+            else
+                write(c);
+        }
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80 && high == 0 && count < buf.length)
+                buf[count++] = (byte) c;
+            else
+                write(c);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Writes out the buffer but leaves the stream open, it belongs to the request
+     */
+    public void close() throws IOException {
+        flushBuffer();
+    }
+}
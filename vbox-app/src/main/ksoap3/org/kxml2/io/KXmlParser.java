@@ -95,7 +95,22 @@ public class KXmlParser implements XmlPullParser {
     private boolean unresolved;
     private boolean token;
 
+    /** Decoder of UTF-8 streams, reused by every document read from one */
+    private Utf8Reader utf8;
+
+    /** Canonical element and attribute names, prefixes and namespace URIs */
+    private final SymbolTable symbols;
+
     public KXmlParser() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbols   table of names, shared with other parsers of the same thread
+     *                  like {@link SymbolTable#forThread()}
+     */
+    public KXmlParser(SymbolTable symbols) {
+        this.symbols = symbols;
         srcBuf =
             new char[Runtime.getRuntime().freeMemory() >= 1048576 ? 8192 : 128];
     }
@@ -121,8 +136,8 @@ public class KXmlParser implements XmlPullParser {
             String prefix;
 
             if (cut != -1) {
-                prefix = attrName.substring(0, cut);
-                attrName = attrName.substring(cut + 1);
+                prefix = symbols.get(attrName, 0, cut);
+                attrName = symbols.get(attrName, cut + 1, attrName.length() - cut - 1);
             }
             else if (attrName.equals("xmlns")) {
                 prefix = attrName;
@@ -170,9 +185,9 @@ public class KXmlParser implements XmlPullParser {
                         "illegal attribute name: " + attrName + " at " + this);
 
                 else if (cut != -1) {
-                    String attrPrefix = attrName.substring(0, cut);
+                    String attrPrefix = symbols.get(attrName, 0, cut);
 
-                    attrName = attrName.substring(cut + 1);
+                    attrName = symbols.get(attrName, cut + 1, attrName.length() - cut - 1);
 
                     String attrNs = getNamespace(attrPrefix);
 
@@ -206,8 +221,8 @@ public class KXmlParser implements XmlPullParser {
             error("illegal tag name: " + name);
 
         if (cut != -1) {
-            prefix = name.substring(0, cut);
-            name = name.substring(cut + 1);
+            prefix = symbols.get(name, 0, cut);
+            name = symbols.get(name, cut + 1, name.length() - cut - 1);
         }
 
         this.namespace = getNamespace(prefix);
@@ -682,7 +697,10 @@ public class KXmlParser implements XmlPullParser {
                 int p = txtPos;
                 pushText(delimiter, true);
 
-                attributes[i] = get(p);
+                // namespace declarations repeat in every response
+                attributes[i] = attrName.startsWith("xmlns")
+                    ? symbols.get(txtBuf, p, txtPos - p)
+                    : get(p);
                 txtPos = p;
 
                 if (delimiter != ' ')
@@ -935,7 +953,7 @@ public class KXmlParser implements XmlPullParser {
             || c == '.'
             || c >= 0x0b7);
 
-        String result = get(pos);
+        String result = symbols.get(txtBuf, pos, txtPos - pos);
         txtPos = pos;
         return result;
     }
@@ -953,6 +971,8 @@ public class KXmlParser implements XmlPullParser {
     //  public part starts here...
 
     public void setInput(Reader reader) throws XmlPullParserException {
+        if (utf8 != null && reader != utf8)
+            utf8.reset(null);
         this.reader = reader;
 
         line = 1;
@@ -973,8 +993,18 @@ public class KXmlParser implements XmlPullParser {
         srcCount = 0;
         peekCount = 0;
         depth = 0;
+        //state a previous, possibly failed, document may have left behind when the parser is reused
+        txtPos = 0;
+        wasCR = false;
+        unresolved = false;
+        token = false;
+        error = null;
+        prefix = null;
 
-        entityMap = new Hashtable();
+        if (entityMap == null)
+            entityMap = new Hashtable();
+        else
+            entityMap.clear();
         entityMap.put("amp", "&");
         entityMap.put("apos", "'");
         entityMap.put("gt", ">");
@@ -1092,7 +1122,15 @@ public class KXmlParser implements XmlPullParser {
                 enc = "UTF-8";
 
             int sc = srcCount;
-            setInput(new InputStreamReader(is, enc));
+            if (enc.equalsIgnoreCase("UTF-8")) {
+                //kept for the next document, with its buffer
+                if (utf8 == null)
+                    utf8 = new Utf8Reader();
+                utf8.reset(is);
+                setInput(utf8);
+            }
+            else
+                setInput(new InputStreamReader(is, enc));
             encoding = _enc;
             srcCount = sc;
         }
@@ -1385,6 +1423,70 @@ public class KXmlParser implements XmlPullParser {
                 "expected: " + TYPES[type] + " {" + namespace + "}" + name);
     }
 
+    /**
+     * Reads the text following the current start tag in chunks instead of
+     * collecting it in one string, for large content like Base64 data.
+     * Call on a START_TAG and repeat until -1 is returned, then call next()
+     * to move on to the end tag (or to whatever else ended the text, like
+     * CDATA or a child element). Entities are resolved, but their
+     * replacement text must fit in the buffer.
+     *
+     * @return number of characters read, or -1 at the end of the text
+     */
+    public int readText(char[] buf, int off, int len)
+        throws XmlPullParserException, IOException {
+
+        if (degenerated)
+            return -1;
+
+        int n = 0;
+
+        while (n < len) {
+            // copy runs of plain characters straight from the source buffer
+            if (peekCount == 0 && srcPos < srcCount && srcBuf.length > 1) {
+                int start = srcPos;
+                int end = Math.min(srcCount, srcPos + len - n);
+                while (srcPos < end) {
+                    char c = srcBuf[srcPos];
+                    if (c == '<' || c == '&' || c == '\r' || c == '\n')
+                        break;
+                    srcPos++;
+                }
+                int run = srcPos - start;
+                if (run > 0) {
+                    System.arraycopy(srcBuf, start, buf, off + n, run);
+                    n += run;
+                    column += run;
+                    wasCR = false;
+                    continue;
+                }
+            }
+
+            int c = peek(0);
+            if (c == -1 || c == '<')
+                break;
+
+            if (c == '&') {
+                if (n > 0)
+                    break;
+                txtPos = 0;
+                pushEntity();
+                if (txtPos > len)
+                    exception("entity replacement too long");
+                System.arraycopy(txtBuf, 0, buf, off, txtPos);
+                n = txtPos;
+                txtPos = 0;
+                if (n > 0)
+                    break;
+                continue;
+            }
+
+            buf[off + n++] = (char) read();
+        }
+
+        return n == 0 ? -1 : n;
+    }
+
     public String nextText() throws XmlPullParserException, IOException {
         if (type != START_TAG)
             exception("precondition: START_TAG");
@@ -0,0 +1,109 @@
+package org.kxml2.io;
+
+/**
+ * Canonical strings for the element and attribute names read by a {@link KXmlParser}, so a name seen before is
+ * returned without allocating.  Responses repeat the same few names (<code>returnval</code>, <code>xsi:type</code>)
+ * for every element, and canonical names compare by identity in <code>String.equals</code>.
+ * <p>Not synchronized.  A table is used by one parser, or shared by the parsers of one thread through
+ * {@link #forThread()}.  It keeps at most {@link #MAX_SYMBOLS} names, later names are returned as new strings.</p>
+ */
+public final class SymbolTable {
+
+    /** Longer names are not kept */
+    public static final int MAX_LENGTH = 64;
+    /** Names kept before the table stops growing */
+    public static final int MAX_SYMBOLS = 1024;
+
+    private static final ThreadLocal<SymbolTable> THREAD = new ThreadLocal<SymbolTable>() {
+        @Override
+        protected SymbolTable initialValue() {
+            return new SymbolTable();
+        }
+    };
+
+    private String[] symbols = new String[64];
+    private int[] hashes = new int[64];
+    private int count;
+    /** Holds the characters of a substring being looked up */
+    private final char[] scratch = new char[MAX_LENGTH];
+
+    /**
+     * @return the table shared by the parsers of the calling thread
+     */
+    public static SymbolTable forThread() {
+        return THREAD.get();
+    }
+
+    /**
+     * @return number of names kept
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the canonical string for the characters
+     */
+    public String get(char[] buf, int offset, int length) {
+        if (length > MAX_LENGTH)
+            return new String(buf, offset, length);
+
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + buf[offset + i];
+
+        int mask = symbols.length - 1;
+        int i = (hash ^ (hash >>> 16)) & mask;
+        for (String symbol; (symbol = symbols[i]) != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matches(symbol, buf, offset, length))
+                return symbol;
+        }
+
+        String symbol = new String(buf, offset, length);
+        if (count < MAX_SYMBOLS) {
+            symbols[i] = symbol;
+            hashes[i] = hash;
+            if (++count > symbols.length >> 1)
+                rehash();
+        }
+        return symbol;
+    }
+
+    /**
+     * Get the canonical string for a substring, like the prefix or local part of a qualified name
+     */
+    public String get(String s, int offset, int length) {
+        if (length > MAX_LENGTH)
+            return s.substring(offset, offset + length);
+        s.getChars(offset, offset + length, scratch, 0);
+        return get(scratch, 0, length);
+    }
+
+    private static boolean matches(String symbol, char[] buf, int offset, int length) {
+        if (symbol.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != buf[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        String[] oldSymbols = symbols;
+        int[] oldHashes = hashes;
+        symbols = new String[oldSymbols.length << 1];
+        hashes = new int[symbols.length];
+        int mask = symbols.length - 1;
+        for (int j = 0; j < oldSymbols.length; j++) {
+            if (oldSymbols[j] == null)
+                continue;
+            int hash = oldHashes[j];
+            int i = (hash ^ (hash >>> 16)) & mask;
+            while (symbols[i] != null)
+                i = (i + 1) & mask;
+            symbols[i] = oldSymbols[j];
+            hashes[i] = hash;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.kxml2.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes UTF-8, like an <code>InputStreamReader</code> that can be reset to read another stream, so a parser
+ * reading many documents keeps its byte buffer.  Malformed input is replaced with U+FFFD.
+ */
+class Utf8Reader extends Reader {
+    private static final int BUFFER_SIZE = 8192;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int count;
+    private InputStream in;
+    /** Low surrogate of a supplementary character that did not fit the last read */
+    private char pending;
+
+    /**
+     * Read another stream, or let go of the current one if <code>null</code>
+     */
+    void reset(InputStream in) {
+        this.in = in;
+        pos = 0;
+        count = 0;
+        pending = 0;
+    }
+
+    /**
+     * Decodes whole characters from the buffer, reading the stream only when it holds none
+     */
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        int n = 0;
+        if (pending != 0) {
+            cbuf[off + n++] = pending;
+            pending = 0;
+        }
+        while (n < len) {
+            //ascii
+            while (n < len && pos < count && buf[pos] >= 0)
+                cbuf[off + n++] = (char) buf[pos++];
+            if (n == len)
+                break;
+            if (pos == count) {
+                if (n > 0 || !fill(1))
+                    break;
+                continue;
+            }
+            int b = buf[pos] & 0xff;
+            int more = b >= 0xc2 && b < 0xe0 ? 1 : b >= 0xe0 && b < 0xf0 ? 2 : b >= 0xf0 && b < 0xf5 ? 3 : 0;
+            if (more == 0) {
+                pos++;
+                cbuf[off + n++] = REPLACEMENT;
+                continue;
+            }
+            if (count - pos <= more) {
+                if (n > 0)
+                    break;
+                if (!fill(more + 1)) {
+                    //truncated at the end of the stream
+                    pos = count;
+                    cbuf[off + n++] = REPLACEMENT;
+                    continue;
+                }
+            }
+            int c = decode(b, more);
+            if (c < 0) {
+                pos++;
+                cbuf[off + n++] = REPLACEMENT;
+            } else if (c < 0x10000) {
+                pos += more + 1;
+                cbuf[off + n++] = (char) c;
+            } else {
+                pos += more + 1;
+                cbuf[off + n++] = Character.highSurrogate(c);
+                if (n < len)
+                    cbuf[off + n++] = Character.lowSurrogate(c);
+                else
+                    pending = Character.lowSurrogate(c);
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * @return the code point of the sequence at <code>pos</code>, or -1 if it is malformed
+     */
+    private int decode(int b, int more) {
+        int b1 = buf[pos + 1] & 0xff;
+        if ((b1 & 0xc0) != 0x80)
+            return -1;
+        if (more == 1)
+            return ((b & 0x1f) << 6) | (b1 & 0x3f);
+        //overlong, surrogates and beyond U+10FFFF
+        if ((b == 0xe0 && b1 < 0xa0) || (b == 0xed && b1 >= 0xa0) || (b == 0xf0 && b1 < 0x90) || (b == 0xf4 && b1 >= 0x90))
+            return -1;
+        int b2 = buf[pos + 2] & 0xff;
+        if ((b2 & 0xc0) != 0x80)
+            return -1;
+        if (more == 2)
+            return ((b & 0x0f) << 12) | ((b1 & 0x3f) << 6) | (b2 & 0x3f);
+        int b3 = buf[pos + 3] & 0xff;
+        if ((b3 & 0xc0) != 0x80)
+            return -1;
+        return ((b & 0x07) << 18) | ((b1 & 0x3f) << 12) | ((b2 & 0x3f) << 6) | (b3 & 0x3f);
+    }
+
+    /**
+     * Read until the buffer holds at least <code>min</code> bytes
+     * @return <code>false</code> if the stream ended first
+     */
+    private boolean fill(int min) throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, count - pos);
+            count -= pos;
+            pos = 0;
+        }
+        while (count < min) {
+            int read = in.read(buf, count, buf.length - count);
+            if (read == -1)
+                return false;
+            count += read;
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        if (in != null)
+            in.close();
+    }
+}